@@ -20,6 +20,9 @@ public class TreeNode<T extends Comparable<T>> implements Iterable<TreeNode<T>>,
 
     private TreeNode<T> parent;
     private final List<TreeNode<T>> children = new ArrayList<>();
+    private boolean modified;
+    private Object ordinalOwner;
+    private int ordinal = -1;
 
     /**
      * Constructs a node, with no children, and no wrapped object.
@@ -55,18 +58,127 @@ public class TreeNode<T extends Comparable<T>> implements Iterable<TreeNode<T>>,
     public void setObject(final T object)
     {
         this.object = object;
+        touch();
+    }
+
+    /**
+     * Gets the number that identifies this node within its tree, for use as
+     * an index into arrays of data about nodes (in place of a map keyed by
+     * node). Numbers are assigned by whoever manages the tree (the owner),
+     * and only mean anything to that owner; a node moved into another tree
+     * has no ordinal there until that tree's owner assigns one.
+     * @param owner the owner asking
+     * @return the ordinal, or -1 if none has been assigned by <code>owner</code>
+     */
+    public int getOrdinal(final Object owner)
+    {
+        return this.ordinalOwner == owner ? this.ordinal : -1;
+    }
+
+    /**
+     * Sets the number that identifies this node within its tree, replacing
+     * any ordinal assigned by another owner.
+     * @param owner the owner assigning it
+     * @param ordinal the ordinal (zero or greater)
+     */
+    public void setOrdinal(final Object owner, final int ordinal)
+    {
+        this.ordinal = ordinal;
+        this.ordinalOwner = owner;
     }
 
     /**
      * Gets the (immediate) children of this node, as an iterator.
+     * Removing a child through the iterator marks this node as modified.
      * @return iterator of immediate children
      */
     public Iterator<TreeNode<T>> children()
     {
-        return this.children.iterator();
+        return new Children();
     }
 
-    public ListIterator<TreeNode<T>> childrenList() { return this.children.listIterator(); }
+    /**
+     * Gets the (immediate) children of this node, as a list iterator.
+     * Removing, replacing, or adding a child through the iterator marks
+     * this node as modified (a child added must not have a parent).
+     * @return list iterator of immediate children
+     */
+    public ListIterator<TreeNode<T>> childrenList() { return new Children(); }
+
+    /**
+     * Iterates the children, keeping track of changes made through it.
+     */
+    private final class Children implements ListIterator<TreeNode<T>>
+    {
+        private final ListIterator<TreeNode<T>> i = TreeNode.this.children.listIterator();
+        private TreeNode<T> last;
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.i.hasNext();
+        }
+
+        @Override
+        public TreeNode<T> next()
+        {
+            this.last = this.i.next();
+            return this.last;
+        }
+
+        @Override
+        public boolean hasPrevious()
+        {
+            return this.i.hasPrevious();
+        }
+
+        @Override
+        public TreeNode<T> previous()
+        {
+            this.last = this.i.previous();
+            return this.last;
+        }
+
+        @Override
+        public int nextIndex()
+        {
+            return this.i.nextIndex();
+        }
+
+        @Override
+        public int previousIndex()
+        {
+            return this.i.previousIndex();
+        }
+
+        @Override
+        public void remove()
+        {
+            this.i.remove();
+            this.last.parent = null;
+            this.last = null;
+            touch();
+        }
+
+        @Override
+        public void set(final TreeNode<T> child)
+        {
+            this.i.set(child);
+            this.last.parent = null;
+            child.parent = TreeNode.this;
+            this.last = child;
+            touch();
+        }
+
+        @Override
+        public void add(final TreeNode<T> child)
+        {
+            this.i.add(child);
+            child.parent = TreeNode.this;
+            this.last = null;
+            touch();
+        }
+    }
 
     public TreeNode<T> getFirstChildOrNull() {
         return children().hasNext() ? children().next() : null;
@@ -101,15 +213,68 @@ public class TreeNode<T extends Comparable<T>> implements Iterable<TreeNode<T>>,
             this.children.add(this.children.indexOf(before), child);
         }
         child.parent = this;
+        touch();
+    }
+
+    /**
+     * Inserts the given children, in order, at the given position among
+     * this node's children. The given children will be removed from any
+     * parent they may have.
+     * @param index position to insert at (0 to insert before any existing children)
+     * @param rChild the children to add
+     */
+    public void addChildren(final int index, final Collection<TreeNode<T>> rChild) {
+        for (final TreeNode<T> child : rChild) {
+            if (child.parent != null) {
+                child.removeFromParent();
+            }
+            child.parent = this;
+        }
+        this.children.addAll(index, rChild);
+        touch();
     }
 
     public void sortDeep() {
         this.children.forEach(TreeNode::sortDeep);
         Collections.sort(this.children);
+        touch();
     }
 
     public void sort(final Comparator<TreeNode<T>> comparator) {
         Collections.sort(this.children, comparator);
+        touch();
+    }
+
+    /**
+     * Checks if this node, or any node under it, has been changed (its
+     * object set, or children added, removed, or sorted) since the last call
+     * to {@link TreeNode#clearModifiedDeep}, including through the children
+     * iterators.
+     * @return true if this (sub-)tree has been modified
+     */
+    public boolean isModified()
+    {
+        return this.modified;
+    }
+
+    /**
+     * Marks this node and all nodes under it as not modified.
+     */
+    public void clearModifiedDeep()
+    {
+        this.modified = false;
+        this.children.forEach(TreeNode::clearModifiedDeep);
+    }
+
+    /**
+     * Marks this node, and its ancestors, as modified.
+     */
+    private void touch()
+    {
+        for (TreeNode<T> n = this; n != null && !n.modified; n = n.parent)
+        {
+            n.modified = true;
+        }
     }
 
     @Override
@@ -161,6 +326,7 @@ public class TreeNode<T extends Comparable<T>> implements Iterable<TreeNode<T>>,
                 child.parent = null;
             }
         }
+        touch();
     }
 
     /**
@@ -175,6 +341,7 @@ public class TreeNode<T extends Comparable<T>> implements Iterable<TreeNode<T>>,
             i.remove();
             child.parent = null;
         }
+        touch();
     }
 
     /**
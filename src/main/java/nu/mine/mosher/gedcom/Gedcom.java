@@ -1,6 +1,7 @@
 package nu.mine.mosher.gedcom;
 
 
+import nu.mine.mosher.collection.TreeNode;
 import nu.mine.mosher.gedcom.exception.InvalidLevel;
 import nu.mine.mosher.gedcom.model.Loader;
 import nu.mine.mosher.mopper.ArgParser;
@@ -70,7 +71,11 @@ public final class Gedcom {
             tree = minimal(this.options.encoding);
         } else {
             final BufferedInputStream streamInput = gedcom == null ? getStandardInput() : getFileInput(gedcom);
-            tree = readFile(streamInput, this.options.encoding);
+            final boolean passthrough = this.options.passthrough && this.options.concToWidth == null;
+            if (this.options.passthrough && !passthrough) {
+                log().warning("Cannot pass through original records when rebuilding CONC/CONT lines.");
+            }
+            tree = readFile(streamInput, this.options.encoding, passthrough);
         }
 
         if (this.options.concToWidth != null) {
@@ -78,12 +83,23 @@ public final class Gedcom {
             new GedcomConcatenator(tree).concatenate();
         }
 
+        if (this.options.dates) {
+            log().info("Checking and normalizing DATE values.");
+            new GedcomDateNormalizer(tree).normalize(true).getDiagnostics().forEach(d -> log().warning(d.toString()));
+        }
+
 
         if (this.proc.process(tree)) {
             if (this.options.timestamp) {
                 tree.timestamp();
             }
 
+            if (this.options.utf8) {
+                log().info("Converting to UTF-8 encoding for output.");
+                tree.setCharset(StandardCharsets.UTF_8);
+            }
+
+            // (after setting the output encoding, because widths are measured in bytes)
             if (this.options.concToWidth != null) {
                 final Integer width = this.options.concToWidth;
                 log().info("Rebuilding CONC/CONT lines to specified width: " + width);
@@ -91,11 +107,6 @@ public final class Gedcom {
                 new GedcomUnconcatenator(tree).unconcatenate();
             }
 
-            if (this.options.utf8) {
-                log().info("Converting to UTF-8 encoding for output.");
-                tree.setCharset(StandardCharsets.UTF_8);
-            }
-
             writeFile(tree, getStandardOutput());
         }
     }
@@ -112,6 +123,29 @@ public final class Gedcom {
 
     public static GedcomTree readFile(final BufferedInputStream streamInput, Charset charsetForce) throws
         IOException, InvalidLevel {
+        return readFile(streamInput, charsetForce, false);
+    }
+
+    /**
+     * Reads a GEDCOM file. If passthrough is true, the whole file is kept
+     * in memory, and any top-level records that are still unmodified when the
+     * tree is written (by {@link Gedcom#writeFile}) are copied verbatim from
+     * the original bytes. This only applies if the tree will be written in
+     * the same encoding it was read in, which means input that is read as
+     * UTF-8 (or forced to US-ASCII). Other encodings (such as windows-1252 or
+     * ANSEL, including files that declare ASCII, which are read as
+     * windows-1252) are always written as UTF-8, so every record is rewritten.
+     * If the HEAD.CHAR of the file does not name the encoding it is read in,
+     * HEAD is rewritten with the right one.
+     */
+    public static GedcomTree readFile(BufferedInputStream streamInput, Charset charsetForce, final boolean passthrough) throws
+        IOException, InvalidLevel {
+        byte[] raw = null;
+        if (passthrough) {
+            raw = readAll(streamInput);
+            streamInput = new BufferedInputStream(new ByteArrayInputStream(raw));
+        }
+
         if (charsetForce == null) {
             charsetForce = new GedcomEncodingDetector(streamInput).detect();
         } else {
@@ -121,14 +155,53 @@ public final class Gedcom {
         final GedcomParser parser = new GedcomParser(new BufferedReader(new InputStreamReader(streamInput, charsetForce)));
         final GedcomTree tree = new GedcomTree();
         tree.readFrom(parser);
+        if (passthrough) {
+            tree.getRoot().clearModifiedDeep();
+        }
+        // (after clearing the modified flags, so that if it updates HEAD.CHAR, HEAD is rewritten)
         tree.setCharset(charsetForce);
+        if (passthrough) {
+            if (tree.getCharset().equals(charsetForce)) {
+                GedcomPassthrough.create(raw, charsetForce, tree).ifPresent(tree::setPassthrough);
+            } else {
+                log().info("Cannot pass through original records, because they will be converted from " + charsetForce.name() + " to " + tree.getCharset().name() + ".");
+            }
+        }
         return tree;
     }
 
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream all = new ByteArrayOutputStream(1024 * 1024);
+        final byte[] buf = new byte[64 * 1024];
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            all.write(buf, 0, n);
+        }
+        return all.toByteArray();
+    }
+
     public static void writeFile(final GedcomTree tree, final BufferedOutputStream streamOutput) throws IOException {
         final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(streamOutput, tree.getCharset()));
-        out.write(tree.toString());
+
+        final GedcomPassthrough passthrough = tree.getPassthrough();
+        if (passthrough == null || !passthrough.canWriteAs(tree.getCharset())) {
+            tree.appendTo(out);
+            out.flush();
+            return;
+        }
+
+        int cVerbatim = 0;
+        for (final TreeNode<GedcomLine> record : tree.getRoot()) {
+            if (passthrough.isVerbatim(record)) {
+                out.flush();
+                passthrough.write(record, streamOutput);
+                ++cVerbatim;
+            } else {
+                // (using the same line breaks as the verbatim records)
+                GedcomTree.appendTo(record, out, passthrough.getLineBreak());
+            }
+        }
         out.flush();
+        log().info("Copied " + cVerbatim + " unmodified records verbatim; rewrote " + (tree.getRoot().getChildCount() - cVerbatim) + ".");
     }
 
 
@@ -5,9 +5,11 @@ import nu.mine.mosher.collection.TreeNode;
 import java.io.IOException;
 import java.io.StreamTokenizer;
 import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -16,11 +18,29 @@ import static nu.mine.mosher.logging.Jul.log;
 /**
  * Eventually this will be a full-fledged data reference
  * language, like in Family Historian; but, for now it
- * just handles nested tags.
+ * handles nested tags, pointers, and predicates.
  *
  * For example, the expression <CODE>.SOUR.REFN</CODE>
  * refers to <CODE>REFN</CODE> sub-records within
  * top-level <CODE>SOUR</CODE> records.
+ *
+ * A quoted regular expression after a tag must match the
+ * whole value, as in <CODE>.INDI.NAME"Charles.*"</CODE>.
+ *
+ * A <CODE>&gt;</CODE> in place of a dot follows a pointer
+ * to the record it points to, as in <CODE>.INDI.FAMC&gt;MARR</CODE>
+ * (the <CODE>MARR</CODE> events of the family each individual
+ * is a child in). A trailing <CODE>&gt;</CODE> refers to the
+ * record itself, as in <CODE>.INDI.FAMS&gt;</CODE>.
+ *
+ * An ID in at-signs refers to one top-level record, as in
+ * <CODE>.@I1@.NAME</CODE>.
+ *
+ * A relative expression in square brackets after a tag is a
+ * predicate: the tag only matches lines for which the predicate
+ * finds at least one match. For example,
+ * <CODE>.INDI[FAMC&gt;MARR.DATE".*185[0-9]"]</CODE> refers to
+ * individuals whose parents married in the 1850s.
  */
 public class GedcomDataRef {
     public static class InvalidSyntax extends Exception {
@@ -33,19 +53,54 @@ public class GedcomDataRef {
      */
     private static class Tag {
         final String tagAsString;
+        final String id;
         GedcomTag tag;
         Pattern pattern;
+        boolean deref;
+        final List<GedcomDataRef> predicates = new ArrayList<>(2);
         Tag(final String tag) {
             this.tagAsString = tag;
+            this.id = "";
             try {
                 this.tag = GedcomTag.valueOf(tag);
             } catch (final Throwable e) {
                 this.tag = null;
             }
         }
+        private Tag(final String tag, final String id) {
+            this.tagAsString = tag;
+            this.id = id;
+            this.tag = null;
+        }
+        static Tag id(final String id) {
+            return new Tag("@" + id + "@", id);
+        }
         void setPattern(final String pattern) throws PatternSyntaxException {
             this.pattern = Pattern.compile(pattern);
         }
+        boolean isId() {
+            return !this.id.isEmpty();
+        }
+        boolean isWildcard() {
+            return this.tagAsString.equals("*");
+        }
+        boolean matchesTag(final GedcomLine line) {
+            if (isId()) {
+                return line.getID().equals(this.id);
+            }
+            return isWildcard() || line.getTagString().toLowerCase().equals(this.tagAsString);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder(16);
+            sb.append(this.tagAsString);
+            if (this.pattern != null) {
+                sb.append('\"').append(this.pattern.pattern()).append('\"');
+            }
+            this.predicates.forEach(p -> sb.append('[').append(p.toString().substring(1)).append(']'));
+            return sb.toString();
+        }
     }
 
     private final List<Tag> path;
@@ -56,36 +111,203 @@ public class GedcomDataRef {
         this.path = parse(expr);
     }
 
+    private GedcomDataRef(final List<Tag> path) {
+        this.path = path;
+    }
+
 
     public void forEach(final GedcomTree tree, final Consumer<TreeNode<GedcomLine>> fn) {
-        forEachHelper(tree.getRoot(), 0, fn);
+        find(tree, tree.getRoot(), 0, visitor(fn));
+    }
+
+    /**
+     * Same as {@link GedcomDataRef#forEach(GedcomTree, Consumer)}, but uses
+     * the given index to pick which top-level records to evaluate, rather than
+     * scanning every one of them. Results are still in document order.
+     *
+     * @param index index of the tree to search
+     * @param fn called for each match
+     */
+    public void forEach(final GedcomIndex index, final Consumer<TreeNode<GedcomLine>> fn) {
+        if (this.path.isEmpty()) {
+            return;
+        }
+        final Predicate<TreeNode<GedcomLine>> visitor = visitor(fn);
+        for (final TreeNode<GedcomLine> record : plan(index)) {
+            if (visit(index.getTree(), record, 0, visitor)) {
+                return;
+            }
+        }
     }
 
-    private void forEachHelper(final TreeNode<GedcomLine> node, final int level, final Consumer<TreeNode<GedcomLine>> fn) {
-        node.forEach( c -> {
-            if (matches(level, c)) {
-                if (at(level)) {
-                    fn.accept(c);
-                } else {
-                    forEachHelper(c, level + 1, fn);
+    /**
+     * Same as {@link GedcomDataRef#forEach(GedcomTree, Consumer)}, but evaluates
+     * the top-level records concurrently, in the common <code>ForkJoinPool</code>.
+     *
+     * @param tree tree to search (must not be modified during the search)
+     * @param fn called for each match
+     * @param ordered if true, <code>fn</code> is called on this thread, in document order,
+     *                after all matches are found; otherwise, <code>fn</code> is called
+     *                (concurrently, so it must be thread-safe) as each match is found
+     */
+    public void forEachParallel(final GedcomTree tree, final Consumer<TreeNode<GedcomLine>> fn, final boolean ordered) {
+        forEachParallel(tree, ForkJoinPool.commonPool(), fn, ordered);
+    }
+
+    public void forEachParallel(final GedcomTree tree, final ForkJoinPool pool, final Consumer<TreeNode<GedcomLine>> fn, final boolean ordered) {
+        if (this.path.isEmpty()) {
+            return;
+        }
+        if (this.path.get(0).isId()) {
+            // only one record to look at
+            forEach(tree, fn);
+            return;
+        }
+
+        final List<TreeNode<GedcomLine>> records = new ArrayList<>(tree.getRoot().getChildCount());
+        tree.getRoot().forEach(records::add);
+
+        final int grain = Math.max(1, records.size() / (pool.getParallelism() * 8));
+        final List<TreeNode<GedcomLine>> found = pool.invoke(new Search(this, tree, records, 0, records.size(), grain, ordered ? null : fn));
+        found.forEach(fn);
+    }
+
+    /**
+     * Evaluates a range of top-level records, splitting it in half until it
+     * is small enough. If there is a consumer, matches are passed to it directly
+     * (in any order); otherwise they are collected and merged in document order.
+     */
+    private static final class Search extends RecursiveTask<List<TreeNode<GedcomLine>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final GedcomDataRef ref;
+        private final GedcomTree tree;
+        private final List<TreeNode<GedcomLine>> records;
+        private final int lo;
+        private final int hi;
+        private final int grain;
+        private final Consumer<TreeNode<GedcomLine>> fn;
+
+        Search(final GedcomDataRef ref, final GedcomTree tree, final List<TreeNode<GedcomLine>> records, final int lo, final int hi, final int grain, final Consumer<TreeNode<GedcomLine>> fn) {
+            this.ref = ref;
+            this.tree = tree;
+            this.records = records;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+            this.fn = fn;
+        }
+
+        @Override
+        protected List<TreeNode<GedcomLine>> compute() {
+            if (this.hi - this.lo <= this.grain) {
+                final List<TreeNode<GedcomLine>> found = new ArrayList<>();
+                final Predicate<TreeNode<GedcomLine>> visitor = visitor(this.fn != null ? this.fn : found::add);
+                for (int i = this.lo; i < this.hi; ++i) {
+                    this.ref.visit(this.tree, this.records.get(i), 0, visitor);
                 }
+                return found;
             }
-        });
+
+            final int mid = (this.lo + this.hi) >>> 1;
+            final Search right = new Search(this.ref, this.tree, this.records, mid, this.hi, this.grain, this.fn);
+            right.fork();
+            final List<TreeNode<GedcomLine>> found = new Search(this.ref, this.tree, this.records, this.lo, mid, this.grain, this.fn).compute();
+            found.addAll(right.join());
+            return found;
+        }
+    }
+
+    private static Predicate<TreeNode<GedcomLine>> visitor(final Consumer<TreeNode<GedcomLine>> fn) {
+        return n -> {
+            fn.accept(n);
+            return false;
+        };
+    }
+
+    /**
+     * Finds matches for path[level...] among the children of the given context node.
+     *
+     * @return true if the visitor asked to stop
+     */
+    private boolean find(final GedcomTree tree, final TreeNode<GedcomLine> context, final int level, final Predicate<TreeNode<GedcomLine>> visitor) {
+        if (this.path.size() <= level) {
+            return false;
+        }
+
+        final Tag tagRef = this.path.get(level);
+        if (tagRef.isId() && context == tree.getRoot()) {
+            final TreeNode<GedcomLine> record = tree.getNode(tagRef.id);
+            return record != null && record.parent() == context && visit(tree, record, level, visitor);
+        }
+
+        for (final TreeNode<GedcomLine> c : context) {
+            if (visit(tree, c, level, visitor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean visit(final GedcomTree tree, final TreeNode<GedcomLine> node, final int level, final Predicate<TreeNode<GedcomLine>> visitor) {
+        if (!matches(tree, level, node)) {
+            return false;
+        }
+
+        final TreeNode<GedcomLine> next = this.path.get(level).deref ? deref(tree, node) : node;
+        if (next == null) {
+            return false;
+        }
+
+        if (at(level)) {
+            return visitor.test(next);
+        }
+        return find(tree, next, level + 1, visitor);
+    }
+
+    private static TreeNode<GedcomLine> deref(final GedcomTree tree, final TreeNode<GedcomLine> node) {
+        final GedcomLine line = node.getObject();
+        if (!line.isPointer()) {
+            return null;
+        }
+        return tree.getNode(line.getPointer());
     }
 
+    private boolean existsWithin(final GedcomTree tree, final TreeNode<GedcomLine> context) {
+        return find(tree, context, 0, n -> true);
+    }
+
+    /**
+     * Checks the tag and value pattern (but not any predicates).
+     */
     public boolean matches(final int i, final TreeNode<GedcomLine> node) {
         if (i < 0 || this.path.size() <= i) {
             return false;
         }
 
         final Tag tagRef = this.path.get(i);
-        if (tagRef.tagAsString.equals("*") || node.getObject().getTagString().toLowerCase().equals(tagRef.tagAsString)) {
+        if (tagRef.matchesTag(node.getObject())) {
             return matchesPattern(tagRef.pattern, node.getObject().getValue());
         }
 
         return false;
     }
 
+    /**
+     * Checks the tag, value pattern, and predicates.
+     */
+    public boolean matches(final GedcomTree tree, final int i, final TreeNode<GedcomLine> node) {
+        if (!matches(i, node)) {
+            return false;
+        }
+        for (final GedcomDataRef predicate : this.path.get(i).predicates) {
+            if (!predicate.existsWithin(tree, node)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private boolean matchesPattern(final Pattern pattern, final String value) {
         if (pattern == null) {
             return true;
@@ -108,59 +330,170 @@ public class GedcomDataRef {
     public String toString() {
         final StringBuilder sb = new StringBuilder(40);
 
-        this.path.forEach(i -> {
-            sb.append('.');
+        boolean deref = false;
+        for (final Tag i : this.path) {
+            sb.append(deref ? '>' : '.');
             sb.append(i);
-        });
+            deref = i.deref;
+        }
+        if (deref) {
+            sb.append('>');
+        }
 
         return sb.toString();
     }
 
 
 
-    private static ArrayList<Tag> parse(final String expr) throws InvalidSyntax {
-        final ArrayList<Tag> path = new ArrayList<>(8);
-
-        final int START = 0;
-        final int TAG = 1;
-        final int DOWN = 2;
+    /**
+     * Simple query planner. Returns, in document order, the top-level
+     * records that could possibly match the first item in the path:
+     * 1. the one record with the given ID, if the path starts with an ID;
+     * 2. records found by following back-links from the targets of a
+     *    pointer predicate (for example, for <CODE>.INDI[FAMC&gt;MARR]</CODE>,
+     *    check each family once, and only then find the individuals pointing
+     *    to the matching ones), if there are fewer targets than records; or
+     * 3. records with the given tag.
+     */
+    private List<TreeNode<GedcomLine>> plan(final GedcomIndex index) {
+        final GedcomTree tree = index.getTree();
+        final Tag first = this.path.get(0);
+
+        if (first.isId()) {
+            log().fine("Data reference " + this + " plan: look up ID");
+            final TreeNode<GedcomLine> record = tree.getNode(first.id);
+            if (record == null || record.parent() != tree.getRoot()) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(record);
+        }
 
-        final StreamTokenizer token = tokenizer(expr);
+        List<TreeNode<GedcomLine>> records;
+        if (first.isWildcard()) {
+            records = new ArrayList<>(tree.getRoot().getChildCount());
+            tree.getRoot().forEach(records::add);
+        } else {
+            records = index.getRecords(first.tagAsString);
+        }
 
-        int state = START;
-        while (next(token)) {
-            switch (state) {
-                case START: {
-                    if (token.ttype == '.') {
-                        //this.rooted = true;
-                    } else {
-                        token.pushBack();
-                    }
-                    state = TAG;
+        GedcomDataRef join = null;
+        Map<String, List<TreeNode<GedcomLine>>> joinBacklinks = null;
+        for (final GedcomDataRef predicate : first.predicates) {
+            final Tag link = predicate.path.get(0);
+            if (link.deref && !link.isWildcard() && !link.isId()) {
+                final Map<String, List<TreeNode<GedcomLine>>> backlinks = index.getBacklinks(link.tagAsString);
+                if (backlinks.size() < (joinBacklinks == null ? records.size() : joinBacklinks.size())) {
+                    join = predicate;
+                    joinBacklinks = backlinks;
                 }
-                break;
-                case TAG: {
-                    if (token.ttype == '.') {
-                        throw new InvalidSyntax();
+            }
+        }
+
+        if (join == null) {
+            log().fine("Data reference " + this + " plan: scan " + records.size() + " records");
+            return records;
+        }
+
+        log().fine("Data reference " + this + " plan: join through back-links from " + joinBacklinks.size() + " targets");
+        return joinBacklinks(index, join, joinBacklinks);
+    }
+
+    private static List<TreeNode<GedcomLine>> joinBacklinks(final GedcomIndex index, final GedcomDataRef predicate, final Map<String, List<TreeNode<GedcomLine>>> backlinks) {
+        final GedcomTree tree = index.getTree();
+        final Set<TreeNode<GedcomLine>> found = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        backlinks.forEach((id, pointers) -> {
+            final TreeNode<GedcomLine> target = tree.getNode(id);
+            if (target != null && (predicate.at(0) || predicate.find(tree, target, 1, n -> true))) {
+                for (final TreeNode<GedcomLine> pointer : pointers) {
+                    final TreeNode<GedcomLine> record = pointer.parent();
+                    if (record != null && record.parent() == tree.getRoot() && predicate.matches(tree, 0, pointer)) {
+                        found.add(record);
                     }
-                    path.add(new Tag(token.sval));
-                    state = DOWN;
                 }
-                break;
-                case DOWN: {
-                    if (token.ttype == '\"') {
-                        path.get(path.size()-1).setPattern(token.sval);
-                    } else if (token.ttype != '.') {
-                        throw new InvalidSyntax();
-                    } else {
-                        state = TAG;
-                    }
+            }
+        });
+
+        final List<TreeNode<GedcomLine>> records = new ArrayList<>(found);
+        records.sort(Comparator.comparingInt(index::getOrdinal));
+        return records;
+    }
+
+
+
+    private static List<Tag> parse(final String expr) throws InvalidSyntax {
+        final StreamTokenizer token = tokenizer(expr);
+
+        final List<Tag> path = parsePath(token, false);
+        if (next(token)) {
+            throw new InvalidSyntax();
+        }
+
+        return path;
+    }
+
+    private static List<Tag> parsePath(final StreamTokenizer token, final boolean nested) throws InvalidSyntax {
+        final ArrayList<Tag> path = new ArrayList<>(8);
+
+        if (!next(token)) {
+            return path;
+        }
+        if (token.ttype != '.') {
+            token.pushBack();
+        }
+
+        boolean more = true;
+        while (more) {
+            final Tag tag = parseTag(token);
+            path.add(tag);
+
+            if (!next(token)) {
+                more = false;
+            } else if (token.ttype == '>') {
+                tag.deref = true;
+                more = next(token) && !(nested && token.ttype == ']');
+                token.pushBack();
+            } else if (nested && token.ttype == ']') {
+                token.pushBack();
+                more = false;
+            } else if (token.ttype != '.') {
+                throw new InvalidSyntax();
+            }
+        }
+
+        return path;
+    }
+
+    private static Tag parseTag(final StreamTokenizer token) throws InvalidSyntax {
+        if (!next(token)) {
+            throw new InvalidSyntax();
+        }
+
+        final Tag tag;
+        if (token.ttype == StreamTokenizer.TT_WORD) {
+            tag = new Tag(token.sval);
+        } else if (token.ttype == '@') {
+            tag = Tag.id(token.sval);
+        } else {
+            throw new InvalidSyntax();
+        }
+
+        while (next(token)) {
+            if (token.ttype == '\"') {
+                tag.setPattern(token.sval);
+            } else if (token.ttype == '[') {
+                final List<Tag> predicate = parsePath(token, true);
+                if (predicate.isEmpty() || !next(token) || token.ttype != ']') {
+                    throw new InvalidSyntax();
                 }
+                tag.predicates.add(new GedcomDataRef(predicate));
+            } else {
+                token.pushBack();
                 break;
             }
         }
 
-        return path;
+        return tag;
     }
 
     private static StreamTokenizer tokenizer(final String expr) {
@@ -185,6 +518,9 @@ public class GedcomDataRef {
         // quotes (for value-matching pattern string)
         t.quoteChar('\"');
 
+        // at-signs (for record IDs)
+        t.quoteChar('@');
+
         return t;
     }
 
@@ -0,0 +1,243 @@
+package nu.mine.mosher.gedcom;
+
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.date.DatePeriod;
+import nu.mine.mosher.gedcom.date.DateRange;
+import nu.mine.mosher.gedcom.date.parser.FastDateValueParser;
+import nu.mine.mosher.gedcom.date.parser.ParseException;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static nu.mine.mosher.logging.Jul.log;
+
+
+/**
+ * Parses every DATE value in a <code>GedcomTree</code>, and optionally
+ * rewrites each valid one into canonical form (upper-case keywords and
+ * months, single spaces, no leading zeros on numbers; date phrases in
+ * parentheses are left as is).
+ *
+ * Each distinct value is parsed only once, and distinct values are
+ * parsed in parallel. Invalid values are reported as diagnostics,
+ * never changed.
+ *
+ * @author Chris Mosher
+ */
+public class GedcomDateNormalizer {
+    private final GedcomTree tree;
+
+    public GedcomDateNormalizer(final GedcomTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * A problem with the DATE value of one line.
+     */
+    public static final class Diagnostic {
+        private final TreeNode<GedcomLine> node;
+        private final String recordId;
+        private final String value;
+        private final String message;
+
+        private Diagnostic(final TreeNode<GedcomLine> node, final String recordId, final String value, final String message) {
+            this.node = node;
+            this.recordId = recordId;
+            this.value = value;
+            this.message = message;
+        }
+
+        public TreeNode<GedcomLine> getNode() {
+            return this.node;
+        }
+
+        /**
+         * @return ID of the top-level record containing the DATE (empty if it has none)
+         */
+        public String getRecordId() {
+            return this.recordId;
+        }
+
+        public String getValue() {
+            return this.value;
+        }
+
+        public String getMessage() {
+            return this.message;
+        }
+
+        @Override
+        public String toString() {
+            return (this.recordId.isEmpty() ? "" : "@" + this.recordId + "@: ") + "DATE \"" + this.value + "\": " + this.message;
+        }
+    }
+
+    public static final class Result {
+        private final Map<TreeNode<GedcomLine>, DatePeriod> dates;
+        private final List<Diagnostic> diagnostics;
+        private final int rewritten;
+
+        private Result(final Map<TreeNode<GedcomLine>, DatePeriod> dates, final List<Diagnostic> diagnostics, final int rewritten) {
+            this.dates = Collections.unmodifiableMap(dates);
+            this.diagnostics = Collections.unmodifiableList(diagnostics);
+            this.rewritten = rewritten;
+        }
+
+        /**
+         * @return parsed date of each valid DATE line (keyed by node identity)
+         */
+        public Map<TreeNode<GedcomLine>, DatePeriod> getDates() {
+            return this.dates;
+        }
+
+        /**
+         * @return problems found, in document order
+         */
+        public List<Diagnostic> getDiagnostics() {
+            return this.diagnostics;
+        }
+
+        /**
+         * @return number of DATE lines that were rewritten
+         */
+        public int getRewrittenCount() {
+            return this.rewritten;
+        }
+    }
+
+    /**
+     * Outcome of parsing one distinct value.
+     */
+    private static final class Parsed {
+        private DatePeriod date;
+        private String canonical;
+        private String error;
+    }
+
+    /**
+     * Parses all DATE values in the tree.
+     *
+     * @param rewrite if true, also rewrite valid values into canonical form
+     * @return dates and diagnostics
+     */
+    public Result normalize(final boolean rewrite) {
+        final List<TreeNode<GedcomLine>> nodes = new ArrayList<>();
+        final List<String> recordIds = new ArrayList<>();
+        for (final TreeNode<GedcomLine> record : this.tree.getRoot()) {
+            final String id = record.getObject().hasID() ? record.getObject().getID() : "";
+            record.forAll(node -> {
+                final GedcomLine line = node.getObject();
+                if (line.getTag().equals(GedcomTag.DATE) && !line.isPointer()) {
+                    nodes.add(node);
+                    recordIds.add(id);
+                }
+            });
+        }
+
+        final List<String> distinct = nodes.stream().map(n -> n.getObject().getValue().trim()).distinct().collect(Collectors.toList());
+        final List<Parsed> parsed = distinct.parallelStream().map(v -> parse(v, rewrite)).collect(Collectors.toList());
+        final Map<String, Parsed> mapValueToParsed = new HashMap<>(2 * distinct.size());
+        for (int i = 0; i < distinct.size(); ++i) {
+            mapValueToParsed.put(distinct.get(i), parsed.get(i));
+        }
+
+        final Map<TreeNode<GedcomLine>, DatePeriod> dates = new IdentityHashMap<>(nodes.size());
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+        int rewritten = 0;
+        for (int i = 0; i < nodes.size(); ++i) {
+            final TreeNode<GedcomLine> node = nodes.get(i);
+            final GedcomLine line = node.getObject();
+            final String value = line.getValue().trim();
+            final Parsed p = mapValueToParsed.get(value);
+            if (p.date != null) {
+                dates.put(node, p.date);
+                if (p.canonical != null && !p.canonical.equals(line.getValue())) {
+                    node.setObject(line.replaceValue(p.canonical));
+                    ++rewritten;
+                }
+            } else if (p.error != null) {
+                diagnostics.add(new Diagnostic(node, recordIds.get(i), value, p.error));
+            }
+        }
+
+        log().info("Parsed " + nodes.size() + " DATE values (" + distinct.size() + " distinct): " + diagnostics.size() + " invalid, " + rewritten + " rewritten.");
+        return new Result(dates, diagnostics, rewritten);
+    }
+
+    private static Parsed parse(final String value, final boolean rewrite) {
+        final Parsed p = new Parsed();
+        if (value.isEmpty()) {
+            return p;
+        }
+        try {
+            p.date = FastDateValueParser.parse(value);
+        } catch (final ParseException e) {
+            p.error = e.getCause() instanceof DateRange.DatesOutOfOrder ? e.getCause().getMessage() : "Invalid DATE format.";
+            return p;
+        }
+        if (rewrite) {
+            p.canonical = canonical(value, p.date);
+        }
+        return p;
+    }
+
+    /**
+     * Gets the canonical form of the given (valid) value, but only if it
+     * parses to exactly the same date.
+     */
+    private static String canonical(final String value, final DatePeriod date) {
+        final String c = canonical(value);
+        if (c.equals(value)) {
+            return c;
+        }
+        try {
+            final DatePeriod check = FastDateValueParser.parse(c);
+            if (check.equals(date) && check.toString().equals(date.toString())) {
+                return c;
+            }
+        } catch (final ParseException ignore) {
+            // fall through
+        }
+        log().warning("Could not normalize DATE value: \"" + value + "\"");
+        return null;
+    }
+
+    static String canonical(final String value) {
+        final StringBuilder sb = new StringBuilder(value.length());
+        boolean phrase = false;
+        boolean escape = false;
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            if (phrase) {
+                sb.append(c);
+                phrase = c != ')';
+            } else if (c == '(') {
+                sb.append(c);
+                phrase = true;
+            } else if (c == '@') {
+                sb.append(c);
+                escape = !escape;
+            } else if (c == ' ') {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(c);
+                }
+            } else if (c == '0' && !escape && isWordStart(sb) && i + 1 < value.length() && isDigit(value.charAt(i + 1))) {
+                // drop leading zero
+            } else if ('a' <= c && c <= 'z') {
+                sb.append((char)(c - ('a' - 'A')));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isWordStart(final CharSequence sb) {
+        return sb.length() == 0 || sb.charAt(sb.length() - 1) == ' ';
+    }
+
+    private static boolean isDigit(final char c) {
+        return '0' <= c && c <= '9';
+    }
+}
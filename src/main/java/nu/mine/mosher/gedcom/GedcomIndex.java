@@ -0,0 +1,95 @@
+package nu.mine.mosher.gedcom;
+
+import nu.mine.mosher.collection.TreeNode;
+
+import java.util.*;
+
+/**
+ * Read-only lookup tables over a <code>GedcomTree</code>: top-level records
+ * by tag, document position of each top-level record, and back-links
+ * (which pointer lines point at a given ID).
+ *
+ * The index is a snapshot; build a new one after editing the tree.
+ *
+ * @author Chris Mosher
+ */
+public class GedcomIndex {
+    private final GedcomTree tree;
+    private final Map<String, List<TreeNode<GedcomLine>>> mapTagToRecords = new HashMap<>();
+    private final Map<TreeNode<GedcomLine>, Integer> mapRecordToOrdinal = new IdentityHashMap<>();
+    private final Map<String, Map<String, List<TreeNode<GedcomLine>>>> mapTagToBacklinks = new HashMap<>();
+
+    public GedcomIndex(final GedcomTree tree) {
+        this.tree = tree;
+
+        int i = 0;
+        for (final TreeNode<GedcomLine> record : tree.getRoot()) {
+            this.mapRecordToOrdinal.put(record, i++);
+            add(this.mapTagToRecords, key(record), record);
+            record.forAll(this::addBacklink);
+        }
+    }
+
+    public GedcomTree getTree() {
+        return this.tree;
+    }
+
+    /**
+     * Gets all top-level records with the given tag, in document order.
+     *
+     * @param tag tag (case-insensitive), for example "INDI"
+     * @return records (never <code>null</code>)
+     */
+    public List<TreeNode<GedcomLine>> getRecords(final String tag) {
+        return Collections.unmodifiableList(this.mapTagToRecords.getOrDefault(tag.toLowerCase(), Collections.emptyList()));
+    }
+
+    /**
+     * Gets the position of the given top-level record within the file.
+     *
+     * @param record top-level record
+     * @return zero-based position, or -1 if the node is not a top-level record
+     */
+    public int getOrdinal(final TreeNode<GedcomLine> record) {
+        return this.mapRecordToOrdinal.getOrDefault(record, -1);
+    }
+
+    /**
+     * Gets the pointer lines with the given tag, keyed by the ID they point to.
+     * For example, <code>getBacklinks("FAMC").get("F1")</code> are all the
+     * <code>FAMC</code> lines pointing to <code>@F1@</code>.
+     *
+     * @param tag tag of the pointer lines (case-insensitive)
+     * @return map of ID to pointer lines (never <code>null</code>)
+     */
+    public Map<String, List<TreeNode<GedcomLine>>> getBacklinks(final String tag) {
+        return Collections.unmodifiableMap(this.mapTagToBacklinks.getOrDefault(tag.toLowerCase(), Collections.emptyMap()));
+    }
+
+    /**
+     * Gets all the pointer lines, of any tag, pointing to the given ID.
+     *
+     * @param id ID (without at-signs)
+     * @return pointer lines, in no particular order
+     */
+    public List<TreeNode<GedcomLine>> getBacklinksTo(final String id) {
+        final List<TreeNode<GedcomLine>> r = new ArrayList<>();
+        this.mapTagToBacklinks.values().forEach(m -> r.addAll(m.getOrDefault(id, Collections.emptyList())));
+        return r;
+    }
+
+    private void addBacklink(final TreeNode<GedcomLine> node) {
+        final GedcomLine line = node.getObject();
+        if (line.isPointer()) {
+            add(this.mapTagToBacklinks.computeIfAbsent(key(node), k -> new HashMap<>()), line.getPointer(), node);
+        }
+    }
+
+    private static String key(final TreeNode<GedcomLine> node) {
+        return node.getObject().getTagString().toLowerCase();
+    }
+
+    private static void add(final Map<String, List<TreeNode<GedcomLine>>> map, final String key, final TreeNode<GedcomLine> node) {
+        map.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+    }
+}
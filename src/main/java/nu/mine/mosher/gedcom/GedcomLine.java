@@ -1,7 +1,10 @@
 package nu.mine.mosher.gedcom;
 
 
+import java.io.IOException;
+
 import static java.text.Normalizer.Form.NFC;
+import static java.text.Normalizer.isNormalized;
 import static java.text.Normalizer.normalize;
 
 /**
@@ -79,10 +82,6 @@ public class GedcomLine implements Comparable<GedcomLine> {
         return s.replaceAll("@@", "@");
     }
 
-    private static String restoreAts(final String s) {
-        return s.replaceAll("@", "@@");
-    }
-
     public GedcomLine replaceValue(final String newValue) {
         return new GedcomLine(this.level, "@" + this.id + "@", this.tagString, newValue);
     }
@@ -160,31 +159,99 @@ public class GedcomLine implements Comparable<GedcomLine> {
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder(256);
+        appendTo(sb);
+        return sb.toString();
+    }
+
+    public void appendTo(final StringBuilder appendTo) {
+        try {
+            appendTo((Appendable)appendTo);
+        } catch (final IOException e) {
+            /*
+             * StringBuilder does not throw IOException, so this should never
+             * happen.
+             */
+            throw new IllegalStateException(e);
+        }
+    }
 
-        sb.append(this.level).append(" ");
+    /**
+     * Appends this line, as it is written in a GEDCOM file (but without any
+     * line terminator), to the given <code>Appendable</code>. Writes each
+     * part directly, without building any intermediate strings (except
+     * for values that contain at-signs or need to be normalized).
+     *
+     * @param appendTo <code>Appendable</code> to append to
+     * @throws IOException if <code>appendTo</code> does
+     */
+    public void appendTo(final Appendable appendTo) throws IOException {
+        appendLevel(appendTo);
+        appendTo.append(' ');
 
         if (hasID()) {
-            sb.append("@").append(this.id).append("@ ");
+            appendTo.append('@').append(this.id).append("@ ");
         }
 
-        sb.append(this.tagString);
+        appendTo.append(this.tagString);
 
-        if (isPointer() || this.value.length() > 0) {
-            sb.append(" ");
+        if (isPointer()) {
+            appendTo.append(" @").append(this.pointer).append('@');
+        } else if (this.value.length() > 0) {
+            appendTo.append(' ');
+            if (this.tag.equals(GedcomTag.DATE)) {
+                appendTo.append(this.value);
+            } else {
+                appendValue(appendTo);
+            }
         }
+    }
 
-        if (isPointer()) {
-            sb.append("@").append(this.pointer).append("@");
+    private void appendLevel(final Appendable appendTo) throws IOException {
+        if (0 <= this.level && this.level < 100) {
+            if (this.level >= 10) {
+                appendTo.append((char)('0' + this.level / 10));
+            }
+            appendTo.append((char)('0' + this.level % 10));
         } else {
-            String v = this.value;
-            if (!this.tag.equals(GedcomTag.DATE)) {
-                v = restoreAts(v);
-                // TODO make normalization optional
-                v = normalize(v, NFC);
+            appendTo.append(Integer.toString(this.level));
+        }
+    }
+
+    private void appendValue(final Appendable appendTo) throws IOException {
+        boolean ats = false;
+        boolean composed = true;
+        for (int i = 0; i < this.value.length(); ++i) {
+            final char c = this.value.charAt(i);
+            if (c == '@') {
+                ats = true;
+            } else if (c >= '\u0300') {
+                // (nothing below the first combining mark can change under NFC)
+                composed = false;
             }
-            sb.append(v);
         }
-        return sb.toString();
+
+        // TODO make normalization optional
+        final String v = composed || isNormalized(this.value, NFC) ? this.value : normalize(this.value, NFC);
+
+        if (!ats) {
+            appendTo.append(v);
+            return;
+        }
+
+        // double each at-sign
+        int start = 0;
+        for (int i = v.indexOf('@'); i >= 0; i = v.indexOf('@', start)) {
+            appendTo.append(v, start, i + 1).append('@');
+            start = i + 1;
+        }
+        appendTo.append(v, start, v.length());
+    }
+
+    /**
+     * @return if this line, as written, would end with a space
+     */
+    public boolean hasTrailingSpace() {
+        return !isPointer() && this.value.endsWith(" ");
     }
 
     public void dump(final StringBuilder appendTo) {
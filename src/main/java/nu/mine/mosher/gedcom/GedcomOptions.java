@@ -19,6 +19,8 @@ public class GedcomOptions {
     public boolean help = false;
     public File input = null;
     public boolean model = false;
+    public boolean passthrough = false;
+    public boolean dates = false;
 
     public void h() {
         help();
@@ -41,7 +43,9 @@ public class GedcomOptions {
         "-s, --timestamp      Update .HEAD.DATE.TIME with the current time, in UTC.",
         "-u, --utf8           Convert output to UTF-8 encoding. RECOMMENDED.",
         "-e, --encoding[=ENC] Force input encoding to be ENC; do not detect it.",
-        "-c, --conc[=WIDTH]   Rebuild CONC/CONT lines, formatting to maximum width WIDTH"
+        "-c, --conc[=WIDTH]   Rebuild CONC/CONT lines, formatting to maximum width WIDTH",
+        "-p, --passthrough    Copy unchanged records to output byte-for-byte (if encoding is unchanged).",
+        "-d, --dates          Check all DATE values, and rewrite valid ones in canonical form."
         );
         //@formatter:on
 
@@ -108,6 +112,22 @@ public class GedcomOptions {
         }
     }
 
+    public void p() {
+        passthrough();
+    }
+
+    public void passthrough() {
+        this.passthrough = true;
+    }
+
+    public void d() {
+        dates();
+    }
+
+    public void dates() {
+        this.dates = true;
+    }
+
     public void input(final String gedcom) {
         this.input = new File(gedcom);
     }
@@ -0,0 +1,176 @@
+package nu.mine.mosher.gedcom;
+
+import nu.mine.mosher.collection.TreeNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static nu.mine.mosher.logging.Jul.log;
+
+/**
+ * Keeps the original bytes of each top-level record of a <code>GedcomTree</code>,
+ * so that records that have not been modified since they were read can be
+ * written back out verbatim, without re-serializing, normalizing, or encoding them.
+ *
+ * This only works for encodings where line breaks and the level number
+ * are plain ASCII bytes (for example, UTF-8 or ASCII; but not UTF-16), and
+ * only when writing in the same encoding as was read (which rules out any
+ * encoding that <code>GedcomTree.setCharset</code> converts to UTF-8).
+ * Rewritten records should use the same line breaks as the original
+ * (see {@link GedcomPassthrough#getLineBreak}).
+ *
+ * @author Chris Mosher
+ */
+final class GedcomPassthrough {
+    private static final byte[] ASCII_PROBE = "0 \r\n@".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] raw;
+    private final Charset charset;
+    private final String lineBreak;
+    private final Map<TreeNode<GedcomLine>, int[]> mapRecordToSpan = new IdentityHashMap<>();
+
+    private GedcomPassthrough(final byte[] raw, final Charset charset) {
+        this.raw = raw;
+        this.charset = charset;
+        this.lineBreak = findLineBreak(raw);
+    }
+
+    /**
+     * Finds the span of bytes of each top-level record within the raw input,
+     * and matches them to the top-level nodes of the tree (which must have
+     * just been parsed from the same input).
+     *
+     * @param raw entire input
+     * @param charset encoding of the input
+     * @param tree tree parsed from the input
+     * @return passthrough information, or empty if it is not possible for this input
+     */
+    static Optional<GedcomPassthrough> create(final byte[] raw, final Charset charset, final GedcomTree tree) {
+        if (!Arrays.equals(ASCII_PROBE, "0 \r\n@".getBytes(charset))) {
+            log().info("Cannot pass through original records for encoding " + charset.name() + ".");
+            return Optional.empty();
+        }
+
+        final List<int[]> spans = findRecords(raw);
+        if (spans.size() != tree.getRoot().getChildCount()) {
+            log().warning("Found " + spans.size() + " records in raw input, but parsed " + tree.getRoot().getChildCount() + "; will not pass through original records.");
+            return Optional.empty();
+        }
+
+        final GedcomPassthrough passthrough = new GedcomPassthrough(raw, charset);
+        final Iterator<int[]> span = spans.iterator();
+        tree.getRoot().forEach(record -> passthrough.mapRecordToSpan.put(record, span.next()));
+        return Optional.of(passthrough);
+    }
+
+    /**
+     * @return the line break of the first line of the original input ("\n" if there are none)
+     */
+    String getLineBreak() {
+        return this.lineBreak;
+    }
+
+    boolean canWriteAs(final Charset charset) {
+        return this.charset.equals(charset);
+    }
+
+    /**
+     * Checks if the given top-level record can be copied verbatim.
+     *
+     * @param record top-level record
+     * @return true if the record was read from the original input and has not been modified
+     */
+    boolean isVerbatim(final TreeNode<GedcomLine> record) {
+        return !record.isModified() && this.mapRecordToSpan.containsKey(record);
+    }
+
+    /**
+     * Writes the original bytes of the given record (which must be verbatim).
+     * Makes sure it ends with a line break.
+     */
+    void write(final TreeNode<GedcomLine> record, final OutputStream out) throws IOException {
+        final int[] span = this.mapRecordToSpan.get(record);
+        final int start = span[0];
+        final int end = span[1];
+        out.write(this.raw, start, end - start);
+        if (end == start || !isEol(this.raw[end - 1])) {
+            out.write(this.lineBreak.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static String findLineBreak(final byte[] raw) {
+        for (int i = 0; i < raw.length; ++i) {
+            if (raw[i] == '\r') {
+                return i + 1 < raw.length && raw[i + 1] == '\n' ? "\r\n" : "\r";
+            }
+            if (raw[i] == '\n') {
+                return i + 1 < raw.length && raw[i + 1] == '\r' ? "\n\r" : "\n";
+            }
+        }
+        return "\n";
+    }
+
+    /**
+     * Finds the start and end of each top-level record; that is,
+     * each span beginning with a line that has a level number of zero.
+     */
+    private static List<int[]> findRecords(final byte[] raw) {
+        final List<int[]> spans = new ArrayList<>(1024);
+
+        int start = -1;
+        int i = 0;
+        while (i < raw.length) {
+            final int line = i;
+            while (i < raw.length && !isEol(raw[i])) {
+                ++i;
+            }
+            final boolean levelZero = isLevelZero(raw, line, i);
+            while (i < raw.length && isEol(raw[i])) {
+                ++i;
+            }
+
+            if (levelZero) {
+                if (start >= 0) {
+                    spans.add(new int[]{start, line});
+                }
+                // the first record also gets anything before it (such as a byte order mark)
+                start = spans.isEmpty() ? 0 : line;
+            }
+        }
+        if (start >= 0) {
+            spans.add(new int[]{start, raw.length});
+        }
+
+        return spans;
+    }
+
+    /**
+     * Checks if the level number (first token) of the line is zero,
+     * the same way GedcomParser would parse it.
+     */
+    private static boolean isLevelZero(final byte[] raw, final int start, final int end) {
+        int i = start;
+        if (start == 0 && end >= 3 && raw[0] == (byte)0xef && raw[1] == (byte)0xbb && raw[2] == (byte)0xbf) {
+            i = 3;
+        }
+        while (i < end && isSpace(raw[i])) {
+            ++i;
+        }
+        final int digits = i;
+        while (i < end && raw[i] == '0') {
+            ++i;
+        }
+        return digits < i && (i == end || isSpace(raw[i]));
+    }
+
+    private static boolean isEol(final byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static boolean isSpace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
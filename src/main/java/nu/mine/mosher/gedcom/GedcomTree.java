@@ -23,6 +23,9 @@ public class GedcomTree {
     private int maxLength = 0;
     private final TreeNode<GedcomLine> root;
     private final Map<String, TreeNode<GedcomLine>> mapIDtoNode = new HashMap<>();
+    private int cOrdinal;
+
+    private GedcomPassthrough passthrough;
 
     private int prevLevel;
     private TreeNode<GedcomLine> prevNode;
@@ -58,7 +61,8 @@ public class GedcomTree {
         for (final TreeNode<GedcomLine> r : this.root) {
             if (r.getObject().getTag().equals(GedcomTag.HEAD)) {
                 for (final TreeNode<GedcomLine> c : r) {
-                    if (c.getObject().getTag().equals(GedcomTag.CHAR)) {
+                    // (only if it changes, so an unchanged HEAD still counts as unmodified)
+                    if (c.getObject().getTag().equals(GedcomTag.CHAR) && !c.getObject().getValue().equals(mapCharsetToGedcom.get(charset))) {
                         c.setObject(c.getObject().replaceValue(mapCharsetToGedcom.get(charset)));
                     }
                 }
@@ -68,6 +72,14 @@ public class GedcomTree {
         log().info("Set output character encoding to " + this.charset.name());
     }
 
+    void setPassthrough(final GedcomPassthrough passthrough) {
+        this.passthrough = passthrough;
+    }
+
+    GedcomPassthrough getPassthrough() {
+        return this.passthrough;
+    }
+
     void setMaxLength(final int maxLength) {
         this.maxLength = maxLength;
     }
@@ -130,6 +142,45 @@ public class GedcomTree {
         return this.mapIDtoNode.get(id);
     }
 
+    /**
+     * Gives an ordinal (see {@link TreeNode#getOrdinal(Object)}) to every node in
+     * this tree that doesn't have one yet. A node keeps its ordinal for as
+     * long as it exists, even if it is moved or removed, and no two nodes of
+     * this tree get the same one. Ordinals assigned by another tree (to a node
+     * moved from there) don't count; the node gets a new one from this tree.
+     */
+    public void assignOrdinals() {
+        assignOrdinals(this.root);
+    }
+
+    /**
+     * Gives an ordinal to every node in the given subtree that doesn't have one yet.
+     *
+     * @param node root of the subtree (which must be part of this tree)
+     */
+    public synchronized void assignOrdinals(final TreeNode<GedcomLine> node) {
+        node.forAll(n -> {
+            if (n.getOrdinal(this) < 0) {
+                n.setOrdinal(this, this.cOrdinal++);
+            }
+        });
+    }
+
+    /**
+     * @param node a node
+     * @return the ordinal this tree gave the node, or -1 if it has none from this tree
+     */
+    public int getOrdinal(final TreeNode<GedcomLine> node) {
+        return node.getOrdinal(this);
+    }
+
+    /**
+     * @return one more than the greatest ordinal assigned so far
+     */
+    public synchronized int getOrdinalCount() {
+        return this.cOrdinal;
+    }
+
     /**
      * Returns a string representation of this tree. The string returned is
      * intended for debugging purposes, not for any kind of persistence.
@@ -141,7 +192,7 @@ public class GedcomTree {
         final StringBuilder sb = new StringBuilder(1024);
 
         try {
-            this.root.appendStringDeep(sb);
+            appendTo(sb);
         } catch (final IOException e) {
             /*
              * StringBuffer does not throw IOException, so this should never
@@ -153,6 +204,54 @@ public class GedcomTree {
         return sb.toString();
     }
 
+    /**
+     * Writes this tree, in GEDCOM format, to the given <code>Appendable</code>.
+     *
+     * @param appendTo where to write
+     * @throws IOException if <code>appendTo</code> does
+     */
+    public void appendTo(final Appendable appendTo) throws IOException {
+        appendTo(this.root, appendTo);
+    }
+
+    /**
+     * Writes the given node and all nodes under it, in GEDCOM format,
+     * to the given <code>Appendable</code>.
+     *
+     * @param node the (sub-)tree to write
+     * @param appendTo where to write
+     * @throws IOException if <code>appendTo</code> does
+     */
+    public static void appendTo(final TreeNode<GedcomLine> node, final Appendable appendTo) throws IOException {
+        appendTo(node, appendTo, "\n");
+    }
+
+    /**
+     * Writes the given node and all nodes under it, in GEDCOM format,
+     * to the given <code>Appendable</code>, ending each line with the
+     * given line break.
+     *
+     * @param node the (sub-)tree to write
+     * @param appendTo where to write
+     * @param lineBreak line break, for example "\n" or "\r\n"
+     * @throws IOException if <code>appendTo</code> does
+     */
+    public static void appendTo(final TreeNode<GedcomLine> node, final Appendable appendTo, final String lineBreak) throws IOException {
+        final GedcomLine line = node.getObject();
+        if (line != null) {
+            line.appendTo(appendTo);
+            appendTo.append(lineBreak);
+            if (line.hasTrailingSpace()) {
+                log().warning("Line ends with whitespace; some systems may erroneously truncate it:");
+                log().warning(line + "|");
+            }
+        }
+
+        for (final TreeNode<GedcomLine> child : node) {
+            appendTo(child, appendTo, lineBreak);
+        }
+    }
+
     /**
      * Gets the root of this tree.
      *
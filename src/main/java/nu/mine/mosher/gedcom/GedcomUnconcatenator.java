@@ -1,149 +1,167 @@
 package nu.mine.mosher.gedcom;
 
 
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.function.IntUnaryOperator;
 
 import nu.mine.mosher.collection.TreeNode;
 
 
 /**
+ * Splits long or multi-line values into CONT and CONC lines.
+ *
+ * Widths are measured in bytes of the tree's output character
+ * encoding (the GEDCOM line length limit is in bytes), or in
+ * <code>char</code>s if the tree has no encoding set. Values are
+ * measured as stored (decomposed), which is never narrower than
+ * the normalized (NFC) output. Top-level records are processed
+ * in parallel.
+ *
  * @author Chris Mosher
  */
 public class GedcomUnconcatenator {
     public static final int DEFAULT_MAX_LENGTH = 60;
 
-    private static final int KEEP_TRAILING_EMPTY_STRINGS = -999;
-    private static final Pattern LINEBREAK = Pattern.compile("\\R");
-
 
 
     private final GedcomTree tree;
     private final int maxLength;
+    private final IntUnaryOperator widthValue;
+    private final IntUnaryOperator widthDate;
 
 
     public GedcomUnconcatenator(final GedcomTree tree) {
         this.tree = tree;
         int m = tree.getMaxLength();
         this.maxLength = m != 0 ? m : DEFAULT_MAX_LENGTH;
+        this.widthValue = width(tree.getCharset(), true);
+        this.widthDate = width(tree.getCharset(), false);
     }
 
     public void unconcatenate() {
-        unconcDeep(this.tree.getRoot());
+        final List<TreeNode<GedcomLine>> records = new ArrayList<>(this.tree.getRoot().getChildCount());
+        this.tree.getRoot().forEach(records::add);
+        records.parallelStream().forEach(r -> unconcDeep(r, new ContConc()));
     }
 
 
 
-    private void unconcDeep(final TreeNode<GedcomLine> node) {
-        node.forEach(this::unconcDeep);
-        unconc(node);
+    private void unconcDeep(final TreeNode<GedcomLine> node, final ContConc contConc) {
+        node.forEach(c -> unconcDeep(c, contConc));
+        unconc(node, contConc);
     }
 
-    private void unconc(final TreeNode<GedcomLine> node) {
+    private void unconc(final TreeNode<GedcomLine> node, final ContConc contConc) {
         final GedcomLine gedcomLine = node.getObject();
-        if (needsWork(gedcomLine)) {
-            final List<GedcomLine> gedcomLinesToAdd = new ArrayList<>(8);
-            splitToContConc(gedcomLine.getValue(), this.maxLength, gedcomLine.getLevel() + 1, gedcomLinesToAdd);
-            addContConcChildren(gedcomLinesToAdd, node);
+        if (gedcomLine == null || gedcomLine.isPointer()) {
+            return;
         }
-    }
-
-    private boolean needsWork(final GedcomLine line) {
-        return (line != null)  && (line.getValue().length() > this.maxLength || LINEBREAK.matcher(line.getValue()).find());
+        contConc.reset(gedcomLine.getLevel() + 1);
+        final IntUnaryOperator width = gedcomLine.getTag().equals(GedcomTag.DATE) ? this.widthDate : this.widthValue;
+        split(gedcomLine.getValue(), this.maxLength, width, true, null, contConc);
+        contConc.addTo(node);
     }
 
 
 
+    /**
+     * Receives the segments of a value, in order.
+     */
+    private interface Segments {
+        /**
+         * @param segment the text of the segment
+         * @param startsLine true if the segment starts a new line (CONT), false if it
+         *                   continues the previous one (CONC)
+         */
+        void add(String segment, boolean startsLine);
+    }
 
+    /**
+     * Builds CONT/CONC child nodes. One of these is reused for all the lines
+     * of a record, so lines that don't need splitting cost no allocation.
+     */
+    private static final class ContConc implements Segments {
+        private final List<TreeNode<GedcomLine>> rest = new ArrayList<>(8);
+        private String first;
+        private int level;
+
+        void reset(final int level) {
+            this.first = null;
+            this.rest.clear();
+            this.level = level;
+        }
 
-
-    private static void addContConcChildren(final List<GedcomLine> lines, final TreeNode<GedcomLine> node) {
-        final TreeNode<GedcomLine> insertionPoint = node.getFirstChildOrNull();
-        boolean first = true;
-        for (final GedcomLine line : lines) {
-            if (first) {
-                first = false;
-                node.setObject(node.getObject().replaceValue(line.getValue()));
+        @Override
+        public void add(final String segment, final boolean startsLine) {
+            if (this.first == null) {
+                this.first = segment;
             } else {
-                node.addChildBefore(new TreeNode<>(line), insertionPoint);
+                final GedcomTag tag = startsLine ? GedcomTag.CONT : GedcomTag.CONC;
+                this.rest.add(new TreeNode<>(new GedcomLine(this.level, "", tag.name(), segment)));
             }
         }
+
+        void addTo(final TreeNode<GedcomLine> node) {
+            if (this.rest.isEmpty()) {
+                return;
+            }
+            node.setObject(node.getObject().replaceValue(this.first));
+            node.addChildren(0, this.rest);
+            this.rest.clear();
+        }
     }
 
     /**
      * Utility method to help with generating CONT/CONC lines for GEDCOM.
-     * Splits originalValue into lines, and splits each line into segments
-     * at most maxLen in size each.
-     * <p>
-     * The results are appended to gedcomLines. For example:
-     * <p>
-     * CONT line-0-segment0
-     * CONC line-0-segment1
-     * CONC line-0-segment2
-     * CONT line-1-segment0
-     * CONT line-2-segment0
-     * CONC line-2-segment1
-     * <p>
-     * Each level will be set to gedcomLevel.
-     * <p>
-     * When you use the resulting gedcomLines, you would typically use
-     * only the value from the first line and reset the existing node's
-     * value to it. Then append as (first-most) children the remaining
-     * gedcomLines to the existing node;
-     *
-     * TODO look at the whole line, not just the value, and make all final GEDCOM lines the same length
+     * Splits line into segments at most maxLen (<code>char</code>s) in size each,
+     * and appends them to segments.
      *
-     * @param originalValue
+     * @param line
      * @param maxLen
-     * @param gedcomLevel
-     * @param gedcomLines
+     * @param segments
      */
-    private static void splitToContConc(final String originalValue, final int maxLen, final int gedcomLevel, final List<GedcomLine> gedcomLines) {
-        for (final String line : LINEBREAK.split(originalValue, KEEP_TRAILING_EMPTY_STRINGS)) {
-            addLines(line, maxLen, gedcomLevel, gedcomLines);
-        }
-    }
-
-    private static void addLines(final String line, final int maxLen, final int gedcomLevel, final List<GedcomLine> gedcomLines) {
-        final List<String> segments = new ArrayList<>(8);
-        splitLineIntoSegments(line, maxLen, segments);
-        addSegments(segments, gedcomLevel, gedcomLines);
-    }
-
-    private static void addSegments(final List<String> segments, final int gedcomLevel, final List<GedcomLine> gedcomLines) {
-        GedcomTag tag = GedcomTag.CONT;
-        for (final String segment : segments) {
-            gedcomLines.add(new GedcomLine(gedcomLevel, "", tag.name(), segment));
-            tag = GedcomTag.CONC;
-        }
+    public static void splitLineIntoSegments(final String line, final int maxLen, final List<String> segments) {
+        splitLineIntoSegments(line, maxLen, null, segments);
     }
 
-    public static void splitLineIntoSegments(final String line, final int maxLen, final List<String> segments) {
+    /**
+     * Same as {@link GedcomUnconcatenator#splitLineIntoSegments(String, int, List)},
+     * but measures maxLen in bytes of the given encoding.
+     *
+     * @param line
+     * @param maxLen
+     * @param charset encoding, or <code>null</code> to measure in <code>char</code>s
+     * @param segments
+     */
+    public static void splitLineIntoSegments(final String line, final int maxLen, final Charset charset, final List<String> segments) {
         assert 0 < maxLen && maxLen < 100000;
         assert segments != null;
 
         // TODO: log WARNING if segments is not empty upon entry
 
-        String s = line;
-
-        final Sanity sanity = Sanity.create(100000);
-        while (s.length() > maxLen) {
-            sanity.check();
-
-            final String[] lr = cut(s, findSplitPosition(s, maxLen));
-            segments.add(lr[0]);
-            s = lr[1];
-        }
-
-        segments.add(s);
+        split(line, maxLen, width(charset, false), false, Sanity.create(100000), (segment, startsLine) -> segments.add(segment));
     }
 
     /**
-     * Apply split rules in order of precedence to find the (first)
-     * position in the given line at which to break it.
-     *
-     * The three algorithms are as follows, in order of precedence:
+     * Splits value into lines (if breakLines is true), and splits each line
+     * into segments at most maxLen wide. For example:
+     * <p>
+     * CONT line-0-segment0
+     * CONC line-0-segment1
+     * CONC line-0-segment2
+     * CONT line-1-segment0
+     * CONT line-2-segment0
+     * CONC line-2-segment1
+     * <p>
+     * The value is scanned once, code point by code point. Each segment is
+     * broken at the last possible position, applying these rules in order
+     * of precedence:
      * 1. break within a word (leaving no whitespace on either the
      *    end of the first line or the beginning of the second line),
      *
@@ -153,61 +171,172 @@ public class GedcomUnconcatenator {
      *
      * 3. break at maxLength, regardless of whitespace.
      *
-     * @param line
+     * The positions for rules 1 and 2 are tracked during the scan (along
+     * with the width up to each of them), so no backing-up is needed.
+     *
+     * TODO look at the whole line, not just the value, and make all final GEDCOM lines the same length
+     *
+     * @param value
      * @param maxLen
-     * @return
+     * @param width width of each code point
+     * @param breakLines
+     * @param sanity limit on the number of segments, or <code>null</code> for none
+     * @param segments
      */
-    private static int findSplitPosition(final String line, int maxLen) {
-        int pos = 0;
+    private static void split(final String value, final int maxLen, final IntUnaryOperator width, final boolean breakLines, final Sanity sanity, final Segments segments) {
+        final int len = value.length();
+
+        boolean startsLine = true;
+        int start = 0;
+        long widthStart = 0;
+        int posWithin = -1;
+        long widthWithin = 0;
+        int posEnd = -1;
+        long widthEnd = 0;
+        boolean prevNonSpace = false;
+
+        long w = 0;
+        int i = 0;
+        while (i < len) {
+            final int cp = value.codePointAt(i);
+            final int cc = Character.charCount(cp);
+
+            if (breakLines && isLineBreak(cp)) {
+                segments.add(value.substring(start, i), startsLine);
+                startsLine = true;
+                i += (cp == '\r' && i + 1 < len && value.charAt(i + 1) == '\n') ? 2 : 1;
+                start = i;
+                widthStart = w;
+                posWithin = posEnd = -1;
+                prevNonSpace = false;
+                continue;
+            }
 
-        if (pos <= 0) {
-            pos = breakOnWord(line, maxLen, true);
-        }
-        if (pos <= 0) {
-            pos = breakOnWord(line, maxLen, false);
-        }
-        if (pos <= 0) {
-            // TODO is it worth logging this case?
-            pos = maxLen;
-        }
+            final boolean space = Character.isWhitespace(cp);
+            if (start < i && prevNonSpace && !isCombiningMark(cp)) {
+                posEnd = i;
+                widthEnd = w;
+                if (!space) {
+                    posWithin = i;
+                    widthWithin = w;
+                }
+            }
 
-        return pos;
-    }
+            final int cw = width.applyAsInt(cp);
+            while (start < i && maxLen < w - widthStart + cw) {
+                if (sanity != null) {
+                    sanity.check();
+                }
+                final int pos;
+                final long widthPos;
+                if (start < posWithin) {
+                    pos = posWithin;
+                    widthPos = widthWithin;
+                } else if (start < posEnd) {
+                    pos = posEnd;
+                    widthPos = widthEnd;
+                } else {
+                    pos = i;
+                    widthPos = w;
+                }
+                segments.add(value.substring(start, pos), startsLine);
+                startsLine = false;
+                start = pos;
+                widthStart = widthPos;
+            }
 
-    private static int breakOnWord(final String s, final int maxLen, final boolean within) {
-        int pos = maxLen;
-        final Sanity sanity = Sanity.create(100000);
-        while (pos > 0 && (spL(s, pos) || (within && spR(s, pos)))) {
-            sanity.check();
-            --pos;
+            w += cw;
+            prevNonSpace = !space;
+            i += cc;
         }
-        return pos;
+
+        segments.add(value.substring(start), startsLine);
     }
 
     /**
-     * Is there a space to the Left of pos in String s?
-     *
-     * @param s
-     * @param pos
-     * @return
+     * Values are stored decomposed (NFD), so never separate a
+     * combining mark from the character before it.
      */
-    private static boolean spL(final String s, final int pos) {
-        return Character.isWhitespace(s.codePointBefore(pos));
+    private static boolean isCombiningMark(final int cp) {
+        switch (Character.getType(cp)) {
+            case Character.NON_SPACING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isLineBreak(final int cp) {
+        // same as regular expression \R
+        switch (cp) {
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+            case '\u0085':
+            case '\u2028':
+            case '\u2029':
+                return true;
+            default:
+                return false;
+        }
     }
 
     /**
-     * Is there a space to the Right of pos in String s?
-     *
-     * @param s
-     * @param pos
-     * @return
+     * Gets a function for the width of a code point when written in the
+     * given encoding (or in <code>char</code>s if charset is <code>null</code>).
+     * If doubleAts is true, at-signs count double, as they will when written.
      */
-    private static boolean spR(final String s, final int pos) {
-        return Character.isWhitespace(s.codePointAt(pos));
+    private static IntUnaryOperator width(final Charset charset, final boolean doubleAts) {
+        final IntUnaryOperator w = width(charset);
+        if (!doubleAts || charset == null) {
+            return w;
+        }
+        return cp -> cp == '@' ? 2 * w.applyAsInt(cp) : w.applyAsInt(cp);
+    }
+
+    private static IntUnaryOperator width(final Charset charset) {
+        if (charset == null) {
+            return Character::charCount;
+        }
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return GedcomUnconcatenator::widthUtf8;
+        }
+        if (charset.name().startsWith("UTF-16")) {
+            return cp -> 2 * Character.charCount(cp);
+        }
+        final CharsetEncoder encoder = charset.newEncoder();
+        if (encoder.maxBytesPerChar() <= 1.0f) {
+            return cp -> 1;
+        }
+        // (records are split in parallel, so each thread gets its own encoder, reused for every character)
+        final ThreadLocal<CharsetEncoder> encoders = ThreadLocal.withInitial(charset::newEncoder);
+        return cp -> widthEncoded(encoders.get(), cp);
+    }
+
+    private static int widthUtf8(final int cp) {
+        if (cp < 0x80) {
+            return 1;
+        }
+        if (cp < 0x800) {
+            return 2;
+        }
+        if (cp < 0x10000) {
+            return 3;
+        }
+        return 4;
     }
 
-    private static String[] cut(final String s, final int at) {
-        return new String[]{s.substring(0, at), s.substring(at)};
+    private static int widthEncoded(final CharsetEncoder encoder, final int cp) {
+        try {
+            encoder.reset();
+            return encoder.encode(CharBuffer.wrap(Character.toChars(cp))).remaining();
+        } catch (final CharacterCodingException unmappable) {
+            // will be written as a single replacement character
+            return 1;
+        }
     }
 
 
@@ -0,0 +1,229 @@
+package nu.mine.mosher.gedcom.date;
+
+
+
+import nu.mine.mosher.time.Time;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+
+
+/**
+ * Packs dates into primitive <code>long</code> keys, so that large numbers
+ * of them can be sorted and compared as plain arrays.
+ * <p>
+ * The key of a {@link YMD} holds its approximate epoch day in the high bits,
+ * so keys sort the same way as {@link YMD#compareTo(YMD)} does, followed by
+ * year, month, day, circa and julian in the low bits, so the <code>YMD</code>
+ * can be recovered from the key. A {@link DateRange} is a pair of such keys.
+ * <p>
+ * The <em>sort key</em> of a <code>DateRange</code> or {@link DatePeriod}
+ * is a smaller number (within the range of an <code>int</code>) that sorts
+ * the same way as its <code>compareTo</code>.
+ * @author Chris Mosher
+ */
+public final class DateKeys
+{
+    private static final int FLAG_BITS = 26;
+    private static final long FLAG_MASK = (1L << FLAG_BITS) - 1;
+    private static final int YEAR_BIAS = 10000;
+
+    /**
+     * Sort key of an unknown <code>DatePeriod</code>, which sorts after all known dates.
+     */
+    public static final long SORT_UNKNOWN = Integer.MAX_VALUE - 1;
+
+    /**
+     * Sort key of a missing (<code>null</code>) date, which sorts after all others.
+     */
+    public static final long SORT_NONE = Integer.MAX_VALUE;
+
+    private DateKeys()
+    {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Packs the given <code>YMD</code> into a key.
+     * @param ymd the date
+     * @return the key
+     */
+    public static long of(final YMD ymd)
+    {
+        final long flags =
+            (long)(ymd.getYear() + YEAR_BIAS) << 11 |
+            ymd.getMonth() << 7 |
+            ymd.getDay() << 2 |
+            (ymd.isCirca() ? 2 : 0) |
+            (ymd.isJulian() ? 1 : 0);
+        return ymd.getApproxEpochDay() << FLAG_BITS | flags;
+    }
+
+    /**
+     * Unpacks a key created by {@link DateKeys#of(YMD)}.
+     * @param key the key
+     * @return a new <code>YMD</code> equal to the original one
+     */
+    public static YMD toYMD(final long key)
+    {
+        final int flags = (int)(key & FLAG_MASK);
+        return new YMD(
+            (flags >>> 11) - YEAR_BIAS,
+            flags >>> 7 & 0xf,
+            flags >>> 2 & 0x1f,
+            (flags & 2) != 0,
+            (flags & 1) != 0);
+    }
+
+    /**
+     * @param key the key of a <code>YMD</code>
+     * @return the approximate epoch day of the <code>YMD</code>
+     */
+    public static long approxEpochDay(final long key)
+    {
+        return key >> FLAG_BITS;
+    }
+
+    /**
+     * Compares two keys the same way as {@link YMD#compareTo(YMD)} compares
+     * the dates they came from.
+     * @param a key of one date
+     * @param b key of another date
+     * @return -1, 0, or +1
+     */
+    public static int compare(final long a, final long b)
+    {
+        return Long.compare(approxEpochDay(a), approxEpochDay(b));
+    }
+
+    /**
+     * Packs the given <code>DateRange</code> into a pair of keys.
+     * @param range the range
+     * @return { key of earliest, key of latest }
+     */
+    public static long[] of(final DateRange range)
+    {
+        return new long[] { of(range.getEarliest()), of(range.getLatest()) };
+    }
+
+    /**
+     * Unpacks a pair of keys created by {@link DateKeys#of(DateRange)}.
+     * @param keys { key of earliest, key of latest }
+     * @return a new <code>DateRange</code> equal to the original one
+     * @throws DateRange.DatesOutOfOrder if the keys are not from a valid range
+     */
+    public static DateRange toDateRange(final long[] keys) throws DateRange.DatesOutOfOrder
+    {
+        return new DateRange(toYMD(keys[0]), toYMD(keys[1]));
+    }
+
+    /**
+     * Gets a key that sorts the same way as {@link DateRange#compareTo(DateRange)}.
+     * @param range the range
+     * @return sort key
+     */
+    public static long sortKey(final DateRange range)
+    {
+        final YMD earliest = range.getEarliest();
+        final YMD latest = range.getLatest();
+        final boolean noEarliest = earliest.equals(YMD.getMinimum());
+        final boolean noLatest = latest.equals(YMD.getMaximum());
+        if (noEarliest && noLatest)
+        {
+            return sortKeyOfUnknownRange();
+        }
+        // in quarter days: noon of each day is a multiple of 4, the midnight
+        // between two days (the midpoint of a range of an even number of days)
+        // is 2 more, leaving odd keys for the unknown range
+        if (noEarliest)
+        {
+            return 4 * latest.getApproxEpochDay();
+        }
+        if (noLatest)
+        {
+            return 4 * earliest.getApproxEpochDay();
+        }
+        return 2 * (earliest.getApproxEpochDay() + latest.getApproxEpochDay());
+    }
+
+    /**
+     * The approximate time of <code>DateRange.UNKNOWN</code> is
+     * 1970-01-01T00:00Z, which is just after, at, or just before local
+     * midnight at the start of epoch day 0, depending on whether the default
+     * time zone is east of, at, or west of UTC (within 12 hours).
+     */
+    private static long sortKeyOfUnknownRange()
+    {
+        return -2 + Integer.signum(TimeZone.getDefault().getOffset(0L));
+    }
+
+    /**
+     * Gets the sort key of the exact date (in the default time zone) of the
+     * given time; the same as <code>sortKey(new DateRange(new YMD(time)))</code>,
+     * but without creating any objects.
+     * @param time the time
+     * @return sort key
+     */
+    public static long sortKey(final Time time)
+    {
+        return 4 * YMD.localEpochDay(time);
+    }
+
+    /**
+     * Gets a key that sorts the same way as {@link DatePeriod#compareTo(DatePeriod)},
+     * with unknown periods after all known ones, and <code>null</code> after those.
+     * @param period the period, or <code>null</code>
+     * @return sort key
+     */
+    public static long sortKey(final DatePeriod period)
+    {
+        if (period == null)
+        {
+            return SORT_NONE;
+        }
+        final DateRange date = period.getStartDate().equals(DateRange.UNKNOWN) ? period.getEndDate() : period.getStartDate();
+        if (date.equals(DateRange.UNKNOWN))
+        {
+            return SORT_UNKNOWN;
+        }
+        return sortKey(date);
+    }
+
+    /**
+     * Gets the order of the given sort keys, without sorting any objects.
+     * Equal keys keep their original order.
+     * @param sortKeys sort keys (from <code>sortKey</code>)
+     * @return indexes into <code>sortKeys</code>, in order of their keys
+     */
+    public static int[] order(final long[] sortKeys)
+    {
+        // pack each key with its index, so one primitive sort does it all
+        final long[] packed = new long[sortKeys.length];
+        for (int i = 0; i < sortKeys.length; ++i)
+        {
+            final long k = sortKeys[i];
+            if (k < Integer.MIN_VALUE || Integer.MAX_VALUE < k)
+            {
+                throw new IllegalArgumentException("not a sort key: " + k);
+            }
+            packed[i] = k << 32 | i;
+        }
+
+        if (packed.length < 1 << 13)
+        {
+            Arrays.sort(packed);
+        }
+        else
+        {
+            Arrays.parallelSort(packed);
+        }
+
+        final int[] order = new int[packed.length];
+        for (int i = 0; i < packed.length; ++i)
+        {
+            order[i] = (int)packed[i];
+        }
+        return order;
+    }
+}
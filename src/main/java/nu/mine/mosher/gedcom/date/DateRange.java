@@ -2,8 +2,6 @@ package nu.mine.mosher.gedcom.date;
 
 
 
-import java.util.Date;
-
 import nu.mine.mosher.time.Time;
 
 
@@ -234,7 +232,7 @@ public class DateRange implements Comparable<DateRange>
     {
         if (this.earliest.equals(YMD.getMinimum()) && this.latest.equals(YMD.getMaximum()))
         {
-            return new Time(new Date(0));
+            return Time.ZERO;
         }
         if (this.earliest.equals(YMD.getMinimum()))
         {
@@ -251,20 +249,7 @@ public class DateRange implements Comparable<DateRange>
             return this.earliest.getApproxTime();
         }
 
-        /* @formatter:off */
-        return
-            new Time(
-                new Date(
-                    (
-                        this.earliest.getApproxTime().asDate().getTime()
-                        +
-                        this.latest.getApproxTime().asDate().getTime()
-                    )
-                    /
-                    2
-                )
-            );
-        /* @formatter:on */
+        return YMD.approxMidpoint(this.earliest.getApproxEpochDay(), this.latest.getApproxEpochDay());
     }
 
     private int calcHash()
@@ -0,0 +1,170 @@
+package nu.mine.mosher.gedcom.date;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+
+
+/**
+ * Immutable index of items by their <code>DatePeriod</code>, for finding all
+ * items that overlap a given period (in the sense of
+ * {@link DatePeriod#overlaps(DatePeriod)}) in logarithmic time (plus the
+ * number of items found).
+ * <p>
+ * Items are kept in an array sorted by the start of their periods, which is
+ * treated as an implicit balanced binary tree, where each node also holds the
+ * latest end of any period in its subtree. Periods are compared by their
+ * sort keys (see {@link DateKeys}).
+ * @param <T> type of items
+ * @author Chris Mosher
+ */
+public final class IntervalIndex<T>
+{
+    private final List<T> items;
+    private final long[] starts;
+    private final long[] ends;
+    private final long[] maxEnds;
+    private final int[] positions;
+
+    /**
+     * Builds an index of the given items. Items with a <code>null</code>
+     * period are not indexed.
+     * @param items items to index
+     * @param period gets the period of an item
+     */
+    public IntervalIndex(final List<T> items, final Function<? super T, DatePeriod> period)
+    {
+        this.items = new ArrayList<>(items);
+
+        final int n = this.items.size();
+        final int[] indexed = new int[n];
+        final long[] s = new long[n];
+        final long[] e = new long[n];
+        int c = 0;
+        for (int i = 0; i < n; ++i)
+        {
+            final DatePeriod p = period.apply(this.items.get(i));
+            if (p != null)
+            {
+                indexed[c] = i;
+                s[c] = DateKeys.sortKey(p.getStartDate());
+                e[c] = DateKeys.sortKey(p.getEndDate());
+                ++c;
+            }
+        }
+
+        final int[] order = DateKeys.order(Arrays.copyOf(s, c));
+        this.starts = new long[c];
+        this.ends = new long[c];
+        this.positions = new int[c];
+        for (int i = 0; i < c; ++i)
+        {
+            final int j = order[i];
+            this.positions[i] = indexed[j];
+            this.starts[i] = s[j];
+            this.ends[i] = e[j];
+        }
+
+        this.maxEnds = new long[c];
+        buildMaxEnds(0, c);
+    }
+
+    private long buildMaxEnds(final int lo, final int hi)
+    {
+        if (hi <= lo)
+        {
+            return Long.MIN_VALUE;
+        }
+        final int mid = (lo + hi) >>> 1;
+        final long max = Math.max(this.ends[mid], Math.max(buildMaxEnds(lo, mid), buildMaxEnds(mid + 1, hi)));
+        this.maxEnds[mid] = max;
+        return max;
+    }
+
+    /**
+     * @return number of items indexed (which excludes those with no period)
+     */
+    public int size()
+    {
+        return this.starts.length;
+    }
+
+    /**
+     * Finds all items whose periods overlap the given period.
+     * @param period period to check
+     * @return items found, in the same order they were given to the constructor
+     */
+    public List<T> getOverlapping(final DatePeriod period)
+    {
+        return getOverlapping(DateKeys.sortKey(period.getStartDate()), DateKeys.sortKey(period.getEndDate()));
+    }
+
+    /**
+     * Finds all items whose periods overlap the period between the given sort keys.
+     * @param queryStart sort key (see {@link DateKeys}) of the start of the period
+     * @param queryEnd sort key of the end of the period
+     * @return items found, in the same order they were given to the constructor
+     */
+    public List<T> getOverlapping(final long queryStart, final long queryEnd)
+    {
+        final Found found = new Found();
+        find(0, size(), queryStart, queryEnd, found);
+        if (found.n == 0)
+        {
+            return Collections.emptyList();
+        }
+        Arrays.sort(found.positions, 0, found.n);
+
+        final List<T> r = new ArrayList<>(found.n);
+        for (int i = 0; i < found.n; ++i)
+        {
+            r.add(this.items.get(found.positions[i]));
+        }
+        return r;
+    }
+
+    private static final class Found
+    {
+        private int[] positions = new int[16];
+        private int n;
+
+        void add(final int position)
+        {
+            if (this.n == this.positions.length)
+            {
+                this.positions = Arrays.copyOf(this.positions, 2 * this.n);
+            }
+            this.positions[this.n++] = position;
+        }
+    }
+
+    private void find(final int lo, final int hi, final long queryStart, final long queryEnd, final Found found)
+    {
+        if (hi <= lo)
+        {
+            return;
+        }
+        final int mid = (lo + hi) >>> 1;
+        if (this.maxEnds[mid] < queryStart)
+        {
+            // everything in this subtree ends too early
+            return;
+        }
+        find(lo, mid, queryStart, queryEnd, found);
+        if (queryEnd < this.starts[mid])
+        {
+            // this, and everything after it, starts too late
+            return;
+        }
+        if (queryStart <= this.ends[mid])
+        {
+            found.add(this.positions[mid]);
+        }
+        find(mid + 1, hi, queryStart, queryEnd, found);
+    }
+}
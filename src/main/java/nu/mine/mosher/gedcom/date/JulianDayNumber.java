@@ -0,0 +1,172 @@
+package nu.mine.mosher.gedcom.date;
+
+
+
+/**
+ * Calendar arithmetic based on Julian Day Numbers (the number of days
+ * since January 1, 4713 BC, in the proleptic Julian calendar). Converts
+ * between the (proleptic) Gregorian and Julian calendars without using
+ * <code>java.util.Calendar</code>, and without allocating anything
+ * except the returned arrays.
+ * <p>
+ * Years are astronomical (year 0 is 1 BC, -1 is 2 BC, and so on), which is
+ * also how a lenient <code>GregorianCalendar</code> treats non-positive
+ * years. Months and days are lenient, too: month 0 is December of the
+ * previous year, day 0 is the last day of the previous month, and so on.
+ * @author Chris Mosher
+ */
+public final class JulianDayNumber
+{
+    /**
+     * Julian Day Number of January 1, 1970 (Gregorian), which is epoch day zero.
+     */
+    public static final long EPOCH = 2440588L;
+
+    private JulianDayNumber()
+    {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Gets the Julian Day Number of a date in the proleptic Gregorian calendar.
+     * @param year astronomical year
+     * @param month month (1 = January)
+     * @param day day of month
+     * @return Julian Day Number
+     */
+    public static long fromGregorian(final int year, final int month, final int day)
+    {
+        final long y = year + Math.floorDiv(month - 1, 12) + 4800L;
+        final long m = Math.floorMod(month - 1, 12);
+        // March-based year, so that the leap day falls at the end
+        final long a = m < 2 ? y - 1 : y;
+        final long mm = m < 2 ? m + 10 : m - 2;
+        return (153 * mm + 2) / 5 + 365 * a + Math.floorDiv(a, 4) - Math.floorDiv(a, 100) + Math.floorDiv(a, 400) - 32045 + day;
+    }
+
+    /**
+     * Gets the Julian Day Number of a date in the proleptic Julian calendar.
+     * @param year astronomical year
+     * @param month month (1 = January)
+     * @param day day of month
+     * @return Julian Day Number
+     */
+    public static long fromJulian(final int year, final int month, final int day)
+    {
+        final long y = year + Math.floorDiv(month - 1, 12) + 4800L;
+        final long m = Math.floorMod(month - 1, 12);
+        final long a = m < 2 ? y - 1 : y;
+        final long mm = m < 2 ? m + 10 : m - 2;
+        return (153 * mm + 2) / 5 + 365 * a + Math.floorDiv(a, 4) - 32083 + day;
+    }
+
+    /**
+     * Gets the date in the proleptic Gregorian calendar of a Julian Day Number.
+     * @param jdn Julian Day Number
+     * @return { astronomical year, month (1 = January), day of month }
+     */
+    public static int[] toGregorian(final long jdn)
+    {
+        final long a = jdn + 32044;
+        final long b = Math.floorDiv(4 * a + 3, 146097);
+        final long c = a - Math.floorDiv(146097 * b, 4);
+        return fromMarchBased(100 * b, c);
+    }
+
+    /**
+     * Gets the date in the proleptic Julian calendar of a Julian Day Number.
+     * @param jdn Julian Day Number
+     * @return { astronomical year, month (1 = January), day of month }
+     */
+    public static int[] toJulian(final long jdn)
+    {
+        return fromMarchBased(0, jdn + 32082);
+    }
+
+    private static int[] fromMarchBased(final long centuries, final long c)
+    {
+        final long d = Math.floorDiv(4 * c + 3, 1461);
+        final long e = c - Math.floorDiv(1461 * d, 4);
+        final long m = (5 * e + 2) / 153;
+        final int day = (int)(e - (153 * m + 2) / 5 + 1);
+        final int month = (int)(m + 3 - 12 * (m / 10));
+        final int year = (int)(centuries + d - 4800 + m / 10);
+        return new int[] { year, month, day };
+    }
+
+    /**
+     * Converts a date from the Julian calendar to the Gregorian calendar.
+     * @param year astronomical year
+     * @param month month (1 = January)
+     * @param day day of month
+     * @return Gregorian { astronomical year, month (1 = January), day of month }
+     */
+    public static int[] julianToGregorian(final int year, final int month, final int day)
+    {
+        return toGregorian(fromJulian(year, month, day));
+    }
+
+    /**
+     * Converts a date from the Gregorian calendar to the Julian calendar.
+     * @param year astronomical year
+     * @param month month (1 = January)
+     * @param day day of month
+     * @return Julian { astronomical year, month (1 = January), day of month }
+     */
+    public static int[] gregorianToJulian(final int year, final int month, final int day)
+    {
+        return toJulian(fromGregorian(year, month, day));
+    }
+
+    /**
+     * Adds the given number of days to a date in the Gregorian calendar.
+     * @param year astronomical year
+     * @param month month (1 = January)
+     * @param day day of month
+     * @param days number of days to add (can be negative)
+     * @return Gregorian { astronomical year, month (1 = January), day of month }
+     */
+    public static int[] plusDays(final int year, final int month, final int day, final long days)
+    {
+        return toGregorian(fromGregorian(year, month, day) + days);
+    }
+
+    /**
+     * Converts a historical year number (where there is no year 0, and
+     * negative years are BC) to an astronomical year number.
+     * @param year historical year (-1 is 1 BC)
+     * @return astronomical year (0 is 1 BC)
+     */
+    public static int toAstronomical(final int year)
+    {
+        return year < 0 ? year + 1 : year;
+    }
+
+    /**
+     * Converts an astronomical year number to a historical one.
+     * @param year astronomical year (0 is 1 BC)
+     * @return historical year (-1 is 1 BC)
+     */
+    public static int fromAstronomical(final int year)
+    {
+        return year <= 0 ? year - 1 : year;
+    }
+
+    /**
+     * @param jdn Julian Day Number
+     * @return number of days since January 1, 1970
+     */
+    public static long toEpochDay(final long jdn)
+    {
+        return jdn - EPOCH;
+    }
+
+    /**
+     * @param epochDay number of days since January 1, 1970
+     * @return Julian Day Number
+     */
+    public static long fromEpochDay(final long epochDay)
+    {
+        return epochDay + EPOCH;
+    }
+}
@@ -2,9 +2,7 @@ package nu.mine.mosher.gedcom.date;
 
 
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 import nu.mine.mosher.time.Time;
 
@@ -51,8 +49,14 @@ public class YMD implements Comparable<YMD>
     private final boolean circa;
 
     private transient final int hash;
+    private transient final long approxEpochDay;
     private transient final Time approx;
 
+    private static final long MS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    private static final YMD MINIMUM = new YMD(-9999, 1, 1);
+    private static final YMD MAXIMUM = new YMD(9999, 12, 31);
+
     /**
      * Initializes this YMD with the given year, and an unknown month and day.
      * @param year the year (-9999 to -1, or 1 to 9999)
@@ -127,7 +131,8 @@ public class YMD implements Comparable<YMD>
         this.circa = circa;
         this.julian = julian;
 
-        this.approx = calcApprox();
+        this.approxEpochDay = calcApproxEpochDay();
+        this.approx = approxTime(this.approxEpochDay);
         this.hash = calcHash();
     }
 
@@ -139,15 +144,14 @@ public class YMD implements Comparable<YMD>
      */
     public YMD(final Time time)
     {
-        final GregorianCalendar cal = new GregorianCalendar();
-        cal.setGregorianChange(new Date(Long.MIN_VALUE));
-        cal.setTime(time.asDate());
-        this.year = cal.get(Calendar.YEAR);
-        this.month = cal.get(Calendar.MONTH) + 1;
-        this.day = cal.get(Calendar.DAY_OF_MONTH);
+        final int[] ymd = JulianDayNumber.toGregorian(JulianDayNumber.fromEpochDay(localEpochDay(time)));
+        this.year = JulianDayNumber.fromAstronomical(ymd[0]);
+        this.month = ymd[1];
+        this.day = ymd[2];
         this.circa = false;
         this.julian = false;
-        this.approx = calcApprox();
+        this.approxEpochDay = calcApproxEpochDay();
+        this.approx = approxTime(this.approxEpochDay);
         this.hash = calcHash();
     }
 
@@ -222,6 +226,16 @@ public class YMD implements Comparable<YMD>
         return this.approx;
     }
 
+    /**
+     * Gets the number of days since January 1, 1970, of the approximation
+     * of this <code>YMD</code> (see {@link YMD#getApproxTime()}).
+     * @return approximate epoch day
+     */
+    public long getApproxEpochDay()
+    {
+        return this.approxEpochDay;
+    }
+
     /**
      * Gets if this <code>YMD</code> is exact.
      * @return <code>true</code> if exact
@@ -232,21 +246,21 @@ public class YMD implements Comparable<YMD>
     }
 
     /**
-     * Returns a new <code>YMD</code> representing January 1, 9999 BC.
+     * Returns a <code>YMD</code> representing January 1, 9999 BC.
      * @return Jan. 1, 9999 BC
      */
     public static YMD getMinimum()
     {
-        return new YMD(-9999, 1, 1);
+        return MINIMUM;
     }
 
     /**
-     * Returns a new <code>YMD</code> representing December 31, AD 9999.
+     * Returns a <code>YMD</code> representing December 31, AD 9999.
      * @return Dec. 31, AD 9999
      */
     public static YMD getMaximum()
     {
-        return new YMD(9999, 12, 31);
+        return MAXIMUM;
     }
 
     /**
@@ -373,7 +387,7 @@ public class YMD implements Comparable<YMD>
         return i != 0;
     }
 
-    private Time calcApprox()
+    private long calcApproxEpochDay()
     {
         int m = this.month;
         int d = this.day;
@@ -390,19 +404,71 @@ public class YMD implements Comparable<YMD>
             d = 15;
         }
 
-        return createTime(this.year, m, d);
+        return JulianDayNumber.toEpochDay(JulianDayNumber.fromGregorian(JulianDayNumber.toAstronomical(this.year), m, d));
     }
 
-    private static Time createTime(final int year, final int month,
-        final int day)
+    /**
+     * Gets the <code>Time</code> at noon, local time, of the given day.
+     * @param epochDay number of days since January 1, 1970
+     * @return noon of that day
+     */
+    static Time approxTime(final long epochDay)
+    {
+        final TimeZone tz = TimeZone.getDefault();
+        final long noon = epochDay * MS_PER_DAY + MS_PER_DAY / 2;
+        final long guess = noon - tz.getOffset(noon);
+        return Time.ofEpochMilli(noon - tz.getOffset(guess));
+    }
+
+    /**
+     * Gets the time half way between the approximate times of the given days,
+     * which is midnight (rather than noon) if they are an odd number of days
+     * apart.
+     * @param earliestEpochDay number of days since January 1, 1970
+     * @param latestEpochDay number of days since January 1, 1970
+     * @return midpoint
+     */
+    static Time approxMidpoint(final long earliestEpochDay, final long latestEpochDay)
     {
-        final GregorianCalendar cal = new GregorianCalendar();
-        cal.setGregorianChange(new Date(Long.MIN_VALUE));
+        final long halfDays = earliestEpochDay + latestEpochDay;
+        final Time noon = approxTime(Math.floorDiv(halfDays, 2));
+        if (halfDays % 2 == 0)
+        {
+            return noon;
+        }
+        return Time.ofEpochMilli(noon.getEpochMilli() + MS_PER_DAY / 2);
+    }
 
-        cal.set(year, month - 1, day, 12, 0, 0);
-        cal.set(Calendar.MILLISECOND, 0);
+    /**
+     * Gets the day (in the local time zone) of the given <code>Time</code>.
+     * @param time the time
+     * @return number of days since January 1, 1970
+     */
+    static long localEpochDay(final Time time)
+    {
+        final long ms = time.getEpochMilli();
+        return Math.floorDiv(ms + TimeZone.getDefault().getOffset(ms), MS_PER_DAY);
+    }
 
-        return new Time(cal.getTime());
+    /**
+     * Adds the given number of years to the (Gregorian, local) day of the
+     * given <code>Time</code>, as <code>GregorianCalendar.add</code> would
+     * (February 29 becomes February 28 in a common year), but without
+     * allocating any calendar.
+     * @param time the time
+     * @param years number of years to add (can be negative)
+     * @return noon, local time, of the resulting day
+     */
+    public static Time plusYears(final Time time, final int years)
+    {
+        final int[] ymd = JulianDayNumber.toGregorian(JulianDayNumber.fromEpochDay(localEpochDay(time)));
+        final int year = ymd[0] + years;
+        int day = ymd[2];
+        if (ymd[1] == 2 && day == 29 && JulianDayNumber.toGregorian(JulianDayNumber.fromGregorian(year, 2, 29))[1] != 2)
+        {
+            day = 28;
+        }
+        return approxTime(JulianDayNumber.toEpochDay(JulianDayNumber.fromGregorian(year, ymd[1], day)));
     }
 
     private int calcHash()
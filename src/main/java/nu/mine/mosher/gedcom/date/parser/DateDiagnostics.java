@@ -0,0 +1,189 @@
+package nu.mine.mosher.gedcom.date.parser;
+
+import nu.mine.mosher.gedcom.date.DateRange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collects problems found while parsing GEDCOM date values, so they can
+ * be reported once, as a summary, instead of logged one at a time. Keeps
+ * a count of problems of each kind, and (up to a limit) a sample of the
+ * offending values along with the IDs of their records. Safe to use from
+ * any number of threads.
+ *
+ * @author Chris Mosher
+ */
+public final class DateDiagnostics {
+    public static final int DEFAULT_MAX_SAMPLES = 10;
+
+    /**
+     * Kinds of problems with date values.
+     */
+    public enum Kind {
+        SYNTAX("not in a valid DATE format"),
+        UNRECOGNIZED("contains unrecognized characters"),
+        OUT_OF_RANGE("year, month, or day is out of range"),
+        OUT_OF_ORDER("latest date is before earliest date");
+
+        private final String description;
+
+        Kind(final String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        /**
+         * Classifies the exception thrown by a date parser.
+         *
+         * @param e exception thrown by <code>FastDateValueParser.parse</code>
+         * @return kind of problem
+         */
+        public static Kind of(final ParseException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof DateRange.DatesOutOfOrder) {
+                return OUT_OF_ORDER;
+            }
+            if (cause instanceof IllegalStateException) {
+                return OUT_OF_RANGE;
+            }
+            if (cause instanceof TokenMgrError) {
+                return UNRECOGNIZED;
+            }
+            return SYNTAX;
+        }
+    }
+
+    /**
+     * One offending date value.
+     */
+    public static final class Sample {
+        private final String value;
+        private final String recordId;
+
+        private Sample(final String value, final String recordId) {
+            this.value = value;
+            this.recordId = recordId;
+        }
+
+        public String getValue() {
+            return this.value;
+        }
+
+        /**
+         * @return ID of the record containing the value (empty if unknown)
+         */
+        public String getRecordId() {
+            return this.recordId;
+        }
+
+        @Override
+        public String toString() {
+            return (this.recordId.isEmpty() ? "" : "@" + this.recordId + "@: ") + "\"" + this.value + "\"";
+        }
+    }
+
+    private final int maxSamples;
+    private final Map<Kind, AtomicLong> counts = new EnumMap<>(Kind.class);
+    private final Map<Kind, List<Sample>> samples = new EnumMap<>(Kind.class);
+
+    public DateDiagnostics() {
+        this(DEFAULT_MAX_SAMPLES);
+    }
+
+    /**
+     * @param maxSamples maximum number of offending values to keep, for each kind of problem
+     */
+    public DateDiagnostics(final int maxSamples) {
+        if (maxSamples < 0) {
+            throw new IllegalArgumentException("maxSamples cannot be negative: " + maxSamples);
+        }
+        this.maxSamples = maxSamples;
+        for (final Kind kind : Kind.values()) {
+            this.counts.put(kind, new AtomicLong());
+            this.samples.put(kind, new ArrayList<>(maxSamples));
+        }
+    }
+
+    /**
+     * Records one problem. The record ID is only asked for if the value
+     * is kept as a sample.
+     *
+     * @param kind kind of problem
+     * @param value offending date value
+     * @param recordId gets the ID of the record containing the value
+     */
+    public void add(final Kind kind, final String value, final Supplier<String> recordId) {
+        final long n = this.counts.get(kind).incrementAndGet();
+        if (n <= this.maxSamples) {
+            final Sample sample = new Sample(value, recordId.get());
+            final List<Sample> list = this.samples.get(kind);
+            synchronized (list) {
+                list.add(sample);
+            }
+        }
+    }
+
+    public long getCount(final Kind kind) {
+        return this.counts.get(kind).get();
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (final AtomicLong count : this.counts.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return getTotal() == 0;
+    }
+
+    /**
+     * @param kind kind of problem
+     * @return the first few offending values of the given kind (in no particular order, if added from multiple threads)
+     */
+    public List<Sample> getSamples(final Kind kind) {
+        final List<Sample> list = this.samples.get(kind);
+        synchronized (list) {
+            return Collections.unmodifiableList(new ArrayList<>(list));
+        }
+    }
+
+    /**
+     * @return multi-line summary of all problems, or an empty string if there are none
+     */
+    @Override
+    public String toString() {
+        final long total = getTotal();
+        if (total == 0) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder(256);
+        sb.append("Invalid DATE values: ").append(total);
+        for (final Kind kind : Kind.values()) {
+            final long n = getCount(kind);
+            if (n == 0) {
+                continue;
+            }
+            sb.append(String.format("%n  %d %s", n, kind.getDescription()));
+            final List<Sample> list = getSamples(kind);
+            for (final Sample sample : list) {
+                sb.append(String.format("%n    %s", sample));
+            }
+            if (list.size() < n) {
+                sb.append(String.format("%n    ...and %d more", n - list.size()));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package nu.mine.mosher.gedcom.date.parser;
+
+import nu.mine.mosher.gedcom.date.DatePeriod;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, thread-safe cache of parsed GEDCOM date values. Maps each
+ * date string to its (immutable) <code>DatePeriod</code>, or remembers
+ * that (and why) it could not be parsed. When full, an arbitrary eighth
+ * of the entries are evicted.
+ *
+ * @author Chris Mosher
+ */
+public final class DatePeriodCache {
+    public static final int DEFAULT_CAPACITY = 1 << 17;
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> map;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * A parsed date, or the kind of problem that prevented parsing it.
+     */
+    private static final class Entry {
+        private static final Map<DateDiagnostics.Kind, Entry> failures = new EnumMap<>(DateDiagnostics.Kind.class);
+        static {
+            for (final DateDiagnostics.Kind kind : DateDiagnostics.Kind.values()) {
+                failures.put(kind, new Entry(null, kind));
+            }
+        }
+
+        private final DatePeriod date;
+        private final DateDiagnostics.Kind error;
+
+        private Entry(final DatePeriod date, final DateDiagnostics.Kind error) {
+            this.date = date;
+            this.error = error;
+        }
+    }
+
+    public DatePeriodCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of date strings to remember
+     */
+    public DatePeriodCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        this.capacity = capacity;
+        this.map = new ConcurrentHashMap<>(Math.min(capacity, 1 << 12));
+    }
+
+    /**
+     * Parses the given GEDCOM date value, or gets it from the cache.
+     *
+     * @param sDate GEDCOM date value (should already be trimmed)
+     * @return the date, or <code>null</code> if it cannot be parsed
+     */
+    public DatePeriod get(final String sDate) {
+        return lookUp(sDate).date;
+    }
+
+    /**
+     * Parses the given GEDCOM date value, or gets it from the cache, and
+     * records any problem with it (every time it is asked for, not just
+     * the first time it is parsed). An empty value is not a problem.
+     *
+     * @param sDate GEDCOM date value (should already be trimmed)
+     * @param diagnostics where to record problems
+     * @param recordId gets the ID of the record containing the value
+     * @return the date, or <code>null</code> if it cannot be parsed
+     */
+    public DatePeriod get(final String sDate, final DateDiagnostics diagnostics, final Supplier<String> recordId) {
+        final Entry entry = lookUp(sDate);
+        if (entry.error != null && !sDate.isEmpty()) {
+            diagnostics.add(entry.error, sDate, recordId);
+        }
+        return entry.date;
+    }
+
+    private Entry lookUp(final String sDate) {
+        Entry entry = this.map.get(sDate);
+        if (entry != null) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+            entry = parse(sDate);
+            if (this.capacity <= this.map.size()) {
+                evict();
+            }
+            this.map.put(sDate, entry);
+        }
+        return entry;
+    }
+
+    private static Entry parse(final String sDate) {
+        try {
+            return new Entry(FastDateValueParser.parse(sDate), null);
+        } catch (final ParseException e) {
+            return Entry.failures.get(DateDiagnostics.Kind.of(e));
+        }
+    }
+
+    private void evict() {
+        if (!this.evicting.compareAndSet(false, true)) {
+            // some other thread is already doing it
+            return;
+        }
+        try {
+            final int target = this.capacity - Math.max(1, this.capacity / 8);
+            final Iterator<String> i = this.map.keySet().iterator();
+            while (target < this.map.size() && i.hasNext()) {
+                i.next();
+                i.remove();
+            }
+        } finally {
+            this.evicting.set(false);
+        }
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public int size() {
+        return this.map.size();
+    }
+
+    public void clear() {
+        this.map.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "date cache: size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses();
+    }
+}
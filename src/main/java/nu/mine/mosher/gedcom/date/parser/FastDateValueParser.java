@@ -0,0 +1,298 @@
+package nu.mine.mosher.gedcom.date.parser;
+
+import nu.mine.mosher.gedcom.date.DatePeriod;
+import nu.mine.mosher.gedcom.date.DateRange;
+import nu.mine.mosher.gedcom.date.YMD;
+
+/**
+ * Hand-written parser for the most common forms of GEDCOM date values:
+ * <pre>
+ * [day] [month] year[/yy]
+ * ABT|CAL|EST date
+ * BEF|AFT date
+ * BET date AND date
+ * FROM date [TO date]
+ * TO date
+ * </pre>
+ * It builds exactly the same <code>DatePeriod</code> as
+ * <code>GedcomDateValueParser</code> would, but without allocating
+ * any tokens or streams. Characters are classified and parsed in a
+ * single pass, and keywords are matched as packed <code>int</code>s.
+ * Anything else (calendar escapes, B.C., INT phrases, and all invalid
+ * values) is passed on to
+ * <code>GedcomDateValueParser</code> (see {@link PooledDateValueParser}).
+ *
+ * @author Chris Mosher
+ */
+public final class FastDateValueParser {
+    private final String s;
+    private int i;
+
+    private FastDateValueParser(final String s) {
+        this.s = s;
+    }
+
+    /**
+     * Parses the given GEDCOM date value.
+     *
+     * @param sDate GEDCOM date value
+     * @return the date
+     * @throws ParseException if the value is not a valid GEDCOM date
+     */
+    public static DatePeriod parse(final String sDate) throws ParseException {
+        final DatePeriod date = parseCommon(sDate);
+        if (date != null) {
+            return date;
+        }
+        return PooledDateValueParser.parse(sDate);
+    }
+
+    /**
+     * Parses the given GEDCOM date value, if it is one of the common forms.
+     *
+     * @param sDate GEDCOM date value
+     * @return the date, or <code>null</code> if it needs to be parsed by the full grammar
+     */
+    static DatePeriod parseCommon(final String sDate) {
+        try {
+            return new FastDateValueParser(sDate).dateValue();
+        } catch (final DateRange.DatesOutOfOrder | RuntimeException e) {
+            // let the full grammar report the error
+            return null;
+        }
+    }
+
+    private DatePeriod dateValue() throws DateRange.DatesOutOfOrder {
+        if (this.s.isEmpty()) {
+            return null;
+        }
+        if (isDigit(this.s.charAt(0))) {
+            return end(single(date()));
+        }
+
+        final int k = keyword();
+        if (k < 0) {
+            return null;
+        }
+        if (isMonth(k) || !space()) {
+            // a date starting with a month
+            this.i = 0;
+            return end(single(date()));
+        }
+
+        switch (k) {
+            case 'F' << 24 | 'R' << 16 | 'O' << 8 | 'M': {
+                final YMD from = date();
+                if (from == null) {
+                    return null;
+                }
+                YMD to = null;
+                if (this.i < this.s.length()) {
+                    if (!space() || keyword() != ('T' << 8 | 'O') || !space()) {
+                        return null;
+                    }
+                    to = date();
+                    if (to == null) {
+                        return null;
+                    }
+                }
+                return end(new DatePeriod(new DateRange(from, from), new DateRange(to, to)));
+            }
+            case 'T' << 8 | 'O': {
+                final YMD to = date();
+                if (to == null) {
+                    return null;
+                }
+                return end(new DatePeriod(new DateRange(null, null), new DateRange(to, to)));
+            }
+            case 'A' << 16 | 'F' << 8 | 'T': {
+                final YMD earliest = date();
+                if (earliest == null) {
+                    return null;
+                }
+                return end(new DatePeriod(new DateRange(earliest, null)));
+            }
+            case 'B' << 16 | 'E' << 8 | 'F': {
+                final YMD latest = date();
+                if (latest == null) {
+                    return null;
+                }
+                return end(new DatePeriod(new DateRange(null, latest)));
+            }
+            case 'B' << 16 | 'E' << 8 | 'T': {
+                final YMD earliest = date();
+                if (earliest == null || !space() || keyword() != ('A' << 16 | 'N' << 8 | 'D') || !space()) {
+                    return null;
+                }
+                final YMD latest = date();
+                if (latest == null) {
+                    return null;
+                }
+                return end(new DatePeriod(new DateRange(earliest, latest)));
+            }
+            case 'A' << 16 | 'B' << 8 | 'T':
+            case 'C' << 16 | 'A' << 8 | 'L':
+            case 'E' << 16 | 'S' << 8 | 'T': {
+                final YMD ymd = date();
+                if (ymd == null) {
+                    return null;
+                }
+                return end(single(new YMD(ymd.getYear(), ymd.getMonth(), ymd.getDay(), true, ymd.isJulian())));
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * [day S] month S year | month S year | year
+     */
+    private YMD date() {
+        int day = 0;
+        int month = 0;
+        if (this.i < this.s.length() && isDigit(this.s.charAt(this.i))) {
+            final int n = number();
+            if (n < 0) {
+                return null;
+            }
+            final int afterNumber = this.i;
+            if (space()) {
+                month = month();
+            }
+            if (month <= 0) {
+                // no month, so the number was the year
+                this.i = afterNumber;
+                return year(n, 0, 0);
+            }
+            day = n;
+        } else {
+            month = month();
+        }
+
+        if (month <= 0 || !space()) {
+            return null;
+        }
+
+        return year(number(), month, day);
+    }
+
+    /**
+     * year | year/yy (which is given as Julian, and converted to Gregorian)
+     */
+    private YMD year(final int year, final int month, final int day) {
+        if (year <= 0) {
+            return null;
+        }
+        if (this.i < this.s.length() && this.s.charAt(this.i) == '/') {
+            ++this.i;
+            if (number() < 0) {
+                return null;
+            }
+            return GedcomDateValueParser.julianToGregorian(new YMD(year + 1, month, day));
+        }
+        return new YMD(year, month, day);
+    }
+
+    private static DatePeriod single(final YMD ymd) {
+        return ymd == null ? null : new DatePeriod(new DateRange(ymd));
+    }
+
+    private DatePeriod end(final DatePeriod date) {
+        return this.i == this.s.length() ? date : null;
+    }
+
+    /**
+     * Scans one or more spaces.
+     */
+    private boolean space() {
+        final int start = this.i;
+        while (this.i < this.s.length() && this.s.charAt(this.i) == ' ') {
+            ++this.i;
+        }
+        return start < this.i;
+    }
+
+    /**
+     * Scans up to 9 digits (so as not to overflow).
+     *
+     * @return value, or -1 if there are none, or too many, or they are followed by anything other than space, slash, or end
+     */
+    private int number() {
+        int n = 0;
+        final int start = this.i;
+        while (this.i < this.s.length() && isDigit(this.s.charAt(this.i))) {
+            if (9 <= this.i - start) {
+                return -1;
+            }
+            n = n * 10 + (this.s.charAt(this.i) - '0');
+            ++this.i;
+        }
+        if (start == this.i || !isBoundary(this.i)) {
+            return -1;
+        }
+        return n;
+    }
+
+    /**
+     * Scans a word of two to four letters, and packs its upper-case
+     * letters into an int.
+     *
+     * @return packed word, or -1 if there isn't one
+     */
+    private int keyword() {
+        int k = 0;
+        final int start = this.i;
+        while (this.i < this.s.length() && isLetter(this.s.charAt(this.i))) {
+            if (4 <= this.i - start) {
+                return -1;
+            }
+            k = k << 8 | (this.s.charAt(this.i) & ~0x20);
+            ++this.i;
+        }
+        if (this.i - start < 2 || !isBoundary(this.i)) {
+            return -1;
+        }
+        return k;
+    }
+
+    /**
+     * @return month (1 = January), or 0 if there isn't one
+     */
+    private int month() {
+        return monthOf(keyword());
+    }
+
+    private static boolean isMonth(final int k) {
+        return monthOf(k) != 0;
+    }
+
+    private static int monthOf(final int k) {
+        switch (k) {
+            case 'J' << 16 | 'A' << 8 | 'N': return 1;
+            case 'F' << 16 | 'E' << 8 | 'B': return 2;
+            case 'M' << 16 | 'A' << 8 | 'R': return 3;
+            case 'A' << 16 | 'P' << 8 | 'R': return 4;
+            case 'M' << 16 | 'A' << 8 | 'Y': return 5;
+            case 'J' << 16 | 'U' << 8 | 'N': return 6;
+            case 'J' << 16 | 'U' << 8 | 'L': return 7;
+            case 'A' << 16 | 'U' << 8 | 'G': return 8;
+            case 'S' << 16 | 'E' << 8 | 'P': return 9;
+            case 'O' << 16 | 'C' << 8 | 'T': return 10;
+            case 'N' << 16 | 'O' << 8 | 'V': return 11;
+            case 'D' << 16 | 'E' << 8 | 'C': return 12;
+            default: return 0;
+        }
+    }
+
+    private boolean isBoundary(final int at) {
+        return at == this.s.length() || this.s.charAt(at) == ' ' || this.s.charAt(at) == '/';
+    }
+
+    private static boolean isDigit(final char c) {
+        return '0' <= c && c <= '9';
+    }
+
+    private static boolean isLetter(final char c) {
+        return ('A' <= c && c <= 'Z') || ('a' <= c && c <= 'z');
+    }
+}
@@ -0,0 +1,77 @@
+package nu.mine.mosher.gedcom.date.parser;
+
+import nu.mine.mosher.gedcom.date.DatePeriod;
+
+import java.io.Reader;
+
+/**
+ * Parses GEDCOM date values with the full grammar, reusing one
+ * <code>GedcomDateValueParser</code> (along with its token manager,
+ * character stream, and buffers) per thread, by way of
+ * <code>ReInit</code>. Safe to call from any number of threads.
+ *
+ * @author Chris Mosher
+ */
+public final class PooledDateValueParser {
+    private static final ThreadLocal<PooledDateValueParser> pool = ThreadLocal.withInitial(PooledDateValueParser::new);
+
+    private final StringSource source = new StringSource();
+    private final GedcomDateValueParser parser = new GedcomDateValueParser(this.source);
+
+    private PooledDateValueParser() {
+    }
+
+    /**
+     * Parses the given GEDCOM date value.
+     *
+     * @param sDate GEDCOM date value
+     * @return the date
+     * @throws ParseException if the value is not a valid GEDCOM date
+     */
+    public static DatePeriod parse(final String sDate) throws ParseException {
+        return pool.get().parseValue(sDate);
+    }
+
+    private DatePeriod parseValue(final String sDate) throws ParseException {
+        this.source.reset(sDate);
+        this.parser.ReInit(this.source);
+        try {
+            return this.parser.parse();
+        } finally {
+            this.source.reset("");
+        }
+    }
+
+    /**
+     * Like <code>StringReader</code>, but can be reset to read another
+     * string, and is not synchronized.
+     */
+    private static final class StringSource extends Reader {
+        private String s = "";
+        private int pos;
+
+        void reset(final String s) {
+            this.s = s;
+            this.pos = 0;
+        }
+
+        @Override
+        public int read(final char[] buf, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (this.s.length() <= this.pos) {
+                return -1;
+            }
+            final int n = Math.min(len, this.s.length() - this.pos);
+            this.s.getChars(this.pos, this.pos + n, buf, off);
+            this.pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // the parser closes its stream at the end of input; keep it open for reuse
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.gedcom.date.DateKeys;
+import nu.mine.mosher.gedcom.date.DatePeriod;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Sorts events by date, using primitive sort keys (see {@link DateKeys})
+ * instead of comparing <code>DatePeriod</code> objects.
+ */
+public final class Events {
+    private Events() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Gets the date sort key of each event.
+     *
+     * @param events events
+     * @return sort keys, in the same order as the events
+     */
+    public static long[] sortKeys(final List<? extends Event> events) {
+        return sortKeys(events, Event::getDate);
+    }
+
+    /**
+     * Sorts events by date, in place, in the same order as
+     * {@link Event#compareTo(Event)}. Events with the same date keep
+     * their original order.
+     *
+     * @param events events to sort
+     */
+    public static void sortByDate(final List<Event> events) {
+        sortByDate(events, Event::getDate);
+    }
+
+    /**
+     * Sorts items by date, in place. Items with the same date keep their original order.
+     *
+     * @param items items to sort
+     * @param date gets the date of an item (can return <code>null</code>, which sorts last)
+     * @param <T> type of items
+     */
+    public static <T> void sortByDate(final List<T> items, final Function<? super T, DatePeriod> date) {
+        if (items.size() < 2) {
+            return;
+        }
+        final int[] order = DateKeys.order(sortKeys(items, date));
+        final Object[] copy = items.toArray();
+        for (int i = 0; i < order.length; ++i) {
+            @SuppressWarnings("unchecked") final T item = (T)copy[order[i]];
+            items.set(i, item);
+        }
+    }
+
+    private static <T> long[] sortKeys(final List<T> items, final Function<? super T, DatePeriod> date) {
+        final long[] keys = new long[items.size()];
+        int i = 0;
+        for (final T item : items) {
+            keys[i++] = DateKeys.sortKey(date.apply(item));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,300 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.GedcomLine;
+import nu.mine.mosher.gedcom.GedcomTag;
+import nu.mine.mosher.gedcom.GedcomTree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The islands of a tree: groups of people who are connected to each other
+ * (through parents, children, and spouses), but not to anyone outside
+ * the group. Islands are found by union-find (by size, with path
+ * compression) over the edges of the {@link RelationshipGraph}, all in
+ * <code>int</code> arrays.
+ * <p>
+ * Islands are numbered from 0, largest first. Each island has the
+ * top-level records it needs to stand as a GEDCOM file of its own (see
+ * {@link Islands#appendTo}): the INDI records of its people, the FAM records
+ * they are in, and the records (SOUR, NOTE, OBJE, REPO, and so on) that those
+ * refer to, directly or indirectly; plus the HEAD and TRLR records, and
+ * the records HEAD refers to. A record referred to from more than one
+ * island is in each of them.
+ *
+ * @author Chris Mosher
+ */
+public final class Islands {
+    private final RelationshipGraph graph;
+    // island of each person (by graph index)
+    private final int[] island;
+    // number of people in each island
+    private final int[] size;
+    private final List<List<TreeNode<GedcomLine>>> records;
+    private final List<TreeNode<GedcomLine>> orphans;
+
+    private Islands(final RelationshipGraph graph, final int[] island, final int[] size, final List<List<TreeNode<GedcomLine>>> records, final List<TreeNode<GedcomLine>> orphans) {
+        this.graph = graph;
+        this.island = island;
+        this.size = size;
+        this.records = records;
+        this.orphans = orphans;
+    }
+
+    /**
+     * Finds the islands of the given (fully parsed) loader.
+     *
+     * @param loader the loader
+     * @return the islands
+     */
+    static Islands of(final Loader loader) {
+        final RelationshipGraph graph = loader.getRelationshipGraph();
+        final int n = graph.size();
+
+        final int[] parent = new int[n];
+        final int[] weight = new int[n];
+        for (int i = 0; i < n; ++i) {
+            parent[i] = i;
+            weight[i] = 1;
+        }
+        union(parent, weight, graph.getParents());
+        union(parent, weight, graph.getSpouses());
+        // (children in a family with no parents have no edges to each other)
+        for (final TreeNode<GedcomLine> record : loader.getGedcom().getRoot()) {
+            if (record.getObject().getTag().equals(GedcomTag.FAM)) {
+                final Loader.Family family = loader.getFamily(record);
+                if (family != null && family.husb == null && family.wife == null) {
+                    unionAll(parent, weight, graph, family.getPeople());
+                }
+            }
+        }
+
+        // number the roots, largest island first (and in order of first person, for equal sizes)
+        final List<Integer> roots = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            if (find(parent, i) == i) {
+                roots.add(i);
+            }
+        }
+        roots.sort((a, b) -> weight[a] != weight[b] ? Integer.compare(weight[b], weight[a]) : Integer.compare(a, b));
+        final int[] number = new int[n];
+        final int[] size = new int[roots.size()];
+        for (int k = 0; k < roots.size(); ++k) {
+            number[roots.get(k)] = k;
+            size[k] = weight[roots.get(k)];
+        }
+        final int[] island = new int[n];
+        for (int i = 0; i < n; ++i) {
+            island[i] = number[find(parent, i)];
+        }
+
+        final List<List<TreeNode<GedcomLine>>> records = new ArrayList<>(size.length);
+        for (int k = 0; k < size.length; ++k) {
+            records.add(new ArrayList<>());
+        }
+        final List<TreeNode<GedcomLine>> orphans = new ArrayList<>();
+        assignRecords(loader, graph, island, records, orphans);
+
+        final List<List<TreeNode<GedcomLine>>> unmodifiable = new ArrayList<>(records.size());
+        records.forEach(r -> unmodifiable.add(Collections.unmodifiableList(r)));
+        return new Islands(graph, island, size, Collections.unmodifiableList(unmodifiable), Collections.unmodifiableList(orphans));
+    }
+
+    private static void union(final int[] parent, final int[] weight, final RelationshipGraph.Adjacency edges) {
+        for (int i = 0; i < parent.length; ++i) {
+            for (int e = edges.start(i); e < edges.end(i); ++e) {
+                union(parent, weight, i, edges.target(e));
+            }
+        }
+    }
+
+    private static void unionAll(final int[] parent, final int[] weight, final RelationshipGraph graph, final List<Person> people) {
+        int first = -1;
+        for (final Person person : people) {
+            final int i = graph.indexOf(person);
+            if (0 <= i) {
+                if (first < 0) {
+                    first = i;
+                } else {
+                    union(parent, weight, first, i);
+                }
+            }
+        }
+    }
+
+    private static void union(final int[] parent, final int[] weight, final int i, final int j) {
+        int a = find(parent, i);
+        int b = find(parent, j);
+        if (a != b) {
+            if (weight[a] < weight[b]) {
+                final int t = a;
+                a = b;
+                b = t;
+            }
+            parent[b] = a;
+            weight[a] += weight[b];
+        }
+    }
+
+    private static int find(final int[] parent, final int i) {
+        int root = i;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // (compress the path, so later finds are quicker)
+        int j = i;
+        while (parent[j] != root) {
+            final int next = parent[j];
+            parent[j] = root;
+            j = next;
+        }
+        return root;
+    }
+
+    /**
+     * Puts each top-level record into the islands it belongs to, keeping document order.
+     */
+    private static void assignRecords(final Loader loader, final RelationshipGraph graph, final int[] island, final List<List<TreeNode<GedcomLine>>> records, final List<TreeNode<GedcomLine>> orphans) {
+        final GedcomTree gedcom = loader.getGedcom();
+        final int cIsland = records.size();
+
+        // the island of each INDI and FAM record, and the islands of the records they refer to
+        final Map<TreeNode<GedcomLine>, Integer> mapRecordToIsland = new IdentityHashMap<>();
+        final Map<TreeNode<GedcomLine>, BitSet> mapReferencedToIslands = new IdentityHashMap<>();
+        final List<TreeNode<GedcomLine>> pending = new ArrayList<>();
+        for (final TreeNode<GedcomLine> record : gedcom.getRoot()) {
+            final GedcomTag tag = record.getObject().getTag();
+            final BitSet islands = new BitSet();
+            if (tag.equals(GedcomTag.INDI)) {
+                final int i = graph.indexOf(loader.lookUpPerson(record));
+                if (0 <= i) {
+                    mapRecordToIsland.put(record, island[i]);
+                    islands.set(island[i]);
+                }
+            } else if (tag.equals(GedcomTag.FAM)) {
+                final Loader.Family family = loader.getFamily(record);
+                if (family != null) {
+                    for (final Person person : family.getPeople()) {
+                        final int i = graph.indexOf(person);
+                        if (0 <= i) {
+                            mapRecordToIsland.put(record, island[i]);
+                            islands.set(island[i]);
+                            break;
+                        }
+                    }
+                }
+            } else if (tag.equals(GedcomTag.HEAD)) {
+                islands.set(0, cIsland);
+            }
+            if (!islands.isEmpty()) {
+                refer(gedcom, record, islands, mapReferencedToIslands, pending);
+            }
+        }
+        // (follow references from referenced records, until there are no more new ones)
+        while (!pending.isEmpty()) {
+            final TreeNode<GedcomLine> record = pending.remove(pending.size() - 1);
+            refer(gedcom, record, mapReferencedToIslands.get(record), mapReferencedToIslands, pending);
+        }
+
+        for (final TreeNode<GedcomLine> record : gedcom.getRoot()) {
+            final GedcomTag tag = record.getObject().getTag();
+            final Integer i = mapRecordToIsland.get(record);
+            final BitSet islands = mapReferencedToIslands.get(record);
+            if (i != null) {
+                records.get(i).add(record);
+            } else if (tag.equals(GedcomTag.HEAD) || tag.equals(GedcomTag.TRLR)) {
+                records.forEach(r -> r.add(record));
+            } else if (islands != null) {
+                islands.stream().forEach(k -> records.get(k).add(record));
+            } else {
+                orphans.add(record);
+            }
+        }
+    }
+
+    /**
+     * Marks each (non-INDI, non-FAM) record that the given record refers to
+     * as being in the given islands, and queues it if that is new.
+     */
+    private static void refer(final GedcomTree gedcom, final TreeNode<GedcomLine> record, final BitSet islands, final Map<TreeNode<GedcomLine>, BitSet> mapReferencedToIslands, final List<TreeNode<GedcomLine>> pending) {
+        record.forAll(node -> {
+            final GedcomLine line = node.getObject();
+            if (line == null || !line.isPointer()) {
+                return;
+            }
+            final TreeNode<GedcomLine> target = gedcom.getNode(line.getPointer());
+            if (target == null || target.parent() != gedcom.getRoot()) {
+                return;
+            }
+            final GedcomTag tag = target.getObject().getTag();
+            if (tag.equals(GedcomTag.INDI) || tag.equals(GedcomTag.FAM)) {
+                return;
+            }
+            final BitSet already = mapReferencedToIslands.computeIfAbsent(target, k -> new BitSet());
+            final int before = already.cardinality();
+            already.or(islands);
+            if (already.cardinality() != before) {
+                pending.add(target);
+            }
+        });
+    }
+
+    /**
+     * @return number of islands
+     */
+    public int getCount() {
+        return this.size.length;
+    }
+
+    /**
+     * @param person a person
+     * @return number of the island the person is in, or -1 if the person is not in this tree
+     */
+    public int getIsland(final Person person) {
+        final int i = this.graph.indexOf(person);
+        return i < 0 ? -1 : this.island[i];
+    }
+
+    /**
+     * @param k number of an island
+     * @return number of people in the island
+     */
+    public int getSize(final int k) {
+        return this.size[k];
+    }
+
+    /**
+     * @param k number of an island
+     * @return the top-level records of the island, in document order
+     */
+    public List<TreeNode<GedcomLine>> getRecords(final int k) {
+        return this.records.get(k);
+    }
+
+    /**
+     * @return top-level records that are in no island (such as sources no one cites), in document order
+     */
+    public List<TreeNode<GedcomLine>> getOrphans() {
+        return this.orphans;
+    }
+
+    /**
+     * Writes the records of one island, in GEDCOM format, to the given
+     * <code>Appendable</code>, for splitting a file into one file per island.
+     *
+     * @param k number of an island
+     * @param appendTo where to write
+     * @throws IOException if <code>appendTo</code> does
+     */
+    public void appendTo(final int k, final Appendable appendTo) throws IOException {
+        for (final TreeNode<GedcomLine> record : this.records.get(k)) {
+            GedcomTree.appendTo(record, appendTo);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.GedcomLine;
+import nu.mine.mosher.gedcom.GedcomTag;
+import nu.mine.mosher.gedcom.GedcomTree;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The people of a <code>Loader</code> in lazy mode. Each person is parsed
+ * on first access, along with the FAM records they are a spouse or child
+ * in, and the (other) members of those families. Those relatives are
+ * linked into the other families they are spouses in, too (because a
+ * person's family timeline depends on the marriage dates of their
+ * relatives), but everyone else in those families is parsed without their
+ * own families. Parsed people are kept in a cache, from which the least
+ * recently used are evicted.
+ * <p>
+ * Sources are parsed when first cited, and kept. The indexes of UUIDs,
+ * and of the families each person is in, are built (by scanning just the
+ * top level of each INDI or FAM record) the first time they are needed.
+ *
+ * @author Chris Mosher
+ */
+final class LazyPeople {
+    static final int DEFAULT_CAPACITY = 1 << 10;
+
+    private final Loader loader;
+    private final GedcomTree gedcom;
+    private final int capacity;
+    private final Map<TreeNode<GedcomLine>, Entry> cache;
+    private final Map<String, Source> mapIDtoSource = new ConcurrentHashMap<>();
+    private volatile Map<UUID, TreeNode<GedcomLine>> mapUUIDtoNode;
+    private volatile Families families;
+
+    /**
+     * Index of the FAM records each person is a member of (by HUSB, WIFE, or
+     * CHIL, the same as the eager parse uses; FAMS and FAMC are ignored).
+     */
+    private static final class Families {
+        private final Map<String, List<TreeNode<GedcomLine>>> mapIDtoFamilies = new HashMap<>();
+        // position of each FAM record in the file
+        private final Map<TreeNode<GedcomLine>, Integer> mapFamilyToPosition = new IdentityHashMap<>();
+
+        private List<TreeNode<GedcomLine>> of(final String id) {
+            return this.mapIDtoFamilies.getOrDefault(id, Collections.emptyList());
+        }
+    }
+
+    /**
+     * One person, parsed along with their families.
+     */
+    private static final class Entry {
+        private final Person person;
+        private final Map<TreeNode<GedcomLine>, Event> mapNodeToEvent;
+        private final Map<TreeNode<GedcomLine>, Loader.Partnerships> mapNodeToPartnerships = new HashMap<>();
+
+        private Entry(final Person person, final Map<TreeNode<GedcomLine>, Event> mapNodeToEvent) {
+            this.person = person;
+            this.mapNodeToEvent = mapNodeToEvent;
+        }
+    }
+
+    LazyPeople(final Loader loader, final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        this.loader = loader;
+        this.gedcom = loader.getGedcom();
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<TreeNode<GedcomLine>, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<TreeNode<GedcomLine>, LazyPeople.Entry> eldest) {
+                return LazyPeople.this.capacity < size();
+            }
+        };
+    }
+
+    /**
+     * Generates the UUID of a person who doesn't have one, so that the
+     * person gets the same UUID each time it is parsed.
+     *
+     * @param id ID of the INDI record
+     * @return UUID
+     */
+    static UUID generateUuid(final String id) {
+        return UUID.nameUUIDFromBytes(("INDI " + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    Person get(final TreeNode<GedcomLine> nodeIndi) {
+        final Entry entry = entry(nodeIndi);
+        return entry == null ? null : entry.person;
+    }
+
+    Person get(final UUID uuid) {
+        final TreeNode<GedcomLine> node = uuids().get(uuid);
+        return node == null ? null : get(node);
+    }
+
+    Person getFirst(final String root) {
+        final TreeNode<GedcomLine> nodeRoot = root.isEmpty() ? null : this.gedcom.getNode(root);
+        if (isIndividual(nodeRoot)) {
+            return get(nodeRoot);
+        }
+        for (final TreeNode<GedcomLine> node : this.gedcom.getRoot()) {
+            if (isIndividual(node)) {
+                return get(node);
+            }
+        }
+        return null;
+    }
+
+    Loader.Partnerships getFamily(final TreeNode<GedcomLine> nodeFam) {
+        if (!isRecord(nodeFam, GedcomTag.FAM)) {
+            return null;
+        }
+        final Loader.Partnerships partnerships = new Loader.Partnerships();
+        final Entry husb = spouse(nodeFam, GedcomTag.HUSB);
+        if (husb != null) {
+            partnerships.husb = husb.mapNodeToPartnerships.get(nodeFam).husb;
+        }
+        final Entry wife = spouse(nodeFam, GedcomTag.WIFE);
+        if (wife != null) {
+            partnerships.wife = wife.mapNodeToPartnerships.get(nodeFam).wife;
+        }
+        return partnerships;
+    }
+
+    Event getEvent(final TreeNode<GedcomLine> nodeEvent) {
+        final TreeNode<GedcomLine> record = Loader.getRecord(nodeEvent);
+        final Entry entry;
+        if (isIndividual(record)) {
+            entry = entry(record);
+        } else if (isRecord(record, GedcomTag.FAM)) {
+            final Entry husb = spouse(record, GedcomTag.HUSB);
+            entry = husb != null ? husb : spouse(record, GedcomTag.WIFE);
+        } else {
+            entry = null;
+        }
+        return entry == null ? null : entry.mapNodeToEvent.get(nodeEvent);
+    }
+
+    Source getSource(final TreeNode<GedcomLine> nodeSource) {
+        if (!isRecord(nodeSource, GedcomTag.SOUR)) {
+            return null;
+        }
+        return this.mapIDtoSource.computeIfAbsent(nodeSource.getObject().getID(), id -> this.loader.parseSource(nodeSource));
+    }
+
+    void appendAllUuids(final Set<UUID> appendTo) {
+        appendTo.addAll(uuids().keySet());
+    }
+
+    Stream<Person> streamAll() {
+        return StreamSupport.stream(this.gedcom.getRoot().spliterator(), false)
+            .filter(LazyPeople::isIndividual)
+            .map(this::parseAlone);
+    }
+
+    /**
+     * Discards all parsed people and sources, and the indexes.
+     */
+    void clear() {
+        synchronized (this.cache) {
+            this.cache.clear();
+        }
+        this.mapIDtoSource.clear();
+        this.mapUUIDtoNode = null;
+        this.families = null;
+    }
+
+    private Entry entry(final TreeNode<GedcomLine> nodeIndi) {
+        if (!isIndividual(nodeIndi)) {
+            return null;
+        }
+        synchronized (this.cache) {
+            final Entry entry = this.cache.get(nodeIndi);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        // parse outside the lock; if another thread beats us to it, use theirs
+        final Entry entry = parse(nodeIndi);
+        synchronized (this.cache) {
+            final Entry existing = this.cache.putIfAbsent(nodeIndi, entry);
+            return existing != null ? existing : entry;
+        }
+    }
+
+    private Entry spouse(final TreeNode<GedcomLine> nodeFam, final GedcomTag tag) {
+        for (final TreeNode<GedcomLine> node : nodeFam) {
+            final GedcomLine line = node.getObject();
+            if (line.getTag().equals(tag) && line.isPointer()) {
+                return entry(this.gedcom.getNode(line.getPointer()));
+            }
+        }
+        return null;
+    }
+
+    private Entry parse(final TreeNode<GedcomLine> nodeIndi) {
+        final String id = nodeIndi.getObject().getID();
+        final Families index = families();
+
+        // the families this person is in, and the other people in them
+        final List<TreeNode<GedcomLine>> rNodeFam = index.of(id);
+        final Map<String, TreeNode<GedcomLine>> mapIDtoRelative = new LinkedHashMap<>();
+        for (final TreeNode<GedcomLine> nodeFam : rNodeFam) {
+            for (final TreeNode<GedcomLine> member : nodeFam) {
+                final GedcomLine line = member.getObject();
+                if (isMember(line) && !line.getPointer().equals(id)) {
+                    final TreeNode<GedcomLine> nodeRelative = this.gedcom.getNode(line.getPointer());
+                    if (isIndividual(nodeRelative)) {
+                        mapIDtoRelative.put(line.getPointer(), nodeRelative);
+                    }
+                }
+            }
+        }
+
+        final Map<TreeNode<GedcomLine>, Event> mapNodeToEvent = new HashMap<>();
+        final Entry entry = new Entry(this.loader.parseIndividual(nodeIndi, sources(nodeIndi), mapNodeToEvent::put), mapNodeToEvent);
+        final Map<String, Person> mapIDtoPerson = new HashMap<>();
+        mapIDtoPerson.put(id, entry.person);
+        mapIDtoRelative.forEach((idRelative, nodeRelative) -> mapIDtoPerson.put(idRelative, parseAlone(nodeRelative)));
+
+        // The relatives' key dates depend on all their partnerships (and the
+        // children of those), which the person's family timeline needs, so
+        // also link the other families the relatives are spouses in, with
+        // those families' other members parsed alone.
+        final Set<TreeNode<GedcomLine>> setNodeFam = Collections.newSetFromMap(new IdentityHashMap<>());
+        setNodeFam.addAll(rNodeFam);
+        final List<TreeNode<GedcomLine>> rNodeFamAll = new ArrayList<>(rNodeFam);
+        for (final String idRelative : mapIDtoRelative.keySet()) {
+            for (final TreeNode<GedcomLine> nodeFam : index.of(idRelative)) {
+                if (isSpouse(nodeFam, idRelative) && setNodeFam.add(nodeFam)) {
+                    rNodeFamAll.add(nodeFam);
+                    for (final TreeNode<GedcomLine> member : nodeFam) {
+                        final GedcomLine line = member.getObject();
+                        if (isMember(line) && !mapIDtoPerson.containsKey(line.getPointer())) {
+                            final TreeNode<GedcomLine> nodeOther = this.gedcom.getNode(line.getPointer());
+                            if (isIndividual(nodeOther)) {
+                                mapIDtoPerson.put(line.getPointer(), parseAlone(nodeOther));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        // (in document order, as the eager parse links them, so each person's partnerships are in the same order)
+        rNodeFamAll.sort(Comparator.comparing(index.mapFamilyToPosition::get));
+
+        for (final TreeNode<GedcomLine> nodeFam : rNodeFamAll) {
+            if (rNodeFam.contains(nodeFam)) {
+                final Loader.Family family = this.loader.parseFamily(nodeFam, mapIDtoPerson, sources(nodeFam), entry.mapNodeToEvent::put);
+                entry.mapNodeToPartnerships.put(nodeFam, family.link());
+            } else {
+                this.loader.parseFamily(nodeFam, mapIDtoPerson, sources(nodeFam), (node, event) -> { }).link();
+            }
+        }
+
+        // (twice, because each person's key dates can depend on those of their children)
+        mapIDtoPerson.values().forEach(Person::initKeyDates);
+        mapIDtoPerson.values().forEach(Person::initKeyDates);
+        entry.person.sortPartnerships();
+        entry.person.indexEvents();
+        return entry;
+    }
+
+    /**
+     * Parses a person, without their families.
+     */
+    private Person parseAlone(final TreeNode<GedcomLine> nodeIndi) {
+        final Person person = this.loader.parseIndividual(nodeIndi, sources(nodeIndi), (node, event) -> { });
+        person.initKeyDates();
+        person.indexEvents();
+        return person;
+    }
+
+    /**
+     * Parses all the sources cited anywhere in the given record.
+     *
+     * @return sources by ID
+     */
+    private Map<String, Source> sources(final TreeNode<GedcomLine> record) {
+        record.forAll(node -> {
+            final GedcomLine line = node.getObject();
+            if (line.getTag().equals(GedcomTag.SOUR) && line.isPointer()) {
+                final TreeNode<GedcomLine> nodeSource = this.gedcom.getNode(line.getPointer());
+                if (isRecord(nodeSource, GedcomTag.SOUR)) {
+                    getSource(nodeSource);
+                }
+            }
+        });
+        return this.mapIDtoSource;
+    }
+
+    private Map<UUID, TreeNode<GedcomLine>> uuids() {
+        Map<UUID, TreeNode<GedcomLine>> map = this.mapUUIDtoNode;
+        if (map == null) {
+            map = new HashMap<>();
+            for (final TreeNode<GedcomLine> node : this.gedcom.getRoot()) {
+                if (isIndividual(node)) {
+                    final UUID uuid = Loader.findUuid(node);
+                    map.putIfAbsent(uuid != null ? uuid : generateUuid(node.getObject().getID()), node);
+                }
+            }
+            this.mapUUIDtoNode = map;
+        }
+        return map;
+    }
+
+    private Families families() {
+        Families index = this.families;
+        if (index == null) {
+            index = new Families();
+            for (final TreeNode<GedcomLine> nodeFam : this.gedcom.getRoot()) {
+                if (isRecord(nodeFam, GedcomTag.FAM)) {
+                    index.mapFamilyToPosition.put(nodeFam, index.mapFamilyToPosition.size());
+                    for (final TreeNode<GedcomLine> member : nodeFam) {
+                        final GedcomLine line = member.getObject();
+                        if (isMember(line)) {
+                            final List<TreeNode<GedcomLine>> rNodeFam = index.mapIDtoFamilies.computeIfAbsent(line.getPointer(), k -> new ArrayList<>(2));
+                            if (!rNodeFam.contains(nodeFam)) {
+                                rNodeFam.add(nodeFam);
+                            }
+                        }
+                    }
+                }
+            }
+            this.families = index;
+        }
+        return index;
+    }
+
+    private static boolean isSpouse(final TreeNode<GedcomLine> nodeFam, final String id) {
+        for (final TreeNode<GedcomLine> member : nodeFam) {
+            final GedcomLine line = member.getObject();
+            final GedcomTag tag = line.getTag();
+            if (line.isPointer() && (tag.equals(GedcomTag.HUSB) || tag.equals(GedcomTag.WIFE)) && line.getPointer().equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMember(final GedcomLine line) {
+        final GedcomTag tag = line.getTag();
+        return line.isPointer() && (tag.equals(GedcomTag.HUSB) || tag.equals(GedcomTag.WIFE) || tag.equals(GedcomTag.CHIL));
+    }
+
+    private static boolean isIndividual(final TreeNode<GedcomLine> node) {
+        return isRecord(node, GedcomTag.INDI);
+    }
+
+    private static boolean isRecord(final TreeNode<GedcomLine> node, final GedcomTag tag) {
+        return node != null && node.getObject() != null && node.getObject().getTag().equals(tag) && node.getObject().hasID();
+    }
+}
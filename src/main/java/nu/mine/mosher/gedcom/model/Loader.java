@@ -1,16 +1,26 @@
 package nu.mine.mosher.gedcom.model;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import nu.mine.mosher.gedcom.GedcomLine;
 import nu.mine.mosher.gedcom.GedcomTag;
 import nu.mine.mosher.gedcom.GedcomTree;
-import nu.mine.mosher.gedcom.date.parser.GedcomDateValueParser;
+import nu.mine.mosher.gedcom.date.parser.DateDiagnostics;
+import nu.mine.mosher.gedcom.date.parser.DatePeriodCache;
 import nu.mine.mosher.gedcom.date.DatePeriod;
+import nu.mine.mosher.gedcom.date.IntervalIndex;
+import nu.mine.mosher.gedcom.date.YMD;
 import nu.mine.mosher.logging.Jul;
 import nu.mine.mosher.time.Time;
 import nu.mine.mosher.collection.TreeNode;
@@ -31,103 +41,666 @@ public class Loader {
     }
 
     // hardcoded source for Family Tree links (at FamilySearch)
-    private static final Source sourceLdsFamilyTree = new Source(
+    static final Source sourceLdsFamilyTree = new Source(
         "74a586b6-6786-4ba1-859c-8e317fec4dde",
         "The Church of Jesus Christ of Latter‐day Saints [LDS]",
         "Family Tree",
         "https://www.familysearch.org",
         "");
 
+    // dates are parsed the same way in every file, so share one cache
+    private static final DatePeriodCache dates = new DatePeriodCache();
+
+    private final DateDiagnostics dateDiagnostics = new DateDiagnostics();
+
     private final GedcomTree gedcom;
     private final String name;
 
     private final Map<UUID, Person> mapUUIDtoPerson = new HashMap<>();
 
-    private final Map<TreeNode<GedcomLine>, Person> mapNodeToPerson = new HashMap<>();
-    private final Map<TreeNode<GedcomLine>, Partnerships> mapNodeToPartnerships = new HashMap<>();
-    private final Map<TreeNode<GedcomLine>, Event> mapNodeToEvent = new HashMap<>();
-    private final Map<TreeNode<GedcomLine>, Source> mapNodeToSource = new HashMap<>();
+    // the Person, Family, Event, or Source built from each node
+    private final NodeTable model;
+    // (kept after parsing, for refresh)
+    private final Map<String, Person> mapIDtoPerson = new HashMap<>();
+    private final Map<String, Source> mapIDtoSource = new HashMap<>();
 
     private Person first;
     private final List<Person> people = new ArrayList<>(256);
+    // collation key of each person's sortable name, in the same order as people
+    private final List<CollationKey> nameKeys = new ArrayList<>(256);
     private final Collator sorter;
+    private final Time latestPublicInformation = dateOfLatestPublicInformation();
+    private IntervalIndex<FamilyEvent> eventIndex = new IntervalIndex<>(Collections.emptyList(), e -> e.getEvent().getDate());
     private String description = "";
     private String copyright = "";
+    private String root = "";
+    // (built when first needed, and discarded whenever the model changes)
+    private volatile RelationshipGraph graph;
+    private volatile RelationshipCalculator calculator;
+    // only in lazy mode
+    private LazyPeople lazy;
 
 
     public Loader(final GedcomTree gedcom, final String filename) {
         this.gedcom = gedcom;
+        this.model = new NodeTable(gedcom);
         this.name = filename;
         this.sorter = sorter();
     }
 
 
     public void parse() {
+        parse(false);
+    }
+
+    /**
+     * Parses the tree. In parallel mode, sources, individuals, and families
+     * are each parsed on multiple threads (of the common <code>ForkJoinPool</code>),
+     * but the results are always registered, and families linked, in document
+     * order, so the model is the same either way.
+     *
+     * @param parallel true to use multiple threads
+     */
+    public void parse(final boolean parallel) {
+        // (before parsing, so that events can be added from multiple threads)
+        prepareModel(this.gedcom.getRoot());
+
         final Collection<TreeNode<GedcomLine>> rNodeTop = new ArrayList<>();
         getChildren(this.gedcom.getRoot(), rNodeTop);
 
-        String root = "";
-        for (final TreeNode<GedcomLine> nodeTop : rNodeTop) {
-            final GedcomLine lineTop = nodeTop.getObject();
-            final GedcomTag tagTop = lineTop.getTag();
+        parseHead(rNodeTop);
 
-            if (tagTop.equals(GedcomTag.HEAD)) {
-                root = parseHead(nodeTop);
-                break;
+        final List<TreeNode<GedcomLine>> rNodeSource = topLevel(rNodeTop, GedcomTag.SOUR);
+        final List<Source> sources = map(rNodeSource, this::parseSource, parallel);
+        for (int i = 0; i < sources.size(); ++i) {
+            addSource(rNodeSource.get(i), sources.get(i));
+        }
+
+        final List<TreeNode<GedcomLine>> rNodeIndi = topLevel(rNodeTop, GedcomTag.INDI);
+        final List<Person> persons = map(rNodeIndi, nodeIndi -> parseIndividual(nodeIndi, this.mapIDtoSource, this::addEvent), parallel);
+        for (int i = 0; i < persons.size(); ++i) {
+            addPerson(rNodeIndi.get(i), persons.get(i));
+        }
+
+        final List<TreeNode<GedcomLine>> rNodeFam = topLevel(rNodeTop, GedcomTag.FAM);
+        final List<Family> families = map(rNodeFam, nodeFam -> parseFamily(nodeFam, this.mapIDtoPerson, this.mapIDtoSource, this::addEvent), parallel);
+        for (int i = 0; i < families.size(); ++i) {
+            addFamily(rNodeFam.get(i), families.get(i));
+        }
+
+        finish(parallel);
+
+        if (!this.dateDiagnostics.isEmpty()) {
+            Jul.log().warning(this.dateDiagnostics.toString());
+        }
+        Jul.log().fine(dates.toString());
+    }
+
+    /**
+     * Makes sure every node in the given subtree has an ordinal, and there is room for its model object.
+     */
+    private void prepareModel(final TreeNode<GedcomLine> node) {
+        this.gedcom.assignOrdinals(node);
+        this.model.ensureCapacity(this.gedcom.getOrdinalCount());
+    }
+
+    void addSource(final TreeNode<GedcomLine> nodeSource, final Source source) {
+        this.model.put(nodeSource, source);
+        this.mapIDtoSource.put(source.getID(), source);
+    }
+
+    void addPerson(final TreeNode<GedcomLine> nodeIndi, final Person person) {
+        this.people.add(person);
+        this.model.put(nodeIndi, person);
+        this.mapIDtoPerson.put(person.getID(), person);
+        storeInUuidMap(person);
+    }
+
+    void addFamily(final TreeNode<GedcomLine> nodeFam, final Family family) {
+        family.link();
+        this.model.put(nodeFam, family);
+    }
+
+    void addEvent(final TreeNode<GedcomLine> nodeEvent, final Event event) {
+        this.model.put(nodeEvent, event);
+    }
+
+    /**
+     * Computes everything that depends on all people and families having been added.
+     */
+    void finish(final boolean parallel) {
+        // (each person's key dates can depend on those of their children)
+        this.people.forEach(Person::initKeyDates);
+        stream(this.people, parallel).forEach(Person::sortPartnerships);
+
+        sortPeople(parallel);
+
+        stream(this.people, parallel).forEach(Person::indexEvents);
+        this.eventIndex = indexEvents();
+
+        this.first = findFirstPerson();
+        this.graph = null;
+    }
+
+    /**
+     * Writes the parsed model to the given stream, in a compact binary form
+     * that <code>readCache</code> can load much faster than the tree can be
+     * parsed. The cache is only valid for this same tree (see
+     * <code>getTreeHash</code>), and only until the date that determines which
+     * people are private changes (which is every day).
+     *
+     * @param out stream to write to (it is not closed)
+     * @throws IOException if the stream cannot be written to
+     */
+    public void writeCache(final OutputStream out) throws IOException {
+        requireEager();
+        new ModelCache(this).write(out);
+    }
+
+    /**
+     * Loads the model from a cache written by <code>writeCache</code>, instead
+     * of parsing the tree. Call it on a new <code>Loader</code>, in place of
+     * <code>parse</code>. Date problems are not cached, so
+     * <code>getDateDiagnostics</code> will be empty.
+     *
+     * @param in stream to read from (it is not closed)
+     * @return true if loaded; false (with nothing loaded) if the cache is from a different version, tree, or day
+     * @throws IOException if the stream cannot be read, or the cache is corrupt (in which case the model is incomplete)
+     */
+    public boolean readCache(final InputStream in) throws IOException {
+        final Collection<TreeNode<GedcomLine>> rNodeTop = new ArrayList<>();
+        getChildren(this.gedcom.getRoot(), rNodeTop);
+        parseHead(rNodeTop);
+        prepareModel(this.gedcom.getRoot());
+        return new ModelCache(this).read(in);
+    }
+
+    /**
+     * @return hash of the contents of the tree, as a hex string (which is the key of any cache of it)
+     */
+    public String getTreeHash() {
+        return ModelCache.hash(this.gedcom);
+    }
+
+    Family getFamily(final TreeNode<GedcomLine> nodeFam) {
+        return this.model.get(nodeFam, Family.class);
+    }
+
+    Time getLatestPublicInformation() {
+        return this.latestPublicInformation;
+    }
+
+    /**
+     * Brings the model up to date after some top-level records of the tree
+     * have been edited, added, or removed (from the root of the tree), without
+     * parsing the whole tree again. Only the changed records are parsed again,
+     * along with every INDI or FAM record that points to a changed record; all
+     * other <code>Person</code>, <code>Partnership</code>, <code>Event</code>,
+     * and <code>Source</code> objects are kept as they are, and only the
+     * members of affected families are re-linked.
+     * <p>
+     * The model ends up the same as a full <code>parse</code> would make it,
+     * except that a re-linked person's partnerships or parents with equal
+     * dates can be in a different order, as can people with equal names.
+     * In lazy mode, this just discards all cached people.
+     *
+     * @param rNodeChanged level-0 records that were changed, added, or removed
+     */
+    public void refresh(final Collection<TreeNode<GedcomLine>> rNodeChanged) {
+        final Set<TreeNode<GedcomLine>> rNodeIndi = new LinkedHashSet<>();
+        final Set<TreeNode<GedcomLine>> rNodeFam = new LinkedHashSet<>();
+        final Set<TreeNode<GedcomLine>> rNodeSource = new LinkedHashSet<>();
+        // IDs of changed records other than people or families (sources, notes, multimedia)
+        final Set<String> idsOther = new HashSet<>();
+        boolean head = false;
+        for (final TreeNode<GedcomLine> node : rNodeChanged) {
+            final GedcomLine line = node.getObject();
+            final GedcomTag tag = line.getTag();
+            if (tag.equals(GedcomTag.HEAD)) {
+                head = true;
+            } else if (tag.equals(GedcomTag.INDI)) {
+                rNodeIndi.add(node);
+            } else if (tag.equals(GedcomTag.FAM)) {
+                rNodeFam.add(node);
+            } else {
+                if (tag.equals(GedcomTag.SOUR)) {
+                    rNodeSource.add(node);
+                }
+                if (line.hasID()) {
+                    idsOther.add(line.getID());
+                }
             }
         }
 
-        final Map<String, Source> mapIDtoSource = new HashMap<>();
+        if (head) {
+            final Collection<TreeNode<GedcomLine>> rNodeTop = new ArrayList<>();
+            getChildren(this.gedcom.getRoot(), rNodeTop);
+            parseHead(rNodeTop);
+        }
 
-        for (final TreeNode<GedcomLine> nodeTop : rNodeTop) {
-            final GedcomLine lineTop = nodeTop.getObject();
-            final GedcomTag tagTop = lineTop.getTag();
+        if (isLazy()) {
+            this.lazy.clear();
+            return;
+        }
+
+        rNodeChanged.stream().filter(this::isInTree).forEach(this::prepareModel);
+
+        for (final TreeNode<GedcomLine> nodeSource : rNodeSource) {
+            final Source old = this.model.remove(nodeSource, Source.class);
+            if (old != null) {
+                this.mapIDtoSource.remove(old.getID(), old);
+                idsOther.add(old.getID());
+            }
+            if (isInTree(nodeSource)) {
+                final Source source = parseSource(nodeSource);
+                addSource(nodeSource, source);
+            }
+        }
+
+        // IDs of changed people, before and after
+        final Set<String> idsIndi = new HashSet<>();
+        for (final TreeNode<GedcomLine> nodeIndi : rNodeIndi) {
+            final Person old = this.model.get(nodeIndi, Person.class);
+            if (old != null) {
+                idsIndi.add(old.getID());
+            }
+            if (isInTree(nodeIndi) && nodeIndi.getObject().hasID()) {
+                idsIndi.add(nodeIndi.getObject().getID());
+            }
+        }
 
-            if (tagTop.equals(GedcomTag.SOUR)) {
-                final Source source = parseSource(nodeTop);
-                this.mapNodeToSource.put(nodeTop, source);
-                mapIDtoSource.put(source.getID(), source);
+        // records that cite a changed source (or note, etc.), and families with a changed member
+        for (final TreeNode<GedcomLine> record : this.gedcom.getRoot()) {
+            final GedcomTag tag = record.getObject().getTag();
+            if (tag.equals(GedcomTag.INDI) && !idsOther.isEmpty() && refersTo(record, idsOther)) {
+                rNodeIndi.add(record);
+            } else if (tag.equals(GedcomTag.FAM) && ((!idsOther.isEmpty() && refersTo(record, idsOther)) || hasMember(record, idsIndi))) {
+                rNodeFam.add(record);
             }
         }
 
-        final Map<String, Person> mapIDtoPerson = new HashMap<>();
+        // the people who need to be re-linked, and have their key dates recomputed
+        final Set<Person> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<Event> stale = Collections.newSetFromMap(new IdentityHashMap<>());
 
-        for (final TreeNode<GedcomLine> nodeTop : rNodeTop) {
-            final GedcomLine lineTop = nodeTop.getObject();
-            final GedcomTag tagTop = lineTop.getTag();
+        for (final TreeNode<GedcomLine> nodeFam : rNodeFam) {
+            final Family old = this.model.remove(nodeFam, Family.class);
+            if (old != null) {
+                old.unlink();
+                stale.addAll(old.rEvent);
+                touched.addAll(old.getPeople());
+            }
+        }
+
+        for (final TreeNode<GedcomLine> nodeIndi : rNodeIndi) {
+            final Person old = this.model.remove(nodeIndi, Person.class);
+            if (old != null) {
+                stale.addAll(old.getEvents());
+                touched.remove(old);
+                this.mapIDtoPerson.remove(old.getID(), old);
+                this.mapUUIDtoPerson.remove(old.getUuid(), old);
+                removeSorted(old);
+            }
+        }
+        if (!stale.isEmpty()) {
+            this.model.removeIf(stale::contains);
+        }
 
-            if (tagTop.equals(GedcomTag.INDI)) {
-                final Person person = parseIndividual(nodeTop, mapIDtoSource);
-                this.people.add(person);
-                this.mapNodeToPerson.put(nodeTop, person);
-                mapIDtoPerson.put(person.getID(), person);
+        for (final TreeNode<GedcomLine> nodeIndi : rNodeIndi) {
+            if (isInTree(nodeIndi)) {
+                final Person person = parseIndividual(nodeIndi, this.mapIDtoSource, this::addEvent);
+                this.model.put(nodeIndi, person);
+                this.mapIDtoPerson.put(person.getID(), person);
                 storeInUuidMap(person);
-                if (this.first == null || person.getID().equals(root)) {
-                    this.first = person;
-                }
+                insertSorted(person);
+                touched.add(person);
             }
         }
 
-        for (final TreeNode<GedcomLine> nodeTop : rNodeTop) {
-            final GedcomLine lineTop = nodeTop.getObject();
-            final GedcomTag tagTop = lineTop.getTag();
+        for (final TreeNode<GedcomLine> nodeFam : rNodeFam) {
+            if (isInTree(nodeFam)) {
+                final Family family = parseFamily(nodeFam, this.mapIDtoPerson, this.mapIDtoSource, this::addEvent);
+                addFamily(nodeFam, family);
+                touched.addAll(family.getPeople());
+            }
+        }
+
+        // (twice, because each person's key dates can depend on those of their children)
+        touched.forEach(Person::initKeyDates);
+        touched.forEach(Person::initKeyDates);
+        touched.forEach(Person::sortPartnerships);
+        touched.forEach(Person::indexEvents);
+        // (initKeyDates discarded the touched people's own timelines; their relatives' include their events)
+        touched.forEach(Loader::invalidateRelatives);
+        this.eventIndex = indexEvents();
+
+        this.first = findFirstPerson();
+        this.graph = null;
+    }
+
+    private static void invalidateRelatives(final Person person) {
+        person.getFathers().forEach(r -> invalidate(r.getOther()));
+        person.getMothers().forEach(r -> invalidate(r.getOther()));
+        for (final Partnership partnership : person.getPartnerships()) {
+            invalidate(partnership.getPartner());
+            partnership.getChildRelations().forEach(r -> invalidate(r.getOther()));
+        }
+    }
+
+    private static void invalidate(final Person person) {
+        if (person != null) {
+            person.invalidateFamilyEvents();
+        }
+    }
+
+    private boolean isInTree(final TreeNode<GedcomLine> record) {
+        return record.parent() == this.gedcom.getRoot();
+    }
 
-            if (tagTop.equals(GedcomTag.FAM)) {
-                parseFamily(nodeTop, mapIDtoPerson, mapIDtoSource);
+    /**
+     * @return true if any line within the given node points to one of the given IDs
+     */
+    private static boolean refersTo(final TreeNode<GedcomLine> node, final Set<String> ids) {
+        for (final TreeNode<GedcomLine> child : node) {
+            final GedcomLine line = child.getObject();
+            if ((line.isPointer() && ids.contains(line.getPointer())) || refersTo(child, ids)) {
+                return true;
             }
         }
+        return false;
+    }
 
-        this.people.forEach(Person::initKeyDates);
-        this.people.forEach(Person::sortPartnerships);
+    private static boolean hasMember(final TreeNode<GedcomLine> nodeFam, final Set<String> ids) {
+        for (final TreeNode<GedcomLine> node : nodeFam) {
+            final GedcomLine line = node.getObject();
+            final GedcomTag tag = line.getTag();
+            if ((tag.equals(GedcomTag.HUSB) || tag.equals(GedcomTag.WIFE) || tag.equals(GedcomTag.CHIL)) && ids.contains(line.getPointer())) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        this.people.sort((p1, p2) -> this.sorter.compare(p1.getNameSortable(), p2.getNameSortable()));
+    /**
+     * @return the root person named in the header, if any, otherwise the first person in the tree
+     */
+    private Person findFirstPerson() {
+        final Person root = this.root.isEmpty() ? null : this.mapIDtoPerson.get(this.root);
+        if (root != null) {
+            return root;
+        }
+        for (final TreeNode<GedcomLine> record : this.gedcom.getRoot()) {
+            final Person person = this.model.get(record, Person.class);
+            if (person != null) {
+                return person;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prepares to parse the tree lazily: only the header is parsed now. Each
+     * person is parsed (along with their families, and the members of those
+     * families) the first time it is looked up, and kept in a cache of the
+     * given size, from which the least recently used are evicted. Global
+     * operations (<code>getAllPeople</code>, <code>streamAllPeople</code>)
+     * parse each person without their families. Index-based operations
+     * (<code>getEventsWithin</code>, <code>getNameKeys</code>,
+     * <code>getPeopleInNameRange</code>) are not available in lazy mode.
+     *
+     * @param capacity maximum number of people to keep
+     */
+    public void parseLazily(final int capacity) {
+        final Collection<TreeNode<GedcomLine>> rNodeTop = new ArrayList<>();
+        getChildren(this.gedcom.getRoot(), rNodeTop);
+        parseHead(rNodeTop);
+        this.lazy = new LazyPeople(this, capacity);
+    }
+
+    public void parseLazily() {
+        parseLazily(LazyPeople.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return true if this loader was set up with <code>parseLazily</code>
+     */
+    public boolean isLazy() {
+        return this.lazy != null;
+    }
+
+    private void requireEager() {
+        if (isLazy()) {
+            throw new IllegalStateException("not available in lazy mode");
+        }
+    }
+
+    /**
+     * Computes the family timeline (see <code>Person.getFamilyTimeline</code>)
+     * of every person now, rather than as each is first needed. Each
+     * timeline only reads the (already computed) events and key dates of
+     * the person's immediate family, so they can be computed in parallel.
+     *
+     * @param parallel true to use multiple threads
+     */
+    public void computeFamilyTimelines(final boolean parallel) {
+        requireEager();
+        stream(this.people, parallel).forEach(Person::getFamilyTimeline);
+    }
+
+    /**
+     * Gets the parent, child, and spouse relations of all people, as a
+     * compact graph indexed the same as <code>getAllPeople</code>. The graph
+     * is built the first time it is needed, and again after the model
+     * changes (by <code>refresh</code>, for example).
+     *
+     * @return the graph
+     */
+    public RelationshipGraph getRelationshipGraph() {
+        requireEager();
+        RelationshipGraph g = this.graph;
+        if (g == null) {
+            g = RelationshipGraph.of(this.people);
+            this.graph = g;
+        }
+        return g;
+    }
+
+    /**
+     * Gets a calculator of how people are related, which caches its
+     * results until the model changes.
+     *
+     * @return calculator over <code>getRelationshipGraph</code>
+     */
+    public RelationshipCalculator getRelationshipCalculator() {
+        final RelationshipGraph g = getRelationshipGraph();
+        RelationshipCalculator c = this.calculator;
+        if (c == null || c.getGraph() != g) {
+            c = new RelationshipCalculator(g);
+            this.calculator = c;
+        }
+        return c;
     }
 
-    /* list of all people, sorted by name */
+    /**
+     * Finds the islands of this tree: groups of people not related to
+     * anyone outside the group, along with the records each group needs
+     * (for reporting them, or splitting them into separate files).
+     *
+     * @return islands, largest first
+     */
+    public Islands findIslands() {
+        requireEager();
+        return Islands.of(this);
+    }
+
+    /**
+     * Finds the events of all people (and their families) that overlap
+     * the given period. Each family event is included once, for the
+     * first partner found.
+     *
+     * @param period period to check
+     * @return events found, ordered by person (as in <code>getAllPeople</code>)
+     */
+    public List<FamilyEvent> getEventsWithin(final DatePeriod period) {
+        requireEager();
+        return this.eventIndex.getOverlapping(period);
+    }
+
+    private IntervalIndex<FamilyEvent> indexEvents() {
+        final List<FamilyEvent> all = new ArrayList<>();
+        final Set<Event> families = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final Person person : this.people) {
+            person.getEvents().forEach(e -> all.add(new FamilyEvent(person, e, "self")));
+            for (final Partnership partnership : person.getPartnerships()) {
+                partnership.getEvents().stream().filter(families::add).forEach(e -> all.add(new FamilyEvent(person, e, "self")));
+            }
+        }
+        return new IntervalIndex<>(all, e -> e.getEvent().getDate());
+    }
+
+    /**
+     * In lazy mode, each person is parsed as the stream reaches them, and
+     * is not cached, so this visits all people without holding them all
+     * in memory.
+     *
+     * @return people, in document order (in lazy mode, without their families)
+     */
+    public Stream<Person> streamAllPeople() {
+        if (isLazy()) {
+            return this.lazy.streamAll();
+        }
+        return this.people.stream();
+    }
+
+    /**
+     * Gets all people, sorted by name. In lazy mode, this parses every
+     * person (without their families) and sorts them all in memory, so for
+     * large trees use <code>streamAllPeople</code>, which is the only way to
+     * visit all people that streams them one at a time.
+     *
+     * @return people, sorted by name
+     */
     public List<Person> getAllPeople() {
+        if (isLazy()) {
+            final List<Person> all = streamAllPeople().collect(Collectors.toList());
+            final Map<Person, CollationKey> keys = new IdentityHashMap<>(2 * all.size());
+            all.forEach(p -> keys.put(p, getNameKey(p.getNameSortable())));
+            all.sort(Comparator.comparing(keys::get));
+            return Collections.unmodifiableList(all);
+        }
         return Collections.unmodifiableList(this.people);
     }
 
+    /**
+     * Sorts people by name, collating each name only once.
+     */
+    private void sortPeople(final boolean parallel) {
+        final CollationKey[] keys;
+        if (parallel) {
+            // a Collator is synchronized, so give each thread its own copy
+            final ThreadLocal<Collator> collator = ThreadLocal.withInitial(() -> (Collator)this.sorter.clone());
+            keys = this.people.parallelStream().map(p -> collator.get().getCollationKey(p.getNameSortable())).toArray(CollationKey[]::new);
+        } else {
+            keys = this.people.stream().map(p -> this.sorter.getCollationKey(p.getNameSortable())).toArray(CollationKey[]::new);
+        }
+
+        final Integer[] order = new Integer[keys.length];
+        Arrays.setAll(order, i -> i);
+        // (both sorts are stable, so people with the same name stay in document order)
+        if (parallel) {
+            Arrays.parallelSort(order, Comparator.comparing(i -> keys[i]));
+        } else {
+            Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+        }
+
+        final List<Person> unsorted = new ArrayList<>(this.people);
+        this.people.clear();
+        this.nameKeys.clear();
+        for (final int i : order) {
+            this.people.add(unsorted.get(i));
+            this.nameKeys.add(keys[i]);
+        }
+    }
+
+    /**
+     * @return collation keys of the sortable names of all people, in the same order as <code>getAllPeople</code>
+     */
+    public List<CollationKey> getNameKeys() {
+        requireEager();
+        return Collections.unmodifiableList(this.nameKeys);
+    }
+
+    /**
+     * Gets the collation key of the given name, for comparing to <code>getNameKeys</code>.
+     *
+     * @param nameSortable name, in the form of <code>Person.getNameSortable</code>
+     * @return collation key
+     */
+    public CollationKey getNameKey(final String nameSortable) {
+        return this.sorter.getCollationKey(nameSortable);
+    }
+
+    /**
+     * Finds all people whose sortable names collate within the given range.
+     * The comparison ignores case and accents.
+     *
+     * @param fromInclusive lowest name (in the form of <code>Person.getNameSortable</code>)
+     * @param toExclusive name after the highest name
+     * @return people found, in the same order as <code>getAllPeople</code>
+     */
+    public List<Person> getPeopleInNameRange(final String fromInclusive, final String toExclusive) {
+        requireEager();
+        final int from = lowerBound(getNameKey(fromInclusive));
+        final int to = lowerBound(getNameKey(toExclusive));
+        if (to <= from) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(this.people.subList(from, to)));
+    }
+
+    private int lowerBound(final CollationKey key) {
+        return bound(key, false);
+    }
+
+    private int upperBound(final CollationKey key) {
+        return bound(key, true);
+    }
+
+    private int bound(final CollationKey key, final boolean upper) {
+        int lo = 0;
+        int hi = this.nameKeys.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int c = this.nameKeys.get(mid).compareTo(key);
+            if (c < 0 || (upper && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Adds the given person to the list of people sorted by name (after any others with the same name).
+     */
+    private void insertSorted(final Person person) {
+        final CollationKey key = getNameKey(person.getNameSortable());
+        final int i = upperBound(key);
+        this.people.add(i, person);
+        this.nameKeys.add(i, key);
+    }
+
+    private void removeSorted(final Person person) {
+        for (int i = lowerBound(getNameKey(person.getNameSortable())); i < this.people.size(); ++i) {
+            if (this.people.get(i) == person) {
+                this.people.remove(i);
+                this.nameKeys.remove(i);
+                return;
+            }
+        }
+    }
+
     private Collator sorter() {
         final Collator c = Collator.getInstance();
         c.setDecomposition(Collator.FULL_DECOMPOSITION);
@@ -143,6 +716,13 @@ public class Loader {
         return this.gedcom;
     }
 
+    /**
+     * @return problems found with DATE values while parsing
+     */
+    public DateDiagnostics getDateDiagnostics() {
+        return this.dateDiagnostics;
+    }
+
     public String getDescription() {
         return this.description;
     }
@@ -152,30 +732,53 @@ public class Loader {
     }
 
     public Person getFirstPerson() {
+        if (isLazy()) {
+            return this.lazy.getFirst(this.root);
+        }
         return this.first;
     }
 
     public Person lookUpPerson(final UUID uuid) {
+        if (isLazy()) {
+            return this.lazy.get(uuid);
+        }
         return this.mapUUIDtoPerson.get(uuid);
     }
 
     public Person lookUpPerson(final TreeNode<GedcomLine> node) {
-        return this.mapNodeToPerson.get(node);
+        if (isLazy()) {
+            return this.lazy.get(node);
+        }
+        return this.model.get(node, Person.class);
     }
 
     public Partnerships lookUpFamily(final TreeNode<GedcomLine> node) {
-        return this.mapNodeToPartnerships.get(node);
+        if (isLazy()) {
+            return this.lazy.getFamily(node);
+        }
+        final Family family = this.model.get(node, Family.class);
+        return family == null ? null : family.partnerships;
     }
 
     public Event lookUpEvent(final TreeNode<GedcomLine> node) {
-        return this.mapNodeToEvent.get(node);
+        if (isLazy()) {
+            return this.lazy.getEvent(node);
+        }
+        return this.model.get(node, Event.class);
     }
 
     public Source lookUpSource(final TreeNode<GedcomLine> node) {
-        return this.mapNodeToSource.get(node);
+        if (isLazy()) {
+            return this.lazy.getSource(node);
+        }
+        return this.model.get(node, Source.class);
     }
 
     public void appendAllUuids(final Set<UUID> appendTo) {
+        if (isLazy()) {
+            this.lazy.appendAllUuids(appendTo);
+            return;
+        }
         appendTo.addAll(this.mapUUIDtoPerson.keySet());
     }
 
@@ -193,12 +796,37 @@ public class Loader {
     }
 
 
+    private static List<TreeNode<GedcomLine>> topLevel(final Collection<TreeNode<GedcomLine>> rNodeTop, final GedcomTag tag) {
+        return rNodeTop.stream().filter(n -> n.getObject().getTag().equals(tag)).collect(Collectors.toList());
+    }
+
+    private static <T> Stream<T> stream(final List<T> list, final boolean parallel) {
+        return parallel ? list.parallelStream() : list.stream();
+    }
+
+    private static <T, R> List<R> map(final List<T> list, final Function<T, R> f, final boolean parallel) {
+        return stream(list, parallel).map(f).collect(Collectors.toList());
+    }
+
     private static void getChildren(TreeNode<GedcomLine> root, final Collection<TreeNode<GedcomLine>> rNodeTop) {
         for (final TreeNode<GedcomLine> child : root) {
             rNodeTop.add(child);
         }
     }
 
+    private String parseHead(final Collection<TreeNode<GedcomLine>> rNodeTop) {
+        for (final TreeNode<GedcomLine> nodeTop : rNodeTop) {
+            final GedcomLine lineTop = nodeTop.getObject();
+            final GedcomTag tagTop = lineTop.getTag();
+
+            if (tagTop.equals(GedcomTag.HEAD)) {
+                this.root = parseHead(nodeTop);
+                break;
+            }
+        }
+        return this.root;
+    }
+
     private String parseHead(final TreeNode<GedcomLine> head) {
         final Collection<TreeNode<GedcomLine>> rNode = new ArrayList<>();
         getChildren(head, rNode);
@@ -218,7 +846,7 @@ public class Loader {
         return root;
     }
 
-    private Source parseSource(final TreeNode<GedcomLine> nodeSource) {
+    Source parseSource(final TreeNode<GedcomLine> nodeSource) {
         String author = "";
         String title = "";
         String publication = "";
@@ -243,7 +871,7 @@ public class Loader {
         return new Source(nodeSource.getObject().getID(), author, title, publication, text);
     }
 
-    private Person parseIndividual(final TreeNode<GedcomLine> nodeIndi, final Map<String, Source> mapIDtoSource) {
+    Person parseIndividual(final TreeNode<GedcomLine> nodeIndi, final Map<String, Source> mapIDtoSource, final BiConsumer<TreeNode<GedcomLine>, Event> addEvent) {
         String name = "";
         UUID uuid = null;
         final ArrayList<Event> rEvent = new ArrayList<>();
@@ -252,8 +880,8 @@ public class Loader {
         final Collection<TreeNode<GedcomLine>> rNode = new ArrayList<>();
         getChildren(nodeIndi, rNode);
 
-        Event birth = null;
-        Event death = null;
+        DatePeriod birth = null;
+        DatePeriod death = null;
         // first check if this individual should be privatized
         // 1. if INDI has RESN confidential; or,
         // 2. if INDI has recent birth
@@ -267,9 +895,9 @@ public class Loader {
                 }
             }
             if (tag.equals(GedcomTag.BIRT)) {
-                birth = parseEvent(node, mapIDtoSource, false);
+                birth = parseEventDate(node);
             } else if (tag.equals(GedcomTag.DEAT)) {
-                death = parseEvent(node, mapIDtoSource, false);
+                death = parseEventDate(node);
             }
         }
         if (!isPrivate) {
@@ -291,7 +919,7 @@ public class Loader {
                 }
                 // note: private on INDI forces private on all their events, too
                 final Event event = parseEvent(node, mapIDtoSource, isPrivate);
-                this.mapNodeToEvent.put(node, event);
+                addEvent.accept(node, event);
                 rEvent.add(event);
             }
         }
@@ -302,7 +930,10 @@ public class Loader {
             Jul.log().log(Level.WARNING, "Cannot find REFN UUID for individual \"" + name + "\"; will generate temporary UUID.");
         }
 
-        return new Person(nodeIndi.getObject().getID(), name, rEvent, new ArrayList<>(), isPrivate, uuid);
+        final String id = nodeIndi.getObject().getID();
+        // (in lazy mode, a person can be parsed many times, so always generate the same UUID)
+        final UUID uuidIfMissing = isLazy() ? LazyPeople.generateUuid(id) : null;
+        return new Person(id, name, rEvent, new ArrayList<>(), isPrivate, uuid, uuidIfMissing);
     }
 
     private boolean isEventish(final GedcomTag tag, String tagString) {
@@ -315,6 +946,21 @@ public class Loader {
             tagString.equalsIgnoreCase("FSID"); // FSID is FamilySearch ID, as output from Family Tree Maker
     }
 
+    /**
+     * @return the first valid UUID in the given INDI record, or <code>null</code> if none
+     */
+    static UUID findUuid(final TreeNode<GedcomLine> nodeIndi) {
+        for (final TreeNode<GedcomLine> node : nodeIndi) {
+            if (hasUuidTag(node.getObject())) {
+                final UUID uuid = parseUuid(node);
+                if (uuid != null) {
+                    return uuid;
+                }
+            }
+        }
+        return null;
+    }
+
     private static boolean hasUuidTag(final GedcomLine line) {
         if (line.getTag().equals(GedcomTag.REFN)) {
             return true;
@@ -335,7 +981,129 @@ public class Loader {
         }
     }
 
-    private void parseFamily(final TreeNode<GedcomLine> nodeFam, final Map<String, Person> mapIDtoPerson, final Map<String, Source> mapIDtoSource) {
+    /**
+     * A parsed FAM record, which has not yet been linked to its people.
+     */
+    static final class Family {
+        final Person husb;
+        final Person wife;
+        final boolean isPrivate;
+        private final ArrayList<ParentChildRelation> husbandsChildren = new ArrayList<>();
+        private final ArrayList<ParentChildRelation> wifesChildren = new ArrayList<>();
+        final List<Person> children = new ArrayList<>();
+        final List<String> frels = new ArrayList<>();
+        final List<String> mrels = new ArrayList<>();
+        final ArrayList<Event> rEvent = new ArrayList<>();
+        // (what link adds to the people, so that unlink can take it away again)
+        private final List<ParentChildRelation> fathers = new ArrayList<>();
+        private final List<ParentChildRelation> mothers = new ArrayList<>();
+        private Partnerships partnerships;
+
+        Family(final Person husb, final Person wife, final boolean isPrivate) {
+            this.husb = husb;
+            this.wife = wife;
+            this.isPrivate = isPrivate;
+        }
+
+        /**
+         * @param frel relationship of the child to the husband (empty for birth)
+         * @param mrel relationship of the child to the wife (empty for birth)
+         */
+        void addChild(final Person child, final String frel, final String mrel) {
+            if (Objects.nonNull(this.husb)) {
+                // set husband's child relationship
+                this.husbandsChildren.add(ParentChildRelation.create(child, this.isPrivate, frel));
+            }
+            if (Objects.nonNull(this.wife)) {
+                // set wife's child relationship
+                this.wifesChildren.add(ParentChildRelation.create(child, this.isPrivate, mrel));
+            }
+            // (the child's own parent relationships are set when the family is linked)
+            this.children.add(child);
+            this.frels.add(frel);
+            this.mrels.add(mrel);
+        }
+
+        /**
+         * Adds the partnerships and parent-child relations of this family to its people.
+         */
+        Partnerships link() {
+            for (int i = 0; i < this.children.size(); ++i) {
+                final Person child = this.children.get(i);
+                if (Objects.nonNull(this.husb)) {
+                    // set child's father relationship
+                    final ParentChildRelation father = ParentChildRelation.create(this.husb, this.isPrivate, this.frels.get(i));
+                    child.addFather(father);
+                    this.fathers.add(father);
+                }
+                if (Objects.nonNull(this.wife)) {
+                    // set child's mother relationship
+                    final ParentChildRelation mother = ParentChildRelation.create(this.wife, this.isPrivate, this.mrels.get(i));
+                    child.addMother(mother);
+                    this.mothers.add(mother);
+                }
+            }
+
+            final Partnerships partnerships = new Partnerships();
+            if (Objects.nonNull(this.husb)) {
+                final Partnership part = new Partnership(this.rEvent, this.isPrivate);
+                part.addChildRelations(this.husbandsChildren);
+                if (Objects.nonNull(this.wife)) {
+                    part.setPartner(this.wife);
+                }
+                this.husb.getPartnerships().add(part);
+                partnerships.husb = Optional.of(part);
+            }
+            if (Objects.nonNull(this.wife)) {
+                final Partnership part = new Partnership(this.rEvent, this.isPrivate);
+                part.addChildRelations(this.wifesChildren);
+                if (Objects.nonNull(this.husb)) {
+                    part.setPartner(this.husb);
+                }
+                this.wife.getPartnerships().add(part);
+                partnerships.wife = Optional.of(part);
+            }
+            this.partnerships = partnerships;
+            return partnerships;
+        }
+
+        /**
+         * Removes everything <code>link</code> added to the people of this family.
+         */
+        void unlink() {
+            for (final Person child : this.children) {
+                if (Objects.isNull(child)) {
+                    continue;
+                }
+                child.getFathers().removeIf(r -> this.fathers.stream().anyMatch(f -> f == r));
+                child.getMothers().removeIf(r -> this.mothers.stream().anyMatch(m -> m == r));
+            }
+            this.fathers.clear();
+            this.mothers.clear();
+            if (Objects.nonNull(this.partnerships)) {
+                this.partnerships.husb.ifPresent(part -> this.husb.getPartnerships().removeIf(p -> p == part));
+                this.partnerships.wife.ifPresent(part -> this.wife.getPartnerships().removeIf(p -> p == part));
+                this.partnerships = null;
+            }
+        }
+
+        /**
+         * @return the spouses and children of this family
+         */
+        List<Person> getPeople() {
+            final List<Person> people = new ArrayList<>(this.children.size() + 2);
+            if (Objects.nonNull(this.husb)) {
+                people.add(this.husb);
+            }
+            if (Objects.nonNull(this.wife)) {
+                people.add(this.wife);
+            }
+            this.children.stream().filter(Objects::nonNull).forEach(people::add);
+            return people;
+        }
+    }
+
+    Family parseFamily(final TreeNode<GedcomLine> nodeFam, final Map<String, Person> mapIDtoPerson, final Map<String, Source> mapIDtoSource, final BiConsumer<TreeNode<GedcomLine>, Event> addEvent) {
         Person husb = null;
         Person wife = null;
         boolean isPrivate = false;
@@ -361,16 +1129,13 @@ public class Loader {
             }
             if (!isPrivate) {
                 if (tag.equals(GedcomTag.MARR)) {
-                    final Event event = parseEvent(node, mapIDtoSource, false);
-                    isPrivate = isRecentEnoughToPrivatize(event, null);
+                    isPrivate = isRecentEnoughToPrivatize(parseEventDate(node), null);
                 }
             }
         }
 
         // step 2: find children, and build parent-relationship info for each one
-        final ArrayList<ParentChildRelation> husbandsChildren = new ArrayList<>();
-        final ArrayList<ParentChildRelation> wifesChildren = new ArrayList<>();
-        final ArrayList<Event> rEvent = new ArrayList<>();
+        final Family family = new Family(husb, wife, isPrivate);
         for (final TreeNode<GedcomLine> node : rNode) {
             final GedcomLine line = node.getObject();
             final GedcomTag tag = line.getTag();
@@ -391,46 +1156,15 @@ public class Loader {
                     }
                 }
 
-                if (Objects.nonNull(husb)) {
-                    // set husband's child relationship
-                    husbandsChildren.add(ParentChildRelation.create(child, isPrivate, frel));
-                    // set child's father relationship
-                    child.addFather(ParentChildRelation.create(husb, isPrivate, frel));
-                }
-                if (Objects.nonNull(wife)) {
-                    // set wife's child relationship
-                    wifesChildren.add(ParentChildRelation.create(child, isPrivate, mrel));
-                    // set child's mother relationship
-                    child.addMother(ParentChildRelation.create(wife, isPrivate, mrel));
-                }
+                family.addChild(child, frel, mrel);
             } else if (GedcomTag.setFamilyEvent.contains(tag)) {
                 // note: private on FAM forces private on all its events, too
                 final Event event = parseEvent(node, mapIDtoSource, isPrivate);
-                this.mapNodeToEvent.put(node, event);
-                rEvent.add(event);
-            }
-        }
-
-        final Partnerships partnerships = new Partnerships();
-        if (Objects.nonNull(husb)) {
-            final Partnership part = new Partnership(rEvent, isPrivate);
-            part.addChildRelations(husbandsChildren);
-            if (Objects.nonNull(wife)) {
-                part.setPartner(wife);
-            }
-            husb.getPartnerships().add(part);
-            partnerships.husb = Optional.of(part);
-        }
-        if (Objects.nonNull(wife)) {
-            final Partnership part = new Partnership(rEvent, isPrivate);
-            part.addChildRelations(wifesChildren);
-            if (Objects.nonNull(husb)) {
-                part.setPartner(husb);
+                addEvent.accept(node, event);
+                family.rEvent.add(event);
             }
-            wife.getPartnerships().add(part);
-            partnerships.wife = Optional.of(part);
         }
-        this.mapNodeToPartnerships.put(nodeFam, partnerships);
+        return family;
     }
 
     private static Person lookUpPerson(final String id, final Map<String, Person> mapIDtoPerson) {
@@ -443,6 +1177,22 @@ public class Loader {
             new Source("", "", "", "", "");
     }
 
+    private static String getRecordId(final TreeNode<GedcomLine> node) {
+        final GedcomLine line = getRecord(node).getObject();
+        return line.hasID() ? line.getID() : "";
+    }
+
+    /**
+     * @return the top-level record containing the given node
+     */
+    static TreeNode<GedcomLine> getRecord(final TreeNode<GedcomLine> node) {
+        TreeNode<GedcomLine> record = node;
+        while (record.parent() != null && record.parent().getObject() != null) {
+            record = record.parent();
+        }
+        return record;
+    }
+
     private static String parseName(final TreeNode<GedcomLine> nodeName) {
         return nodeName.getObject().getValue();
     }
@@ -462,16 +1212,7 @@ public class Loader {
             final GedcomLine line = node.getObject();
             final GedcomTag tag = line.getTag();
             if (tag.equals(GedcomTag.DATE)) {
-                final String sDate = line.getValue().trim();
-                final GedcomDateValueParser parser = new GedcomDateValueParser(new StringReader(sDate));
-                try {
-                    date = parser.parse();
-                } catch (final Exception  e) {
-                    if (!sDate.isEmpty()) {
-                        Jul.log().log(Level.WARNING, "Invalid DATE format: \""+ sDate + "\"");
-                    }
-                    date = null;
-                }
+                date = dates.get(line.getValue().trim(), this.dateDiagnostics, () -> getRecordId(node));
             } else if (tag.equals(GedcomTag.PLAC)) {
                 place = line.getValue();
             } else if (tag.equals(GedcomTag.NOTE)) {
@@ -656,30 +1397,37 @@ public class Loader {
         return nodeNote.getObject().getValue();
     }
 
-    private static boolean isRecentEnoughToPrivatize(final Event event, final Event death) {
-        if (Objects.isNull(event)) {
-            return false;
+    /**
+     * Gets just the date of the given event, for checking privacy. Any
+     * problem with it is not recorded here, but when the whole event is
+     * parsed.
+     */
+    private static DatePeriod parseEventDate(final TreeNode<GedcomLine> nodeEvent) {
+        DatePeriod date = null;
+        for (final TreeNode<GedcomLine> node : nodeEvent) {
+            final GedcomLine line = node.getObject();
+            if (line.getTag().equals(GedcomTag.DATE)) {
+                date = dates.get(line.getValue().trim());
+            }
         }
-        final DatePeriod dpEvent = event.getDate();
+        return date;
+    }
+
+    private boolean isRecentEnoughToPrivatize(final DatePeriod dpEvent, final DatePeriod dpDeath) {
         if (Objects.isNull(dpEvent) || dpEvent.equals(DatePeriod.UNKNOWN)) {
             return false;
         }
 
-        if (Objects.nonNull(death)) {
-            final DatePeriod dpDeath = death.getDate();
-            if (Objects.nonNull(dpDeath) && !dpDeath.equals(DatePeriod.UNKNOWN)) {
-                return false;
-            }
+        if (Objects.nonNull(dpDeath) && !dpDeath.equals(DatePeriod.UNKNOWN)) {
+            return false;
         }
 
-        return dateOfLatestPublicInformation().compareTo(dpEvent.getEndDate().getApproxDay()) < 0;
+        return this.latestPublicInformation.compareTo(dpEvent.getEndDate().getApproxDay()) < 0;
     }
 
     private static Time dateOfLatestPublicInformation() {
-        final Calendar cal = Calendar.getInstance();
         // GEDCOM 5.5.1 mentions that Ancestral File uses 110 years:
-        cal.add(Calendar.YEAR, -110);
-        return new Time(cal.getTime());
+        return YMD.plusYears(Time.ofEpochMilli(System.currentTimeMillis()), -110);
     }
 
     private static String getEventName(final TreeNode<GedcomLine> node) {
@@ -0,0 +1,482 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.GedcomLine;
+import nu.mine.mosher.gedcom.GedcomTree;
+import nu.mine.mosher.gedcom.date.DatePeriod;
+import nu.mine.mosher.gedcom.date.DateRange;
+import nu.mine.mosher.gedcom.date.YMD;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary cache of the model built by a <code>Loader</code>. The file holds
+ * a header (format version, hash of the tree, and the day that privacy was
+ * determined on), then all sources, people (with their events), and
+ * families, each in document order. Records and events are identified by
+ * their positions in the tree; sources, people, and dates are referred to
+ * by their positions in the cache. It is read with a single sequential
+ * pass, and no dates are parsed.
+ *
+ * @author Chris Mosher
+ */
+final class ModelCache {
+    private static final int MAGIC = 'G' << 24 | 'E' << 16 | 'D' << 8 | 'M';
+    // (increment whenever the format, or the way the model is built, changes)
+    private static final int VERSION = 1;
+
+    private static final int NONE = -1;
+    private static final int SOURCE_LDS_FAMILY_TREE = -2;
+
+    private static final int YMD_MINIMUM = 1;
+    private static final int YMD_MAXIMUM = 2;
+    private static final int YMD_CIRCA = 4;
+    private static final int YMD_JULIAN = 8;
+
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    private final Loader loader;
+    private final GedcomTree gedcom;
+    private final List<TreeNode<GedcomLine>> rNodeTop = new ArrayList<>();
+
+    // positions (when writing) or values (when reading) of sources, people, and dates
+    private final Map<Source, Integer> mapSourceToIndex = new IdentityHashMap<>();
+    private final List<Source> sources = new ArrayList<>();
+    private final Map<Person, Integer> mapPersonToIndex = new IdentityHashMap<>();
+    private final List<Person> people = new ArrayList<>();
+    private final Map<DatePeriod, Integer> mapDateToIndex = new IdentityHashMap<>();
+    private final List<DatePeriod> dates = new ArrayList<>();
+
+    ModelCache(final Loader loader) {
+        this.loader = loader;
+        this.gedcom = loader.getGedcom();
+        for (final TreeNode<GedcomLine> node : this.gedcom.getRoot()) {
+            this.rNodeTop.add(node);
+        }
+    }
+
+    /**
+     * @return SHA-256 of the tree (as written to a GEDCOM file), as a hex string
+     */
+    static String hash(final GedcomTree gedcom) {
+        return toHex(digest(gedcom));
+    }
+
+    private static byte[] digest(final GedcomTree gedcom) {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final OutputStream discard = new OutputStream() {
+            @Override
+            public void write(final int b) {
+                // only the digest is needed
+            }
+        };
+        try (final Writer out = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(discard, md), StandardCharsets.UTF_8))) {
+            gedcom.appendTo(out);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return md.digest();
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (final byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private long day() {
+        return Math.floorDiv(this.loader.getLatestPublicInformation().getEpochMilli(), MILLIS_PER_DAY);
+    }
+
+
+
+    void write(final OutputStream stream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        final byte[] hash = digest(this.gedcom);
+        out.writeInt(hash.length);
+        out.write(hash);
+        out.writeLong(day());
+
+        final List<Integer> rSource = new ArrayList<>();
+        final List<Integer> rPerson = new ArrayList<>();
+        final List<Integer> rFamily = new ArrayList<>();
+        for (int i = 0; i < this.rNodeTop.size(); ++i) {
+            final TreeNode<GedcomLine> node = this.rNodeTop.get(i);
+            final Source source = this.loader.lookUpSource(node);
+            if (source != null) {
+                this.mapSourceToIndex.put(source, this.mapSourceToIndex.size());
+                rSource.add(i);
+            }
+            final Person person = this.loader.lookUpPerson(node);
+            if (person != null) {
+                this.mapPersonToIndex.put(person, this.mapPersonToIndex.size());
+                rPerson.add(i);
+            }
+            if (this.loader.getFamily(node) != null) {
+                rFamily.add(i);
+            }
+        }
+
+        out.writeInt(rSource.size());
+        for (final int i : rSource) {
+            final Source source = this.loader.lookUpSource(this.rNodeTop.get(i));
+            out.writeInt(i);
+            writeString(out, source.getID());
+            writeString(out, source.getAuthor());
+            writeString(out, source.getTitle());
+            writeString(out, source.getPublication());
+            writeString(out, source.getText());
+        }
+
+        out.writeInt(rPerson.size());
+        for (final int i : rPerson) {
+            final Person person = this.loader.lookUpPerson(this.rNodeTop.get(i));
+            out.writeInt(i);
+            writeString(out, person.getID());
+            writeString(out, person.getNameGedcom());
+            out.writeBoolean(person.isPrivate());
+            out.writeBoolean(person.isGeneratedUuid());
+            out.writeLong(person.getUuid().getMostSignificantBits());
+            out.writeLong(person.getUuid().getLeastSignificantBits());
+            writeEvents(out, this.rNodeTop.get(i));
+        }
+
+        out.writeInt(rFamily.size());
+        for (final int i : rFamily) {
+            final Loader.Family family = this.loader.getFamily(this.rNodeTop.get(i));
+            out.writeInt(i);
+            writePerson(out, family.husb);
+            writePerson(out, family.wife);
+            out.writeBoolean(family.isPrivate);
+            out.writeInt(family.children.size());
+            for (int c = 0; c < family.children.size(); ++c) {
+                writePerson(out, family.children.get(c));
+                writeString(out, family.frels.get(c));
+                writeString(out, family.mrels.get(c));
+            }
+            writeEvents(out, this.rNodeTop.get(i));
+        }
+
+        out.writeInt(MAGIC);
+        out.flush();
+    }
+
+    private void writePerson(final DataOutput out, final Person person) throws IOException {
+        out.writeInt(person == null ? NONE : this.mapPersonToIndex.get(person));
+    }
+
+    /**
+     * Writes the events of the given record, each with the position of its node within the record.
+     */
+    private void writeEvents(final DataOutput out, final TreeNode<GedcomLine> record) throws IOException {
+        final List<Integer> rPosition = new ArrayList<>();
+        final List<Event> rEvent = new ArrayList<>();
+        int i = 0;
+        for (final TreeNode<GedcomLine> node : record) {
+            final Event event = this.loader.lookUpEvent(node);
+            if (event != null) {
+                rPosition.add(i);
+                rEvent.add(event);
+            }
+            ++i;
+        }
+
+        out.writeInt(rEvent.size());
+        for (int e = 0; e < rEvent.size(); ++e) {
+            out.writeInt(rPosition.get(e));
+            writeEvent(out, rEvent.get(e));
+        }
+    }
+
+    private void writeEvent(final DataOutput out, final Event event) throws IOException {
+        writeString(out, event.getType());
+        writeDate(out, event.getDate());
+        writeString(out, event.getPlace());
+        writeString(out, event.getNote());
+        out.writeBoolean(event.isPrivate());
+        out.writeInt(event.getCitations().size());
+        for (final Citation citation : event.getCitations()) {
+            writeCitation(out, citation);
+        }
+    }
+
+    private void writeCitation(final DataOutput out, final Citation citation) throws IOException {
+        final Source source = citation.getSource();
+        if (source == Loader.sourceLdsFamilyTree) {
+            out.writeInt(SOURCE_LDS_FAMILY_TREE);
+        } else {
+            final Integer i = this.mapSourceToIndex.get(source);
+            out.writeInt(i == null ? NONE : i);
+        }
+        writeString(out, citation.getPage());
+        writeString(out, citation.getExtraText());
+        out.writeInt(citation.getAttachments().size());
+        for (final MultimediaReference attachment : citation.getAttachments()) {
+            writeString(out, attachment.get());
+        }
+        out.writeInt(citation.getLinks().size());
+        for (final URI link : citation.getLinks()) {
+            writeString(out, link.toString());
+        }
+        final Optional<AncestryPersona> apid = citation.getApid();
+        out.writeBoolean(apid.isPresent());
+        if (apid.isPresent()) {
+            out.writeInt(apid.get().getDb());
+            out.writeLong(apid.get().getIndi());
+        }
+    }
+
+    /**
+     * Writes each distinct date only the first time; after that, just its position.
+     */
+    private void writeDate(final DataOutput out, final DatePeriod date) throws IOException {
+        if (date == null) {
+            out.writeInt(NONE);
+            return;
+        }
+        final Integer i = this.mapDateToIndex.get(date);
+        if (i != null) {
+            out.writeInt(i);
+            return;
+        }
+        final int n = this.mapDateToIndex.size();
+        this.mapDateToIndex.put(date, n);
+        out.writeInt(n);
+        writeRange(out, date.getStartDate());
+        writeRange(out, date.getEndDate());
+    }
+
+    private static void writeRange(final DataOutput out, final DateRange range) throws IOException {
+        out.writeBoolean(range.isExact());
+        writeYmd(out, range.getEarliest());
+        if (!range.isExact()) {
+            writeYmd(out, range.getLatest());
+        }
+    }
+
+    private static void writeYmd(final DataOutput out, final YMD ymd) throws IOException {
+        int flags = 0;
+        if (ymd == YMD.getMinimum()) {
+            flags |= YMD_MINIMUM;
+        } else if (ymd == YMD.getMaximum()) {
+            flags |= YMD_MAXIMUM;
+        }
+        if (ymd.isCirca()) {
+            flags |= YMD_CIRCA;
+        }
+        if (ymd.isJulian()) {
+            flags |= YMD_JULIAN;
+        }
+        out.writeByte(flags);
+        if ((flags & (YMD_MINIMUM | YMD_MAXIMUM)) == 0) {
+            out.writeShort(ymd.getYear());
+            out.writeByte(ymd.getMonth());
+            out.writeByte(ymd.getDay());
+        }
+    }
+
+    private static void writeString(final DataOutput out, final String s) throws IOException {
+        if (s == null) {
+            out.writeInt(NONE);
+            return;
+        }
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+
+    boolean read(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return false;
+        }
+        final byte[] hash = new byte[in.readInt()];
+        in.readFully(hash);
+        if (!Arrays.equals(hash, digest(this.gedcom)) || in.readLong() != day()) {
+            return false;
+        }
+
+        try {
+            final int cSource = in.readInt();
+            for (int s = 0; s < cSource; ++s) {
+                final TreeNode<GedcomLine> node = this.rNodeTop.get(in.readInt());
+                final Source source = new Source(readString(in), readString(in), readString(in), readString(in), readString(in));
+                this.sources.add(source);
+                this.loader.addSource(node, source);
+            }
+
+            final int cPerson = in.readInt();
+            for (int p = 0; p < cPerson; ++p) {
+                final TreeNode<GedcomLine> node = this.rNodeTop.get(in.readInt());
+                final String id = readString(in);
+                final String name = readString(in);
+                final boolean isPrivate = in.readBoolean();
+                final boolean generatedUuid = in.readBoolean();
+                final UUID uuid = new UUID(in.readLong(), in.readLong());
+                final ArrayList<Event> rEvent = readEvents(in, node);
+                final Person person = generatedUuid ?
+                    new Person(id, name, rEvent, new ArrayList<>(), isPrivate, null, uuid) :
+                    new Person(id, name, rEvent, new ArrayList<>(), isPrivate, uuid);
+                this.people.add(person);
+                this.loader.addPerson(node, person);
+            }
+
+            final int cFamily = in.readInt();
+            for (int f = 0; f < cFamily; ++f) {
+                final TreeNode<GedcomLine> node = this.rNodeTop.get(in.readInt());
+                final Person husb = readPerson(in);
+                final Person wife = readPerson(in);
+                final Loader.Family family = new Loader.Family(husb, wife, in.readBoolean());
+                final int cChild = in.readInt();
+                for (int c = 0; c < cChild; ++c) {
+                    family.addChild(readPerson(in), readString(in), readString(in));
+                }
+                family.rEvent.addAll(readEvents(in, node));
+                this.loader.addFamily(node, family);
+            }
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Invalid end of model cache.");
+            }
+        } catch (final RuntimeException e) {
+            throw new IOException("Invalid model cache.", e);
+        }
+
+        this.loader.finish(false);
+        return true;
+    }
+
+    private Person readPerson(final DataInput in) throws IOException {
+        final int i = in.readInt();
+        return i == NONE ? null : this.people.get(i);
+    }
+
+    private ArrayList<Event> readEvents(final DataInput in, final TreeNode<GedcomLine> record) throws IOException {
+        final List<TreeNode<GedcomLine>> rNode = new ArrayList<>();
+        for (final TreeNode<GedcomLine> node : record) {
+            rNode.add(node);
+        }
+
+        final int cEvent = in.readInt();
+        final ArrayList<Event> rEvent = new ArrayList<>(cEvent);
+        for (int e = 0; e < cEvent; ++e) {
+            final TreeNode<GedcomLine> node = rNode.get(in.readInt());
+            final Event event = readEvent(in);
+            this.loader.addEvent(node, event);
+            rEvent.add(event);
+        }
+        return rEvent;
+    }
+
+    private Event readEvent(final DataInput in) throws IOException {
+        final String type = readString(in);
+        final DatePeriod date = readDate(in);
+        final String place = readString(in);
+        final String note = readString(in);
+        final boolean isPrivate = in.readBoolean();
+        final int cCitation = in.readInt();
+        final ArrayList<Citation> citations = new ArrayList<>(cCitation);
+        for (int c = 0; c < cCitation; ++c) {
+            citations.add(readCitation(in));
+        }
+        return new Event(type, date, place, note, citations, isPrivate);
+    }
+
+    private Citation readCitation(final DataInput in) throws IOException {
+        final int i = in.readInt();
+        final Source source;
+        if (i == SOURCE_LDS_FAMILY_TREE) {
+            source = Loader.sourceLdsFamilyTree;
+        } else if (i == NONE) {
+            source = new Source("", "", "", "", "");
+        } else {
+            source = this.sources.get(i);
+        }
+        final String page = readString(in);
+        final String extraText = readString(in);
+        final int cAttachment = in.readInt();
+        final Set<MultimediaReference> attachments = new HashSet<>();
+        for (int a = 0; a < cAttachment; ++a) {
+            attachments.add(new MultimediaReference(readString(in)));
+        }
+        final int cLink = in.readInt();
+        final Set<URI> links = new HashSet<>();
+        for (int l = 0; l < cLink; ++l) {
+            try {
+                links.add(new URI(readString(in)));
+            } catch (final URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        final AncestryPersona apid = in.readBoolean() ? new AncestryPersona(in.readInt(), in.readLong()) : null;
+        return new Citation(source, page, extraText, attachments, links, apid);
+    }
+
+    private DatePeriod readDate(final DataInput in) throws IOException {
+        final int i = in.readInt();
+        if (i == NONE) {
+            return null;
+        }
+        if (i < this.dates.size()) {
+            return this.dates.get(i);
+        }
+        final DatePeriod date = new DatePeriod(readRange(in), readRange(in));
+        this.dates.add(date);
+        return date;
+    }
+
+    private static DateRange readRange(final DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return new DateRange(readYmd(in));
+        }
+        try {
+            return new DateRange(readYmd(in), readYmd(in));
+        } catch (final DateRange.DatesOutOfOrder e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static YMD readYmd(final DataInput in) throws IOException {
+        final int flags = in.readByte();
+        if ((flags & YMD_MINIMUM) != 0) {
+            return YMD.getMinimum();
+        }
+        if ((flags & YMD_MAXIMUM) != 0) {
+            return YMD.getMaximum();
+        }
+        final int year = in.readShort();
+        final int month = in.readByte();
+        final int day = in.readByte();
+        return new YMD(year, month, day, (flags & YMD_CIRCA) != 0, (flags & YMD_JULIAN) != 0);
+    }
+
+    private static String readString(final DataInput in) throws IOException {
+        final int n = in.readInt();
+        if (n == NONE) {
+            return null;
+        }
+        final byte[] bytes = new byte[n];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
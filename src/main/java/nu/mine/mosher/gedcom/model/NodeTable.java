@@ -0,0 +1,83 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.GedcomLine;
+import nu.mine.mosher.gedcom.GedcomTree;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * The model object (<code>Person</code>, <code>Event</code>, etc.) built
+ * from each node of a tree, kept in an array indexed by the ordinal of
+ * the node (see <code>GedcomTree.assignOrdinals</code>). Looking up a node
+ * costs just an array index, and there are no entry objects. Each node
+ * has at most one model object. Nodes that have no ordinal from the tree
+ * (such as nodes of some other tree) have no model object here.
+ * <p>
+ * Different nodes can be put concurrently, but only within the capacity
+ * already ensured; growing the array is not thread-safe.
+ *
+ * @author Chris Mosher
+ */
+final class NodeTable {
+    private final GedcomTree tree;
+    private Object[] objects = new Object[0];
+
+    NodeTable(final GedcomTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Makes room for nodes with ordinals less than the given count.
+     *
+     * @param cOrdinal from <code>GedcomTree.getOrdinalCount</code>
+     */
+    void ensureCapacity(final int cOrdinal) {
+        if (this.objects.length < cOrdinal) {
+            this.objects = Arrays.copyOf(this.objects, cOrdinal);
+        }
+    }
+
+    /**
+     * @return model object of the given type built from the given node, or <code>null</code> if none
+     */
+    <T> T get(final TreeNode<GedcomLine> node, final Class<T> type) {
+        final int i = this.tree.getOrdinal(node);
+        if (i < 0 || this.objects.length <= i) {
+            return null;
+        }
+        final Object object = this.objects[i];
+        return type.isInstance(object) ? type.cast(object) : null;
+    }
+
+    void put(final TreeNode<GedcomLine> node, final Object object) {
+        final int i = this.tree.getOrdinal(node);
+        if (i < 0) {
+            throw new IllegalArgumentException("node has no ordinal: " + node);
+        }
+        ensureCapacity(i + 1);
+        this.objects[i] = object;
+    }
+
+    /**
+     * Removes the model object of the given node, but only if it is of the given type.
+     *
+     * @return the object removed, or <code>null</code> if none
+     */
+    <T> T remove(final TreeNode<GedcomLine> node, final Class<T> type) {
+        final T object = get(node, type);
+        if (object != null) {
+            this.objects[this.tree.getOrdinal(node)] = null;
+        }
+        return object;
+    }
+
+    void removeIf(final Predicate<Object> filter) {
+        for (int i = 0; i < this.objects.length; ++i) {
+            if (this.objects[i] != null && filter.test(this.objects[i])) {
+                this.objects[i] = null;
+            }
+        }
+    }
+}
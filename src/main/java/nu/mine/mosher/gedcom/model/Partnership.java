@@ -22,7 +22,7 @@ public class Partnership implements Comparable<Partnership>, Privatizable {
         this.rEvent = new ArrayList<>(rEvent);
         this.isPrivate = isPrivate;
 
-        Collections.sort(this.rEvent);
+        Events.sortByDate(this.rEvent);
     }
 
     public void setPartner(final Person partner) {
@@ -5,10 +5,11 @@ package nu.mine.mosher.gedcom.model;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
+import nu.mine.mosher.gedcom.date.DateKeys;
 import nu.mine.mosher.gedcom.date.DatePeriod;
 import nu.mine.mosher.gedcom.date.DateRange;
+import nu.mine.mosher.gedcom.date.IntervalIndex;
 import nu.mine.mosher.gedcom.date.YMD;
 import nu.mine.mosher.time.Time;
 
@@ -31,11 +32,16 @@ public class Person implements Comparable<Person>, Privatizable
     private final ArrayList<Partnership> rPartnership;
     private final boolean isPrivate;
 
-    private Time birth = new Time(new Date(0));
-    private Time death = new Time(new Date(0));
+    private Time birth = Time.ZERO;
+    private Time death = Time.ZERO;
     private List<Time> rMarriage = new ArrayList<>();
     private List<Time> rDivorce = new ArrayList<>();
 
+    private IntervalIndex<Event> eventIndex;
+
+    // (see getFamilyTimeline)
+    private volatile List<FamilyEvent> familyEvents;
+
     private ArrayList<ParentChildRelation> fathers = new ArrayList<>();
     private ArrayList<ParentChildRelation> mothers = new ArrayList<>();
 
@@ -49,11 +55,20 @@ public class Person implements Comparable<Person>, Privatizable
      */
     public Person(final String ID, final String name, final ArrayList<Event> rEvent, final ArrayList<Partnership> partnership,
         final boolean isPrivate, final UUID uuid)
+    {
+        this(ID, name, rEvent, partnership, isPrivate, uuid, null);
+    }
+
+    /**
+     * @param uuidIfMissing UUID to generate if <code>uuid</code> is <code>null</code> (or <code>null</code> for a random one)
+     */
+    Person(final String ID, final String name, final ArrayList<Event> rEvent, final ArrayList<Partnership> partnership,
+        final boolean isPrivate, final UUID uuid, final UUID uuidIfMissing)
     {
         this.generatedUuid = Objects.isNull(uuid);
         if (this.generatedUuid)
         {
-            this.uuid = UUID.randomUUID();
+            this.uuid = Objects.isNull(uuidIfMissing) ? UUID.randomUUID() : uuidIfMissing;
         }
         else
         {
@@ -67,7 +82,7 @@ public class Person implements Comparable<Person>, Privatizable
         this.rPartnership = partnership;
         this.isPrivate = isPrivate;
 
-        Collections.sort(this.rEvent);
+        Events.sortByDate(this.rEvent);
         Collections.sort(this.rPartnership);
     }
 
@@ -137,6 +152,13 @@ public class Person implements Comparable<Person>, Privatizable
 
     public void initKeyDates()
     {
+        // (start over, in case they are being recomputed)
+        invalidateFamilyEvents();
+        this.birth = Time.ZERO;
+        this.death = Time.ZERO;
+        this.rMarriage.clear();
+        this.rDivorce.clear();
+
         for (final Event event : this.rEvent)
         {
             if (event.getDate() == null)
@@ -152,11 +174,11 @@ public class Person implements Comparable<Person>, Privatizable
                 this.death = event.getDate().getStartDate().getApproxDay();
             }
         }
-        if (this.birth.asDate().getTime() == 0)
+        if (this.birth.equals(Time.ZERO))
         {
             this.birth = YMD.getMinimum().getApproxTime();
         }
-        if (this.death.asDate().getTime() == 0)
+        if (this.death.equals(Time.ZERO))
         {
             this.death = YMD.getMaximum().getApproxTime();
         }
@@ -188,11 +210,7 @@ public class Person implements Comparable<Person>, Privatizable
                     if (par.getChildRelations().size() > 0)
                     {
                         final Time birthChild = par.getChildRelations().get(0).getOther().getBirth();
-                        final GregorianCalendar cal = new GregorianCalendar();
-                        cal.setGregorianChange(new Date(Long.MIN_VALUE));
-                        cal.setTime(birthChild.asDate());
-                        cal.add(Calendar.YEAR, -1);
-                        this.rMarriage.add(new Time(cal.getTime()));
+                        this.rMarriage.add(YMD.plusYears(birthChild, -1));
                         mar = true;
                     }
                 }
@@ -211,11 +229,7 @@ public class Person implements Comparable<Person>, Privatizable
         }
         else
         {
-            final GregorianCalendar cal = new GregorianCalendar();
-            cal.setGregorianChange(new Date(Long.MIN_VALUE));
-            cal.setTime(this.birth.asDate());
-            cal.add(Calendar.YEAR, 18);
-            this.rMarriage.add(new Time(cal.getTime()));
+            this.rMarriage.add(YMD.plusYears(this.birth, 18));
 
             this.rDivorce.add(YMD.getMaximum().getApproxTime());
         }
@@ -237,6 +251,13 @@ public class Person implements Comparable<Person>, Privatizable
         return this.name.replaceAll("/", "");
     }
 
+    /**
+     * @return the name, as given in the GEDCOM file
+     */
+    String getNameGedcom() {
+        return this.name;
+    }
+
     public String getNameSortable() {
         return this.nameSortable;
     }
@@ -420,8 +441,22 @@ public class Person implements Comparable<Person>, Privatizable
         return r;
     }
 
+    /**
+     * Builds an index of this person's events by date, which
+     * {@link Person#getEventsWithin(DatePeriod)} will use from then on.
+     */
+    void indexEvents()
+    {
+        this.eventIndex = new IntervalIndex<>(this.rEvent, Event::getDate);
+    }
+
     public ArrayList<Event> getEventsWithin(final DatePeriod period)
     {
+        if (this.eventIndex != null)
+        {
+            return new ArrayList<>(this.eventIndex.getOverlapping(period));
+        }
+
         final ArrayList<Event> rWithin = new ArrayList<>();
         for (final Event event : this.rEvent)
         {
@@ -485,9 +520,48 @@ public class Person implements Comparable<Person>, Privatizable
         return this.rEvent.get(0).compareTo(that.rEvent.get(0));
     }
 
+    /**
+     * Gets this person's family timeline: the events of this person, their
+     * partnerships, their parents (during this person's childhood), their
+     * spouses (during each partnership), and their children (during each
+     * child's childhood), sorted by date.
+     * @return a new list of the timeline
+     */
     public ArrayList<FamilyEvent> getFamilyEvents()
     {
-        final ArrayList<FamilyEvent> rEventRet = new ArrayList<>();
+        return new ArrayList<>(getFamilyTimeline());
+    }
+
+    /**
+     * Same as {@link Person#getFamilyEvents()}, but without copying. The
+     * timeline is computed the first time it is needed, and kept until
+     * {@link Person#invalidateFamilyEvents()} is called.
+     * @return unmodifiable timeline
+     */
+    public List<FamilyEvent> getFamilyTimeline()
+    {
+        List<FamilyEvent> timeline = this.familyEvents;
+        if (timeline == null)
+        {
+            timeline = Collections.unmodifiableList(buildFamilyEvents());
+            this.familyEvents = timeline;
+        }
+        return timeline;
+    }
+
+    /**
+     * Discards the family timeline, so it will be computed again. Must be
+     * called whenever the events, key dates, or relations of this person or
+     * their immediate family change.
+     */
+    public void invalidateFamilyEvents()
+    {
+        this.familyEvents = null;
+    }
+
+    private ArrayList<FamilyEvent> buildFamilyEvents()
+    {
+        final ArrayList<FamilyEvent> rEventRet = new ArrayList<>(2 * this.rEvent.size());
 
         getEventsOfSelf(rEventRet);
         getEventsOfPartnership(rEventRet);
@@ -496,39 +570,51 @@ public class Person implements Comparable<Person>, Privatizable
         getEventsOfSpouses(rEventRet);
         getEventsOfChildren(rEventRet);
 
-        Collections.sort(rEventRet);
+        Events.sortByDate(rEventRet, e -> e.getEvent().getDate());
 
         return rEventRet;
     }
 
     private void getEventsOfSelf(final List<FamilyEvent> rEventRet)
     {
-        rEventRet.addAll(this.getEvents().stream().map(event -> new FamilyEvent(this, event, "self")).collect(Collectors.toList()));
+        for (final Event event : this.rEvent)
+        {
+            rEventRet.add(new FamilyEvent(this, event, "self"));
+        }
     }
 
     private void getEventsOfPartnership(final List<FamilyEvent> rEventRet)
     {
         for (final Partnership part : this.rPartnership)
         {
-            rEventRet.addAll(part.getEvents().stream().map(event -> new FamilyEvent(part.getPartner(), event, "spouse")).collect(Collectors.toList()));
+            for (final Event event : part.getEvents())
+            {
+                rEventRet.add(new FamilyEvent(part.getPartner(), event, "spouse"));
+            }
         }
     }
 
     private void getEventsOfFather(final List<FamilyEvent> rEventRet)
     {
-        this.fathers.forEach(p -> getEventsOfParent(p.getOther(), "father", rEventRet));
+        for (final ParentChildRelation father : this.fathers)
+        {
+            getEventsOfParent(father.getOther(), "father", rEventRet);
+        }
     }
 
     private void getEventsOfMother(final List<FamilyEvent> rEventRet)
     {
-        this.mothers.forEach(p -> getEventsOfParent(p.getOther(), "mother", rEventRet));
+        for (final ParentChildRelation mother : this.mothers)
+        {
+            getEventsOfParent(mother.getOther(), "mother", rEventRet);
+        }
     }
 
     private void getEventsOfParent(final Person parent, final String relation, final List<FamilyEvent> rEventRet)
     {
         if (parent != null)
         {
-            rEventRet.addAll(parent.getEventsWithin(getChildhood()).stream().map(event -> new FamilyEvent(parent, event, relation)).collect(Collectors.toList()));
+            parent.getEventsWithin(this.birth, this.rMarriage.get(0), relation, rEventRet);
         }
     }
 
@@ -540,7 +626,7 @@ public class Person implements Comparable<Person>, Privatizable
             final Person partner = partnership.getPartner();
             if (partner != null)
             {
-                rEventRet.addAll(partner.getEventsWithin(getPartnerhood(p)).stream().map(event -> new FamilyEvent(partnership.getPartner(), event, "spouse")).collect(Collectors.toList()));
+                partner.getEventsWithin(this.rMarriage.get(p), this.rDivorce.get(p), "spouse", rEventRet);
             }
             ++p;
         }
@@ -553,22 +639,29 @@ public class Person implements Comparable<Person>, Privatizable
             for (final ParentChildRelation rel : partnership.getChildRelations())
             {
                 final Person child = rel.getOther();
-                rEventRet.addAll(child.getEventsWithin(child.getChildhood()).stream().map(event -> new FamilyEvent(child, event, "child")).collect(Collectors.toList()));
+                child.getEventsWithin(child.birth, child.rMarriage.get(0), "child", rEventRet);
             }
         }
     }
 
-    private DatePeriod getChildhood()
-    {
-        return new DatePeriod(
-            new DateRange(new YMD(this.birth)),
-            new DateRange(new YMD(this.rMarriage.get(0))));
-    }
-
-    private DatePeriod getPartnerhood(final int p)
+    /**
+     * Adds this person's events within the given (exact) dates to the given timeline.
+     */
+    private void getEventsWithin(final Time from, final Time to, final String relation, final List<FamilyEvent> rEventRet)
     {
-        return new DatePeriod(
-            new DateRange(new YMD(this.rMarriage.get(p))),
-            new DateRange(new YMD(this.rDivorce.get(p))));
+        final List<Event> within;
+        if (this.eventIndex != null)
+        {
+            // (no need to build a DatePeriod just to get its sort keys)
+            within = this.eventIndex.getOverlapping(DateKeys.sortKey(from), DateKeys.sortKey(to));
+        }
+        else
+        {
+            within = getEventsWithin(new DatePeriod(new DateRange(new YMD(from)), new DateRange(new YMD(to))));
+        }
+        for (final Event event : within)
+        {
+            rEventRet.add(new FamilyEvent(this, event, relation));
+        }
     }
 }
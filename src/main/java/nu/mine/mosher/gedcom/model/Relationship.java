@@ -0,0 +1,198 @@
+package nu.mine.mosher.gedcom.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * How one person is related to another, by way of their nearest common
+ * ancestors (see {@link RelationshipCalculator}). There is one {@link Path}
+ * for each nearest common ancestor; full siblings, for example, have two
+ * (through their father and through their mother).
+ *
+ * @author Chris Mosher
+ */
+public final class Relationship {
+    private static final String[] ORDINALS = {
+        "zeroth", "first", "second", "third", "fourth", "fifth", "sixth", "seventh", "eighth", "ninth", "tenth"
+    };
+
+    private final Person from;
+    private final Person to;
+    private final List<Path> paths;
+
+    /**
+     * One way two people are related: up from one person to a common
+     * ancestor, then down to the other person.
+     */
+    public static final class Path {
+        private final List<Person> people;
+        private final int up;
+        private final int down;
+        private final boolean half;
+
+        Path(final List<Person> people, final int up, final int down, final boolean half) {
+            this.people = Collections.unmodifiableList(people);
+            this.up = up;
+            this.down = down;
+            this.half = half;
+        }
+
+        /**
+         * @return the people along the path, from the first person up to the ancestor and down to the second person
+         */
+        public List<Person> getPeople() {
+            return this.people;
+        }
+
+        public Person getCommonAncestor() {
+            return this.people.get(this.up);
+        }
+
+        /**
+         * @return number of generations from the first person up to the ancestor
+         */
+        public int getUp() {
+            return this.up;
+        }
+
+        /**
+         * @return number of generations from the ancestor down to the second person
+         */
+        public int getDown() {
+            return this.down;
+        }
+
+        /**
+         * @return true if the two people on either side of the ancestor are only half siblings
+         */
+        public boolean isHalf() {
+            return this.half;
+        }
+
+        /**
+         * @return what the second person is to the first (for example, "second cousin once removed")
+         */
+        public String getName() {
+            return name(this.up, this.down, this.half);
+        }
+
+        @Override
+        public String toString() {
+            return getName() + " via " + getCommonAncestor();
+        }
+    }
+
+    Relationship(final Person from, final Person to, final List<Path> paths) {
+        this.from = from;
+        this.to = to;
+        this.paths = Collections.unmodifiableList(paths);
+    }
+
+    public Person getFrom() {
+        return this.from;
+    }
+
+    public Person getTo() {
+        return this.to;
+    }
+
+    /**
+     * @return one path for each nearest common ancestor, nearest to <code>from</code> first (never empty)
+     */
+    public List<Path> getPaths() {
+        return this.paths;
+    }
+
+    public List<Person> getCommonAncestors() {
+        return this.paths.stream().map(Path::getCommonAncestor).collect(Collectors.toList());
+    }
+
+    /**
+     * @return what <code>to</code> is to <code>from</code>, by the first path
+     */
+    public String getName() {
+        return this.paths.get(0).getName();
+    }
+
+    @Override
+    public String toString() {
+        return this.to + " is " + getName() + " of " + this.from;
+    }
+
+    /**
+     * Names the relationship of a person who is the given number of
+     * generations down from a common ancestor who is the given number of
+     * generations up from another person.
+     *
+     * @param up generations from the other person up to the common ancestor
+     * @param down generations from the common ancestor down to the person
+     * @param half true if related only through one of two parents
+     * @return name, for example "grandparent", "half sibling", "third cousin twice removed"
+     */
+    static String name(final int up, final int down, final boolean half) {
+        if (up == 0 && down == 0) {
+            return "self";
+        }
+        if (up == 0) {
+            return lineal(down, "child");
+        }
+        if (down == 0) {
+            return lineal(up, "parent");
+        }
+        final String h = half ? "half " : "";
+        if (up == 1 && down == 1) {
+            return h + "sibling";
+        }
+        if (up == 1) {
+            return h + greats(down - 2) + "niece or " + greats(down - 2) + "nephew";
+        }
+        if (down == 1) {
+            return h + greats(up - 2) + "aunt or " + greats(up - 2) + "uncle";
+        }
+        return h + ordinal(Math.min(up, down) - 1) + " cousin" + removed(Math.abs(up - down));
+    }
+
+    private static String lineal(final int generations, final String relation) {
+        return greats(generations - 1) + relation;
+    }
+
+    /**
+     * @return "", "grand", "great-grand", "2nd great-grand", ...
+     */
+    private static String greats(final int g) {
+        switch (g) {
+            case 0: return "";
+            case 1: return "grand";
+            case 2: return "great-grand";
+            default: return numeric(g - 1) + " great-grand";
+        }
+    }
+
+    private static String removed(final int r) {
+        switch (r) {
+            case 0: return "";
+            case 1: return " once removed";
+            case 2: return " twice removed";
+            case 3: return " thrice removed";
+            default: return " " + r + " times removed";
+        }
+    }
+
+    private static String ordinal(final int n) {
+        return n < ORDINALS.length ? ORDINALS[n] : numeric(n);
+    }
+
+    private static String numeric(final int n) {
+        final int tens = n % 100;
+        if (11 <= tens && tens <= 13) {
+            return n + "th";
+        }
+        switch (n % 10) {
+            case 1: return n + "st";
+            case 2: return n + "nd";
+            case 3: return n + "rd";
+            default: return n + "th";
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package nu.mine.mosher.gedcom.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Finds how people are related, by searching up the parent edges of a
+ * {@link RelationshipGraph} from both people at once (one generation at a
+ * time, from whichever side has fewer people to visit next) until the
+ * searches meet at their nearest common ancestors. Where a tree has
+ * pedigree collapse, each ancestor is visited only once per side, however
+ * many ways it is reachable.
+ * <p>
+ * Results are cached by (ordered) pair, in a bounded cache; when it is full,
+ * an arbitrary eighth of the entries are evicted. The calculator is
+ * thread-safe; each search takes a set of work arrays (several
+ * <code>int</code>s per person) from a pool owned by the calculator, and
+ * puts it back when done, so there are only as many sets as there have
+ * been concurrent searches, and they go away with the calculator.
+ *
+ * @author Chris Mosher
+ */
+public final class RelationshipCalculator {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final RelationshipGraph graph;
+    private final int capacity;
+    private final ConcurrentHashMap<Long, Optional<Relationship>> cache;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final Queue<Search> searches = new ConcurrentLinkedQueue<>();
+
+    public RelationshipCalculator(final RelationshipGraph graph) {
+        this(graph, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param graph the graph
+     * @param capacity maximum number of pairs to remember
+     */
+    public RelationshipCalculator(final RelationshipGraph graph, final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        this.graph = graph;
+        this.capacity = capacity;
+        this.cache = new ConcurrentHashMap<>(Math.min(capacity, 1 << 12));
+    }
+
+    public RelationshipGraph getGraph() {
+        return this.graph;
+    }
+
+    /**
+     * Finds how <code>to</code> is related to <code>from</code>.
+     *
+     * @param from one person
+     * @param to another person
+     * @return the relationship, or empty if they have no common ancestor (or either is not in the graph)
+     */
+    public Optional<Relationship> relate(final Person from, final Person to) {
+        final int x = this.graph.indexOf(from);
+        final int y = this.graph.indexOf(to);
+        if (x < 0 || y < 0) {
+            return Optional.empty();
+        }
+        final Long key = (long)x << 32 | y;
+        Optional<Relationship> relationship = this.cache.get(key);
+        if (relationship == null) {
+            relationship = search(x, y);
+            if (this.capacity <= this.cache.size()) {
+                evict();
+            }
+            this.cache.put(key, relationship);
+        }
+        return relationship;
+    }
+
+    private Optional<Relationship> search(final int x, final int y) {
+        Search search = this.searches.poll();
+        if (search == null) {
+            search = new Search(this.graph);
+        }
+        try {
+            return search.relate(x, y);
+        } finally {
+            this.searches.offer(search);
+        }
+    }
+
+    private void evict() {
+        if (!this.evicting.compareAndSet(false, true)) {
+            // some other thread is already doing it
+            return;
+        }
+        try {
+            final int target = this.capacity - Math.max(1, this.capacity / 8);
+            final Iterator<Long> i = this.cache.keySet().iterator();
+            while (target < this.cache.size() && i.hasNext()) {
+                i.next();
+                i.remove();
+            }
+        } finally {
+            this.evicting.set(false);
+        }
+    }
+
+    /**
+     * Finds how each of the given people is related to one person.
+     *
+     * @param from one person
+     * @param rTo other people
+     * @param parallel true to use multiple threads
+     * @return relationships, in the same order as <code>rTo</code>
+     */
+    public List<Optional<Relationship>> relateAll(final Person from, final List<Person> rTo, final boolean parallel) {
+        return (parallel ? rTo.parallelStream() : rTo.stream()).map(to -> relate(from, to)).collect(Collectors.toList());
+    }
+
+    /**
+     * @return number of pairs cached
+     */
+    public int getCacheSize() {
+        return this.cache.size();
+    }
+
+    /**
+     * Discards all cached results.
+     */
+    public void clearCache() {
+        this.cache.clear();
+    }
+
+    /**
+     * Work arrays for one search at a time. A person has been visited from
+     * a side if their mark for that side equals the current stamp, so the
+     * arrays never need clearing.
+     */
+    private static final class Search {
+        private final RelationshipGraph graph;
+        private final Side sideX;
+        private final Side sideY;
+        private int stamp;
+
+        private Search(final RelationshipGraph graph) {
+            this.graph = graph;
+            this.sideX = new Side(graph.size());
+            this.sideY = new Side(graph.size());
+        }
+
+        private Optional<Relationship> relate(final int x, final int y) {
+            if (++this.stamp == 0) {
+                this.sideX.reset();
+                this.sideY.reset();
+                this.stamp = 1;
+            }
+
+            final List<Integer> meets = new ArrayList<>();
+            int best = Integer.MAX_VALUE;
+            this.sideX.begin(x, this.stamp);
+            this.sideY.begin(y, this.stamp);
+            if (x == y) {
+                meets.add(x);
+                best = 0;
+            }
+
+            // stop when no meeting still to be found can be as near as the best one
+            while (canMeet(this.sideX, best) || canMeet(this.sideY, best)) {
+                final boolean expandX = !canMeet(this.sideY, best) || (canMeet(this.sideX, best) && this.sideX.width() <= this.sideY.width());
+                final Side side = expandX ? this.sideX : this.sideY;
+                final Side other = expandX ? this.sideY : this.sideX;
+                final int start = side.head;
+                final int end = side.tail;
+                for (int q = start; q < end; ++q) {
+                    final int child = side.queue[q];
+                    final RelationshipGraph.Adjacency parents = this.graph.getParents();
+                    for (int e = parents.start(child); e < parents.end(child); ++e) {
+                        final int parent = parents.target(e);
+                        if (side.visit(parent, child, this.stamp) && other.mark[parent] == this.stamp) {
+                            final int d = side.dist[parent] + other.dist[parent];
+                            if (d <= best) {
+                                best = d;
+                                meets.add(parent);
+                            }
+                        }
+                    }
+                }
+                side.head = end;
+                ++side.level;
+            }
+
+            if (meets.isEmpty()) {
+                return Optional.empty();
+            }
+            final int nearest = best;
+            final List<Integer> ancestors = meets.stream()
+                .filter(a -> this.sideX.dist[a] + this.sideY.dist[a] == nearest)
+                .sorted(Comparator.comparingInt((Integer a) -> this.sideX.dist[a]).thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+            return Optional.of(build(x, y, ancestors));
+        }
+
+        /**
+         * A meeting not found yet must be at least one generation past the
+         * current level of one side (at a person not visited from that side
+         * yet), so it can only be as near as the best one if that side
+         * still has people to visit, and is not yet past the best distance.
+         */
+        private boolean canMeet(final Side side, final int best) {
+            return !side.isDone() && side.level < best;
+        }
+
+        private Relationship build(final int x, final int y, final List<Integer> ancestors) {
+            final RelationshipGraph g = this.graph;
+            final List<Relationship.Path> paths = new ArrayList<>(ancestors.size());
+            for (final int a : ancestors) {
+                final List<Person> people = new ArrayList<>(this.sideX.dist[a] + this.sideY.dist[a] + 1);
+                for (int i = a; i >= 0; i = this.sideX.pred[i]) {
+                    people.add(g.getPerson(i));
+                }
+                Collections.reverse(people);
+                for (int i = this.sideY.pred[a]; i >= 0; i = this.sideY.pred[i]) {
+                    people.add(g.getPerson(i));
+                }
+                paths.add(new Relationship.Path(people, this.sideX.dist[a], this.sideY.dist[a], isHalf(a, ancestors)));
+            }
+            return new Relationship(g.getPerson(x), g.getPerson(y), paths);
+        }
+
+        /**
+         * Two relatives are half relatives if they have just one nearest
+         * common ancestor, even though the children of that ancestor that
+         * they descend from both have other parents.
+         */
+        private boolean isHalf(final int a, final List<Integer> ancestors) {
+            final int up = this.sideX.dist[a];
+            final int down = this.sideY.dist[a];
+            if (up == 0 || down == 0) {
+                return false;
+            }
+            for (final int other : ancestors) {
+                if (other != a && this.sideX.dist[other] == up) {
+                    return false;
+                }
+            }
+            final RelationshipGraph.Adjacency parents = this.graph.getParents();
+            return 1 < parents.degree(this.sideX.pred[a]) && 1 < parents.degree(this.sideY.pred[a]);
+        }
+    }
+
+    /**
+     * One side of a search: who has been visited, how far up, and from
+     * whom; and a queue of the people visited, in order, with the current
+     * generation from <code>head</code> to <code>tail</code>.
+     */
+    private static final class Side {
+        private final int[] mark;
+        private final int[] dist;
+        private final int[] pred;
+        private final int[] queue;
+        private int head;
+        private int tail;
+        private int level;
+
+        private Side(final int n) {
+            this.mark = new int[n];
+            this.dist = new int[n];
+            this.pred = new int[n];
+            this.queue = new int[n];
+        }
+
+        private void reset() {
+            Arrays.fill(this.mark, 0);
+        }
+
+        private void begin(final int i, final int stamp) {
+            this.head = 0;
+            this.tail = 0;
+            this.level = 0;
+            visit(i, -1, stamp);
+        }
+
+        /**
+         * @return true if not visited before
+         */
+        private boolean visit(final int i, final int from, final int stamp) {
+            if (this.mark[i] == stamp) {
+                return false;
+            }
+            this.mark[i] = stamp;
+            this.dist[i] = this.level + (from < 0 ? 0 : 1);
+            this.pred[i] = from;
+            this.queue[this.tail++] = i;
+            return true;
+        }
+
+        private int width() {
+            return this.tail - this.head;
+        }
+
+        private boolean isDone() {
+            return this.head == this.tail;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package nu.mine.mosher.gedcom.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the parent, child, and spouse relations among
+ * a list of people, for graph algorithms that visit many people. Each
+ * person is identified by a dense index (their position in the list), and
+ * each kind of relation is kept as an {@link Adjacency} in compressed sparse
+ * row form: the relatives of all people packed into one <code>int[]</code>,
+ * with a flags byte per edge. Walking the graph needs no objects at all.
+ * <p>
+ * The child edges are exactly the reverse of the parent edges (with the
+ * same flags). Relations to people not in the list are left out.
+ *
+ * @author Chris Mosher
+ */
+public final class RelationshipGraph {
+    /**
+     * Edge flag: the parent is a father (on parent and child edges).
+     */
+    public static final int FATHER = 1;
+    /**
+     * Edge flag: the parent is a mother (on parent and child edges).
+     */
+    public static final int MOTHER = 1 << 1;
+    /**
+     * Edge flag: the parent is not a natural parent (for example, adoptive).
+     */
+    public static final int NON_NATURAL = 1 << 2;
+    /**
+     * Edge flag: the relation (or partnership) is private.
+     */
+    public static final int PRIVATE = 1 << 3;
+
+    /**
+     * One kind of relation, as a compressed sparse row adjacency list. The
+     * edges of person <code>i</code> are numbered <code>start(i)</code> up
+     * to (but not including) <code>end(i)</code>.
+     */
+    public static final class Adjacency {
+        // edges of person i are start[i] to start[i+1]
+        private final int[] start;
+        private final int[] target;
+        private final byte[] flags;
+
+        private Adjacency(final int[] start, final int[] target, final byte[] flags) {
+            this.start = start;
+            this.target = target;
+            this.flags = flags;
+        }
+
+        /**
+         * @param i index of a person
+         * @return number of the first edge of the person
+         */
+        public int start(final int i) {
+            return this.start[i];
+        }
+
+        /**
+         * @param i index of a person
+         * @return one past the number of the last edge of the person
+         */
+        public int end(final int i) {
+            return this.start[i + 1];
+        }
+
+        /**
+         * @param i index of a person
+         * @return number of edges of the person
+         */
+        public int degree(final int i) {
+            return this.start[i + 1] - this.start[i];
+        }
+
+        /**
+         * @param edge number of an edge
+         * @return index of the relative at the other end of the edge
+         */
+        public int target(final int edge) {
+            return this.target[edge];
+        }
+
+        /**
+         * @param edge number of an edge
+         * @return flags of the edge (<code>FATHER</code>, <code>MOTHER</code>, <code>NON_NATURAL</code>, <code>PRIVATE</code>)
+         */
+        public int flags(final int edge) {
+            return this.flags[edge];
+        }
+
+        /**
+         * @return total number of edges
+         */
+        public int size() {
+            return this.target.length;
+        }
+    }
+
+    private final List<Person> people;
+    private final Map<Person, Integer> mapPersonToIndex;
+    private final BitSet privatePeople;
+    private final Adjacency parents;
+    private final Adjacency children;
+    private final Adjacency spouses;
+
+    private RelationshipGraph(final List<Person> people, final Map<Person, Integer> mapPersonToIndex, final BitSet privatePeople, final Adjacency parents, final Adjacency spouses) {
+        this.people = people;
+        this.mapPersonToIndex = mapPersonToIndex;
+        this.privatePeople = privatePeople;
+        this.parents = parents;
+        this.children = reverse(parents, people.size());
+        this.spouses = spouses;
+    }
+
+    /**
+     * Builds the graph of the given people (which must already be linked
+     * into their families).
+     *
+     * @param people the people; their order determines their indexes
+     * @return the graph
+     */
+    public static RelationshipGraph of(final List<Person> people) {
+        final int n = people.size();
+        final List<Person> copy = Collections.unmodifiableList(new ArrayList<>(people));
+        final Map<Person, Integer> mapPersonToIndex = new IdentityHashMap<>(2 * n);
+        final BitSet privatePeople = new BitSet(n);
+        for (int i = 0; i < n; ++i) {
+            final Person person = copy.get(i);
+            mapPersonToIndex.putIfAbsent(person, i);
+            if (person.isPrivate()) {
+                privatePeople.set(i);
+            }
+        }
+
+        final Builder parents = new Builder(n);
+        final Builder spouses = new Builder(n);
+        for (int i = 0; i < n; ++i) {
+            final Person person = copy.get(i);
+            parents.start(i);
+            for (final ParentChildRelation father : person.getFathers()) {
+                parents.add(mapPersonToIndex.get(father.getOther()), FATHER | flags(father));
+            }
+            for (final ParentChildRelation mother : person.getMothers()) {
+                parents.add(mapPersonToIndex.get(mother.getOther()), MOTHER | flags(mother));
+            }
+            spouses.start(i);
+            for (final Partnership partnership : person.getPartnerships()) {
+                spouses.add(mapPersonToIndex.get(partnership.getPartner()), partnership.isPrivate() ? PRIVATE : 0);
+            }
+        }
+
+        return new RelationshipGraph(copy, mapPersonToIndex, privatePeople, parents.build(), spouses.build());
+    }
+
+    private static int flags(final ParentChildRelation relation) {
+        return (relation.getRelation().isPresent() ? NON_NATURAL : 0) | (relation.isPrivate() ? PRIVATE : 0);
+    }
+
+    /**
+     * Builds the transpose of the given adjacency, by counting sort.
+     */
+    private static Adjacency reverse(final Adjacency forward, final int n) {
+        final int[] start = new int[n + 1];
+        for (int e = 0; e < forward.size(); ++e) {
+            ++start[forward.target[e] + 1];
+        }
+        for (int i = 0; i < n; ++i) {
+            start[i + 1] += start[i];
+        }
+        final int[] next = Arrays.copyOf(start, n);
+        final int[] target = new int[forward.size()];
+        final byte[] flags = new byte[forward.size()];
+        for (int i = 0; i < n; ++i) {
+            for (int e = forward.start(i); e < forward.end(i); ++e) {
+                final int k = next[forward.target[e]]++;
+                target[k] = i;
+                flags[k] = forward.flags[e];
+            }
+        }
+        return new Adjacency(start, target, flags);
+    }
+
+    /**
+     * Collects the edges of one kind, for one person at a time, in order of index.
+     */
+    private static final class Builder {
+        private final int[] start;
+        private int[] target = new int[16];
+        private byte[] flags = new byte[16];
+        private int size;
+
+        private Builder(final int n) {
+            this.start = new int[n + 1];
+        }
+
+        private void start(final int i) {
+            this.start[i] = this.size;
+        }
+
+        private void add(final Integer relative, final int flags) {
+            if (relative == null) {
+                // (not in the graph)
+                return;
+            }
+            if (this.size == this.target.length) {
+                this.target = Arrays.copyOf(this.target, 2 * this.size);
+                this.flags = Arrays.copyOf(this.flags, 2 * this.size);
+            }
+            this.target[this.size] = relative;
+            this.flags[this.size] = (byte)flags;
+            ++this.size;
+        }
+
+        private Adjacency build() {
+            this.start[this.start.length - 1] = this.size;
+            return new Adjacency(this.start, Arrays.copyOf(this.target, this.size), Arrays.copyOf(this.flags, this.size));
+        }
+    }
+
+    /**
+     * @return number of people
+     */
+    public int size() {
+        return this.people.size();
+    }
+
+    /**
+     * @param i index of a person
+     * @return the person
+     */
+    public Person getPerson(final int i) {
+        return this.people.get(i);
+    }
+
+    /**
+     * @param person a person
+     * @return index of the person, or -1 if they are not in the graph
+     */
+    public int indexOf(final Person person) {
+        final Integer i = this.mapPersonToIndex.get(person);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @param i index of a person
+     * @return true if the person is private
+     */
+    public boolean isPrivate(final int i) {
+        return this.privatePeople.get(i);
+    }
+
+    /**
+     * @return each person's fathers and mothers
+     */
+    public Adjacency getParents() {
+        return this.parents;
+    }
+
+    /**
+     * @return each person's children
+     */
+    public Adjacency getChildren() {
+        return this.children;
+    }
+
+    /**
+     * @return each person's partners (one edge per partnership)
+     */
+    public Adjacency getSpouses() {
+        return this.spouses;
+    }
+}
@@ -14,7 +14,9 @@ import java.util.Date;
 /**
  * Improved version of <code>java.util.Date</code>. Objects of this class are
  * immutable. This class actually represents a bridge to
- * <code>java.util.Date</code>.
+ * <code>java.util.Date</code>, but holds nothing more than the primitive
+ * number of milliseconds since the epoch, so creating and comparing them
+ * is cheap; the string form is only built when asked for.
  * @author Chris Mosher
  */
 public final class Time implements Comparable<Time>
@@ -25,10 +27,12 @@ public final class Time implements Comparable<Time>
      */
     public static final String ISO8601_RFC3339_DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
 
-    private final long ms;
+    /**
+     * The epoch, 1970-01-01T00:00:00.000Z
+     */
+    public static final Time ZERO = new Time(0);
 
-    private transient final String asString;
-    private transient final int hash;
+    private final long ms;
 
     /**
      * @param date the <code>java.util.Date</code> this object will wrap
@@ -41,17 +45,23 @@ public final class Time implements Comparable<Time>
     private Time(final long ms)
     {
         this.ms = ms;
-        if (this.ms != 0)
-        {
-            final SimpleDateFormat fmtDateTime = new SimpleDateFormat(
-                ISO8601_RFC3339_DATE_TIME_FORMAT);
-            this.asString = fmtDateTime.format(new Date(this.ms));
-        }
-        else
-        {
-            this.asString = "";
-        }
-        this.hash = (int) (this.ms ^ (this.ms >>> 32));
+    }
+
+    /**
+     * @param ms number of milliseconds since the epoch
+     * @return a <code>Time</code> for the given millisecond value
+     */
+    public static Time ofEpochMilli(final long ms)
+    {
+        return ms == 0 ? ZERO : new Time(ms);
+    }
+
+    /**
+     * @return number of milliseconds since the epoch
+     */
+    public long getEpochMilli()
+    {
+        return this.ms;
     }
 
     /**
@@ -90,7 +100,7 @@ public final class Time implements Comparable<Time>
     @Override
     public int hashCode()
     {
-        return this.hash;
+        return (int) (this.ms ^ (this.ms >>> 32));
     }
 
     /**
@@ -102,7 +112,11 @@ public final class Time implements Comparable<Time>
     @Override
     public String toString()
     {
-        return this.asString;
+        if (this.ms == 0)
+        {
+            return "";
+        }
+        return new SimpleDateFormat(ISO8601_RFC3339_DATE_TIME_FORMAT).format(new Date(this.ms));
     }
 
     /**
@@ -115,15 +129,7 @@ public final class Time implements Comparable<Time>
     @Override
     public int compareTo(final Time that)
     {
-        if (this.ms < that.ms)
-        {
-            return -1;
-        }
-        if (that.ms < this.ms)
-        {
-            return +1;
-        }
-        return 0;
+        return Long.compare(this.ms, that.ms);
     }
 
     /**
@@ -146,6 +152,6 @@ public final class Time implements Comparable<Time>
                 ISO8601_RFC3339_DATE_TIME_FORMAT);
             ms = fmtDateTime.parse(t).getTime();
         }
-        return new Time(ms);
+        return ofEpochMilli(ms);
     }
 }
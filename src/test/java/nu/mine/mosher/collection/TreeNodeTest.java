@@ -6,7 +6,9 @@ import nu.mine.mosher.collection.TreeNode.NotChild;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -199,4 +201,58 @@ public class TreeNodeTest {
         final TreeNode<String> p = new TreeNode<>("ABC");
         assertThat(p.toString(), is("ABC"));
     }
+
+    /**
+     * Tests that a new node has no ordinal, and that an ordinal only
+     * counts for the owner that assigned it.
+     */
+    @Test
+    public void ordinal() {
+        final Object owner = new Object();
+        final Object other = new Object();
+        final TreeNode<String> p = new TreeNode<>("p");
+        assertThat(p.getOrdinal(owner), is(-1));
+        p.setOrdinal(owner, 7);
+        assertThat(p.getOrdinal(owner), is(7));
+        assertThat(p.getOrdinal(other), is(-1));
+        p.setOrdinal(other, 3);
+        assertThat(p.getOrdinal(owner), is(-1));
+        assertThat(p.getOrdinal(other), is(3));
+    }
+
+    /**
+     * Tests that changes made through the children iterators are tracked.
+     */
+    @Test
+    public void iteratorChangesAreModifications() {
+        final TreeNode<String> root = new TreeNode<>("root");
+        final TreeNode<String> p = new TreeNode<>("p");
+        root.addChild(p);
+        final TreeNode<String> a = new TreeNode<>("a");
+        p.addChild(a);
+        p.addChild(new TreeNode<>("b"));
+
+        root.clearModifiedDeep();
+        final Iterator<TreeNode<String>> i = p.iterator();
+        i.next();
+        assertThat(root.isModified(), is(false));
+        i.remove();
+        assertThat(p.isModified(), is(true));
+        assertThat(root.isModified(), is(true));
+        assertThat(a.parent(), is(nullValue()));
+        assertThat(p.getChildCount(), is(1));
+
+        root.clearModifiedDeep();
+        final ListIterator<TreeNode<String>> j = p.childrenList();
+        j.next();
+        final TreeNode<String> c = new TreeNode<>("c");
+        j.set(c);
+        assertThat(root.isModified(), is(true));
+        assertThat(c.parent(), is(sameInstance(p)));
+
+        root.clearModifiedDeep();
+        p.childrenList().add(new TreeNode<>("d"));
+        assertThat(root.isModified(), is(true));
+        assertThat(p.getFirstChildOrNull().getObject(), is("d"));
+    }
 }
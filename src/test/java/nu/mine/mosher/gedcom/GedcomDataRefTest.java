@@ -6,6 +6,8 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import static java.util.Arrays.asList;
@@ -84,4 +86,120 @@ public class GedcomDataRefTest {
 
         assertArrayEquals(expected.toArray(), actual.toArray());
     }
+
+    private static final String FAMILIES =
+        "0 HEAD\n" +
+        "0 @I1@ INDI\n" +
+        "1 NAME Alice /Smith/\n" +
+        "1 FAMC @F1@\n" +
+        "0 @I2@ INDI\n" +
+        "1 NAME Bob /Smith/\n" +
+        "1 FAMC @F2@\n" +
+        "0 @I3@ INDI\n" +
+        "1 NAME Carol /Jones/\n" +
+        "1 FAMC @F1@\n" +
+        "0 @I4@ INDI\n" +
+        "1 NAME Dave /Jones/\n" +
+        "0 @F1@ FAM\n" +
+        "1 MARR\n" +
+        "2 DATE 3 JUN 1853\n" +
+        "1 CHIL @I1@\n" +
+        "1 CHIL @I3@\n" +
+        "0 @F2@ FAM\n" +
+        "1 MARR\n" +
+        "2 DATE 1871\n" +
+        "1 CHIL @I2@\n" +
+        "0 TRLR\n";
+
+    private static List<String> eval(final String expr, final GedcomTree tree) throws GedcomDataRef.InvalidSyntax {
+        final List<String> actual = new ArrayList<>();
+        new GedcomDataRef(expr).forEach(tree, n -> actual.add(n.toString()));
+        return actual;
+    }
+
+    private static List<String> evalIndexed(final String expr, final GedcomTree tree) throws GedcomDataRef.InvalidSyntax {
+        final List<String> actual = new ArrayList<>();
+        new GedcomDataRef(expr).forEach(new GedcomIndex(tree), n -> actual.add(n.toString()));
+        return actual;
+    }
+
+    @Test
+    public void pointer() throws IOException, InvalidLevel, GedcomDataRef.InvalidSyntax {
+        final GedcomTree t = Gedcom.valueOf(FAMILIES);
+        assertEquals(asList("2 DATE 3 JUN 1853", "2 DATE 1871", "2 DATE 3 JUN 1853"), eval(".INDI.FAMC>MARR.DATE", t));
+    }
+
+    @Test
+    public void pointerTrailing() throws IOException, InvalidLevel, GedcomDataRef.InvalidSyntax {
+        final GedcomTree t = Gedcom.valueOf(FAMILIES);
+        assertEquals(asList("0 @F2@ FAM"), eval(".INDI[NAME\"Bob.*\"].FAMC>", t));
+    }
+
+    @Test
+    public void id() throws IOException, InvalidLevel, GedcomDataRef.InvalidSyntax {
+        final GedcomTree t = Gedcom.valueOf(FAMILIES);
+        assertEquals(asList("1 NAME Carol /Jones/"), eval(".@I3@.NAME", t));
+        assertEquals(asList("1 NAME Carol /Jones/"), evalIndexed(".@I3@.NAME", t));
+        assertEquals(asList(), evalIndexed(".@nonesuch@.NAME", t));
+    }
+
+    @Test
+    public void predicate() throws IOException, InvalidLevel, GedcomDataRef.InvalidSyntax {
+        final GedcomTree t = Gedcom.valueOf(FAMILIES);
+        final String expr = ".INDI[FAMC>MARR.DATE\".*185[0-9]\"].NAME";
+        final List<String> expected = asList("1 NAME Alice /Smith/", "1 NAME Carol /Jones/");
+        assertEquals(expected, eval(expr, t));
+        assertEquals(expected, evalIndexed(expr, t));
+    }
+
+    @Test
+    public void predicates() throws IOException, InvalidLevel, GedcomDataRef.InvalidSyntax {
+        final GedcomTree t = Gedcom.valueOf(FAMILIES);
+        final String expr = ".INDI[FAMC>][NAME\".*Jones.*\"]";
+        assertEquals(asList("0 @I3@ INDI"), eval(expr, t));
+        assertEquals(asList("0 @I3@ INDI"), evalIndexed(expr, t));
+    }
+
+    @Test
+    public void indexedMatchesUnindexed() throws IOException, InvalidLevel, GedcomDataRef.InvalidSyntax {
+        final GedcomTree t = Gedcom.valueOf(FAMILIES);
+        for (final String expr : asList(".INDI.NAME", ".*.CHIL>NAME", ".FAM[CHIL>NAME\"Bob.*\"]", ".INDI[FAMC>CHIL\"@I1@\"]")) {
+            assertEquals(eval(expr, t), evalIndexed(expr, t), expr);
+        }
+    }
+
+    @Test
+    public void predicateSyntaxError() {
+        assertThrows(GedcomDataRef.InvalidSyntax.class, () -> new GedcomDataRef(".INDI[]"));
+        assertThrows(GedcomDataRef.InvalidSyntax.class, () -> new GedcomDataRef(".INDI[NAME"));
+        assertThrows(GedcomDataRef.InvalidSyntax.class, () -> new GedcomDataRef(".INDI>>NAME"));
+    }
+
+    @Test
+    public void roundTrip() throws GedcomDataRef.InvalidSyntax {
+        assertEquals(".indi[famc>marr.date\".*185[0-9]\"].name", new GedcomDataRef(".INDI[FAMC>MARR.DATE\".*185[0-9]\"].NAME").toString());
+    }
+
+    @Test
+    public void parallel() throws IOException, InvalidLevel, GedcomDataRef.InvalidSyntax {
+        final StringBuilder sb = new StringBuilder(FAMILIES.substring(0, FAMILIES.length() - "0 TRLR\n".length()));
+        for (int i = 0; i < 2000; ++i) {
+            sb.append("0 @X").append(i).append("@ INDI\n1 NAME Person").append(i).append(" /Smith/\n1 FAMC @F").append(1 + i % 2).append("@\n");
+        }
+        sb.append("0 TRLR\n");
+        final GedcomTree t = Gedcom.valueOf(sb.toString());
+        final GedcomDataRef uut = new GedcomDataRef(".INDI[FAMC>MARR.DATE\".*185[0-9]\"].NAME\"Person.*\"");
+
+        final List<String> expected = eval(uut.toString(), t);
+        assertEquals(1000, expected.size());
+
+        final List<String> ordered = new ArrayList<>();
+        uut.forEachParallel(t, n -> ordered.add(n.toString()), true);
+        assertEquals(expected, ordered);
+
+        final List<String> unordered = Collections.synchronizedList(new ArrayList<>());
+        uut.forEachParallel(t, n -> unordered.add(n.toString()), false);
+        assertEquals(new HashSet<>(expected), new HashSet<>(unordered));
+        assertEquals(expected.size(), unordered.size());
+    }
 }
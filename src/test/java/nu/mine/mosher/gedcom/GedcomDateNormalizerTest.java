@@ -0,0 +1,76 @@
+package nu.mine.mosher.gedcom;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.date.DatePeriod;
+import nu.mine.mosher.gedcom.date.DateRange;
+import nu.mine.mosher.gedcom.date.YMD;
+import nu.mine.mosher.gedcom.exception.InvalidLevel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GedcomDateNormalizerTest {
+    private static final String INPUT =
+        "0 HEAD\n" +
+        "0 @I1@ INDI\n" +
+        "1 BIRT\n" +
+        "2 DATE abt  09 jan 1850\n" +
+        "1 DEAT\n" +
+        "2 DATE BET 1900 AND 1890\n" +
+        "0 @I2@ INDI\n" +
+        "1 BIRT\n" +
+        "2 DATE ABT 9 JAN 1850\n" +
+        "1 BURI\n" +
+        "2 DATE int 2 feb 1900  (Groundhog  day)\n" +
+        "1 DEAT\n" +
+        "2 DATE sometime\n" +
+        "0 TRLR\n";
+
+    @Test
+    public void checkOnly() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(INPUT);
+        final GedcomDateNormalizer.Result result = new GedcomDateNormalizer(tree).normalize(false);
+
+        assertThat(result.getDates().size(), is(3));
+        assertThat(result.getRewrittenCount(), is(0));
+        assertThat(date(tree, "I1"), is("abt  09 jan 1850"));
+        assertThat(result.getDates().get(tree.getNode("I2").getFirstChildOrNull().getFirstChildOrNull()),
+            is(new DatePeriod(new DateRange(new YMD(1850, 1, 9, true)))));
+
+        assertThat(result.getDiagnostics().size(), is(2));
+        final GedcomDateNormalizer.Diagnostic outOfOrder = result.getDiagnostics().get(0);
+        assertThat(outOfOrder.getRecordId(), is("I1"));
+        assertThat(outOfOrder.getValue(), is("BET 1900 AND 1890"));
+        assertThat(outOfOrder.getMessage(), containsString("less than earliest"));
+        assertThat(result.getDiagnostics().get(1).getRecordId(), is("I2"));
+        assertThat(result.getDiagnostics().get(1).getValue(), is("sometime"));
+    }
+
+    @Test
+    public void rewrite() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(INPUT);
+        final GedcomDateNormalizer.Result result = new GedcomDateNormalizer(tree).normalize(true);
+
+        assertThat(result.getRewrittenCount(), is(2));
+        assertThat(date(tree, "I1"), is("ABT 9 JAN 1850"));
+        assertThat(tree.toString(), containsString("2 DATE INT 2 FEB 1900 (Groundhog  day)\n"));
+        assertThat(tree.toString(), containsString("2 DATE sometime\n"));
+        assertThat(tree.toString(), containsString("2 DATE BET 1900 AND 1890\n"));
+    }
+
+    @Test
+    public void canonical() {
+        assertEquals("@#DJULIAN@ 11 FEB 1731/02", GedcomDateNormalizer.canonical("@#djulian@ 011  feb 1731/02"));
+        assertEquals("0", GedcomDateNormalizer.canonical("0"));
+        assertEquals("FROM 1 JAN 1900 TO 800", GedcomDateNormalizer.canonical("from 01 jan 1900   to 0800"));
+    }
+
+    private static String date(final GedcomTree tree, final String id) {
+        final TreeNode<GedcomLine> birt = tree.getNode(id).getFirstChildOrNull();
+        return birt.getFirstChildOrNull().getObject().getValue();
+    }
+}
@@ -0,0 +1,47 @@
+package nu.mine.mosher.gedcom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GedcomLineTest {
+    @Test
+    public void nominal() {
+        assertEquals("1 NAME Bob /Smith/", GedcomLine.create(1, GedcomTag.NAME, "Bob /Smith/").toString());
+    }
+
+    @Test
+    public void id() {
+        assertEquals("0 @I1@ INDI", GedcomLine.createEmptyId("I1", GedcomTag.INDI).toString());
+    }
+
+    @Test
+    public void pointer() {
+        assertEquals("12 FAMC @F1@", GedcomLine.createPointer(12, GedcomTag.FAMC, "F1").toString());
+    }
+
+    @Test
+    public void ats() {
+        assertEquals("1 EMAIL a@@b.com @@@@", GedcomLine.create(1, GedcomTag.EMAIL, "a@@b.com @@@@").toString());
+    }
+
+    @Test
+    public void normalized() {
+        assertEquals("1 NOTE René", GedcomLine.create(1, GedcomTag.NOTE, "René").toString());
+    }
+
+    @Test
+    public void dateNotNormalized() {
+        assertEquals("2 DATE René", GedcomLine.create(2, GedcomTag.DATE, "René").toString());
+    }
+
+    @Test
+    public void writer() throws IOException {
+        final StringWriter out = new StringWriter();
+        GedcomLine.create(1, GedcomTag.NOTE, "x@@y").appendTo(out);
+        assertEquals("1 NOTE x@@y", out.toString());
+    }
+}
@@ -0,0 +1,93 @@
+package nu.mine.mosher.gedcom;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.exception.InvalidLevel;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GedcomPassthroughTest {
+    private static final String INPUT =
+        "0 HEAD\r\n" +
+        "1 CHAR UTF-8\r\n" +
+        "0 @I1@ INDI\r\n" +
+        "1 NAME René /Smith/\r\n" +
+        "\r\n" +
+        "0 @I2@ INDI\r\n" +
+        "1 NAME Bob  /Jones/\r\n" +
+        "0 TRLR";
+
+    private static GedcomTree read(final String gedcom) throws IOException, InvalidLevel {
+        return Gedcom.readFile(
+            new BufferedInputStream(new ByteArrayInputStream(gedcom.getBytes(StandardCharsets.UTF_8))),
+            StandardCharsets.UTF_8,
+            true);
+    }
+
+    private static String write(final GedcomTree tree) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Gedcom.writeFile(tree, new BufferedOutputStream(out));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void unmodifiedRecordsAreVerbatim() throws IOException, InvalidLevel {
+        final GedcomTree tree = read(INPUT);
+
+        final TreeNode<GedcomLine> i2 = tree.getNode("I2");
+        GedcomTree.addOrUpdateChild(i2, GedcomTag.SEX, "M");
+
+        assertEquals(
+            "0 HEAD\r\n" +
+            "1 CHAR UTF-8\r\n" +
+            "0 @I1@ INDI\r\n" +
+            "1 NAME René /Smith/\r\n" +
+            "\r\n" +
+            "0 @I2@ INDI\r\n" +
+            "1 NAME Bob  /Jones/\r\n" +
+            "1 SEX M\r\n" +
+            "0 TRLR\r\n",
+            write(tree));
+    }
+
+    @Test
+    public void unmodifiedTreeIsIdenticalExceptFinalLineBreak() throws IOException, InvalidLevel {
+        // (the last line, TRLR, had no line break, so one is added)
+        assertEquals(INPUT + "\r\n", write(read(INPUT)));
+    }
+
+    @Test
+    public void wrongCharIsRewritten() throws IOException, InvalidLevel {
+        final GedcomTree tree = read(INPUT.replace("1 CHAR UTF-8", "1 CHAR ANSI"));
+
+        final String output = write(tree);
+        assertTrue(output.startsWith("0 HEAD\r\n1 CHAR UTF-8\r\n"));
+        assertFalse(output.contains("ANSI"));
+        assertTrue(output.contains("0 @I1@ INDI\r\n1 NAME René /Smith/\r\n\r\n"));
+    }
+
+    @Test
+    public void convertedEncodingIsNotPassthrough() throws IOException, InvalidLevel {
+        final String input = "0 HEAD\r\n1 CHAR ANSI\r\n0 @I1@ INDI\r\n1 NAME Ren\u00e9 /Smith/\r\n0 TRLR\r\n";
+        final GedcomTree tree = Gedcom.readFile(
+            new BufferedInputStream(new ByteArrayInputStream(input.getBytes("windows-1252"))),
+            Charset.forName("windows-1252"),
+            true);
+
+        assertNull(tree.getPassthrough());
+        assertEquals(StandardCharsets.UTF_8, tree.getCharset());
+        final String output = write(tree);
+        assertTrue(output.contains("1 CHAR UTF-8\n"));
+        assertTrue(output.contains("1 NAME Ren\u00e9 /Smith/\n"));
+    }
+
+    @Test
+    public void notPassthrough() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(INPUT);
+        assertFalse(write(tree).contains("\r"));
+    }
+}
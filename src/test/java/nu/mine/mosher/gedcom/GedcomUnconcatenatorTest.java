@@ -3,6 +3,8 @@ package nu.mine.mosher.gedcom;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -174,4 +176,54 @@ class GedcomUnconcatenatorTest {
                         "n for 3 years). Mustered out 3 Nov 1864 in Petersburg, VA."
                 ));
     }
+
+    @Test
+    void bytesUtf8() {
+        final List<String> actual = new ArrayList<>(8);
+        GedcomUnconcatenator.splitLineIntoSegments("\u00e9\u00e9\u00e9\u00e9", 5, StandardCharsets.UTF_8, actual);
+        assertThat(actual, is(equalTo(asList("\u00e9\u00e9", "\u00e9\u00e9"))));
+    }
+
+    @Test
+    void bytesOtherEncoding() {
+        // (each kana is 2 bytes in Shift_JIS, so the same encoder measures many characters)
+        final List<String> actual = new ArrayList<>(8);
+        GedcomUnconcatenator.splitLineIntoSegments("a\u3042\u3044\u3046\u3048b", 5, Charset.forName("Shift_JIS"), actual);
+        assertThat(actual, is(equalTo(asList("a\u3042\u3044", "\u3046\u3048b"))));
+    }
+
+    @Test
+    void bytesSurrogatePairNotSplit() {
+        final List<String> actual = new ArrayList<>(8);
+        GedcomUnconcatenator.splitLineIntoSegments("a\ud83d\ude00b", 4, StandardCharsets.UTF_8, actual);
+        assertThat(actual, is(equalTo(asList("a", "\ud83d\ude00", "b"))));
+    }
+
+    @Test
+    void tree() throws Exception {
+        final GedcomTree tree = Gedcom.valueOf(
+            "0 HEAD\n" +
+            "1 CHAR UTF-8\n" +
+            "0 @N1@ NOTE 0123456789\n" +
+            "1 CONT ab\n" +
+            "1 CONC cd\n" +
+            "1 CONT\n" +
+            "1 CONT \u00e9\u00e9\u00e9\u00e9\n" +
+            "1 REFN x\n" +
+            "0 TRLR\n");
+        new GedcomConcatenator(tree).concatenate();
+        tree.setMaxLength(6);
+        new GedcomUnconcatenator(tree).unconcatenate();
+        assertThat(tree.toString(), is(equalTo(
+            "0 HEAD\n" +
+            "1 CHAR UTF-8\n" +
+            "0 @N1@ NOTE 012345\n" +
+            "1 CONC 6789\n" +
+            "1 CONT abcd\n" +
+            "1 CONT\n" +
+            "1 CONT \u00e9\u00e9\n" +
+            "1 CONC \u00e9\u00e9\n" +
+            "1 REFN x\n" +
+            "0 TRLR\n")));
+    }
 }
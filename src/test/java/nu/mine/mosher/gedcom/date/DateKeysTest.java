@@ -0,0 +1,138 @@
+package nu.mine.mosher.gedcom.date;
+
+import nu.mine.mosher.time.Time;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({"static-method","javadoc"})
+public class DateKeysTest
+{
+    @Test
+    public void roundTrip()
+    {
+        for (final YMD ymd : randomDates(500))
+        {
+            final YMD back = DateKeys.toYMD(DateKeys.of(ymd));
+            assertThat(back, is(ymd));
+            assertThat(back.isCirca(), is(ymd.isCirca()));
+            assertThat(back.isJulian(), is(ymd.isJulian()));
+        }
+    }
+
+    @Test
+    public void sameOrderAsYMD()
+    {
+        final List<YMD> dates = randomDates(300);
+        dates.add(YMD.getMinimum());
+        dates.add(YMD.getMaximum());
+        for (final YMD a : dates)
+        {
+            for (final YMD b : dates)
+            {
+                assertThat(DateKeys.compare(DateKeys.of(a), DateKeys.of(b)), is(a.compareTo(b)));
+                if (a.compareTo(b) < 0)
+                {
+                    assertThat(DateKeys.of(a), lessThan(DateKeys.of(b)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameOrderAsDateRange() throws DateRange.DatesOutOfOrder
+    {
+        final List<DateRange> ranges = new ArrayList<>();
+        ranges.add(DateRange.UNKNOWN);
+        ranges.add(new DateRange(new YMD(1969, 12, 31)));
+        ranges.add(new DateRange(new YMD(1970, 1, 1)));
+        ranges.add(new DateRange(new YMD(1969, 12, 31), new YMD(1970, 1, 1)));
+        ranges.add(new DateRange(new YMD(1900, 1, 1), new YMD(1900, 1, 2)));
+        ranges.add(new DateRange(new YMD(1900, 1, 1)));
+        ranges.add(new DateRange(new YMD(1900, 1, 2)));
+        final List<YMD> dates = randomDates(80);
+        for (int i = 0; i + 1 < dates.size(); i += 2)
+        {
+            final YMD a = dates.get(i);
+            final YMD b = dates.get(i + 1);
+            final boolean inOrder = a.compareTo(b) <= 0;
+            ranges.add(new DateRange(inOrder ? a : b, inOrder ? b : a));
+            ranges.add(new DateRange(a, null));
+            ranges.add(new DateRange(null, b));
+        }
+        for (final DateRange a : ranges)
+        {
+            for (final DateRange b : ranges)
+            {
+                assertThat(a + " vs. " + b, Long.signum(DateKeys.sortKey(a) - DateKeys.sortKey(b)), is(a.compareTo(b)));
+            }
+            assertThat(DateKeys.toDateRange(DateKeys.of(a)), is(a));
+        }
+    }
+
+    @Test
+    public void midpointOfConsecutiveDays() throws DateRange.DatesOutOfOrder
+    {
+        final DateRange first = new DateRange(new YMD(1900, 1, 1));
+        final DateRange between = new DateRange(new YMD(1900, 1, 1), new YMD(1900, 1, 2));
+        final DateRange second = new DateRange(new YMD(1900, 1, 2));
+        assertThat(first.compareTo(between), is(-1));
+        assertThat(between.compareTo(second), is(-1));
+        assertThat(DateKeys.sortKey(first), lessThan(DateKeys.sortKey(between)));
+        assertThat(DateKeys.sortKey(between), lessThan(DateKeys.sortKey(second)));
+    }
+
+    @Test
+    public void sortKeyOfTime()
+    {
+        for (final YMD ymd : randomDates(200))
+        {
+            final Time time = ymd.getApproxTime();
+            assertThat(DateKeys.sortKey(time), is(DateKeys.sortKey(new DateRange(new YMD(time)))));
+        }
+    }
+
+    @Test
+    public void periods() throws DateRange.DatesOutOfOrder
+    {
+        final DatePeriod known = new DatePeriod(new DateRange(new YMD(1900)));
+        final DatePeriod to = new DatePeriod(null, new DateRange(new YMD(1800)));
+        assertThat(DateKeys.sortKey(to), lessThan(DateKeys.sortKey(known)));
+        assertThat(DateKeys.sortKey(known), lessThan(DateKeys.sortKey(DatePeriod.UNKNOWN)));
+        assertThat(DateKeys.sortKey(DatePeriod.UNKNOWN), lessThan(DateKeys.sortKey((DatePeriod)null)));
+    }
+
+    @Test
+    public void order()
+    {
+        assertArrayEquals(new int[] { 3, 1, 4, 0, 2 }, DateKeys.order(new long[] { 7, 2, 9, -5, 2 }));
+        assertThrows(IllegalArgumentException.class, () -> DateKeys.order(new long[] { 1L << 40 }));
+    }
+
+    private static List<YMD> randomDates(final int n)
+    {
+        final Random random = new Random(n);
+        final List<YMD> dates = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i)
+        {
+            int year = random.nextInt(4000) - 1000;
+            if (year == 0)
+            {
+                year = 1;
+            }
+            final int month = random.nextInt(13);
+            final int day = month == 0 ? 0 : random.nextInt(29);
+            dates.add(new YMD(year, month, day, random.nextBoolean(), random.nextBoolean()));
+        }
+        return dates;
+    }
+}
@@ -0,0 +1,80 @@
+package nu.mine.mosher.gedcom.date;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({"static-method","javadoc"})
+public class IntervalIndexTest
+{
+    @Test
+    public void nominal() throws DateRange.DatesOutOfOrder
+    {
+        final List<DatePeriod> periods = new ArrayList<>();
+        periods.add(period(1800, 1810));
+        periods.add(null);
+        periods.add(period(1850, 1850));
+        periods.add(period(1700, 1900));
+
+        final IntervalIndex<DatePeriod> index = new IntervalIndex<>(periods, p -> p);
+        assertThat(index.size(), is(3));
+        assertThat(index.getOverlapping(period(1805, 1849)), contains(periods.get(0), periods.get(3)));
+        assertThat(index.getOverlapping(period(1901, 1950)), empty());
+    }
+
+    @Test
+    public void sameAsOverlaps() throws DateRange.DatesOutOfOrder
+    {
+        final Random random = new Random(1850);
+        final List<DatePeriod> periods = new ArrayList<>();
+        periods.add(DatePeriod.UNKNOWN);
+        for (int i = 0; i < 400; ++i)
+        {
+            periods.add(randomPeriod(random));
+        }
+        final IntervalIndex<DatePeriod> index = new IntervalIndex<>(periods, p -> p);
+
+        for (int i = 0; i < 200; ++i)
+        {
+            final DatePeriod query = i == 0 ? DatePeriod.UNKNOWN : randomPeriod(random);
+            final List<DatePeriod> expected = periods.stream().filter(p -> p.overlaps(query)).collect(Collectors.toList());
+            final List<DatePeriod> actual = index.getOverlapping(query);
+            assertThat(actual.size(), is(expected.size()));
+            for (int j = 0; j < expected.size(); ++j)
+            {
+                assertThat(actual.get(j), sameInstance(expected.get(j)));
+            }
+        }
+    }
+
+    private static DatePeriod period(final int from, final int to) throws DateRange.DatesOutOfOrder
+    {
+        return new DatePeriod(new DateRange(new YMD(from)), new DateRange(new YMD(to)));
+    }
+
+    private static DatePeriod randomPeriod(final Random random) throws DateRange.DatesOutOfOrder
+    {
+        final int from = 1600 + random.nextInt(400);
+        final int to = from + random.nextInt(random.nextBoolean() ? 3 : 80);
+        switch (random.nextInt(4))
+        {
+            case 0:
+                return new DatePeriod(new DateRange(new YMD(from, 1 + random.nextInt(12))));
+            case 1:
+                return new DatePeriod(new DateRange(new YMD(from), null));
+            case 2:
+                return new DatePeriod(new DateRange(new YMD(from), new YMD(to)));
+            default:
+                return period(from, to);
+        }
+    }
+}
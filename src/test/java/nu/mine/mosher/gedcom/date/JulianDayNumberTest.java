@@ -0,0 +1,91 @@
+package nu.mine.mosher.gedcom.date;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({"static-method","javadoc"})
+public class JulianDayNumberTest
+{
+    @Test
+    public void epoch()
+    {
+        assertThat(JulianDayNumber.fromGregorian(1970, 1, 1), is(JulianDayNumber.EPOCH));
+        assertThat(JulianDayNumber.fromGregorian(2000, 1, 1), is(2451545L));
+        assertThat(JulianDayNumber.fromJulian(-4712, 1, 1), is(0L));
+    }
+
+    @Test
+    public void gregorianReform()
+    {
+        // the day after Thursday, October 4, 1582 (Julian) was Friday, October 15, 1582 (Gregorian)
+        assertThat(JulianDayNumber.fromGregorian(1582, 10, 15), is(JulianDayNumber.fromJulian(1582, 10, 4) + 1));
+        assertThat(JulianDayNumber.julianToGregorian(1752, 9, 2), is(new int[] { 1752, 9, 13 }));
+        assertThat(JulianDayNumber.gregorianToJulian(1752, 9, 14), is(new int[] { 1752, 9, 3 }));
+    }
+
+    @Test
+    public void lenient()
+    {
+        assertThat(JulianDayNumber.toGregorian(JulianDayNumber.fromGregorian(1700, 0, 0)), is(new int[] { 1699, 11, 30 }));
+        assertThat(JulianDayNumber.toGregorian(JulianDayNumber.fromGregorian(1900, 2, 29)), is(new int[] { 1900, 3, 1 }));
+        assertThat(JulianDayNumber.plusDays(2000, 2, 28, 1), is(new int[] { 2000, 2, 29 }));
+        assertThat(JulianDayNumber.plusDays(2000, 3, 1, -366), is(new int[] { 1999, 3, 1 }));
+    }
+
+    @Test
+    public void historicalYears()
+    {
+        assertThat(JulianDayNumber.toAstronomical(-1), is(0));
+        assertThat(JulianDayNumber.fromAstronomical(0), is(-1));
+        assertThat(JulianDayNumber.fromAstronomical(JulianDayNumber.toAstronomical(-44)), is(-44));
+        assertThat(JulianDayNumber.toAstronomical(1066), is(1066));
+    }
+
+    @Test
+    public void sameAsCalendar()
+    {
+        final GregorianCalendar julian = utc();
+        julian.setGregorianChange(new Date(Long.MAX_VALUE));
+        final GregorianCalendar gregorian = utc();
+        gregorian.setGregorianChange(new Date(Long.MIN_VALUE));
+
+        for (int year = -500; year <= 2500; year += 7)
+        {
+            for (int month = 0; month <= 13; ++month)
+            {
+                for (int day = 0; day <= 32; day += 4)
+                {
+                    julian.clear();
+                    julian.set(year, month - 1, day);
+                    gregorian.setTime(julian.getTime());
+                    final int[] g = JulianDayNumber.julianToGregorian(year, month, day);
+                    assertThat(g[0], is(astronomical(gregorian)));
+                    assertThat(g[1], is(gregorian.get(Calendar.MONTH) + 1));
+                    assertThat(g[2], is(gregorian.get(Calendar.DAY_OF_MONTH)));
+                    assertThat(JulianDayNumber.toEpochDay(JulianDayNumber.fromJulian(year, month, day)), is(Math.floorDiv(julian.getTimeInMillis(), 86400000L)));
+                }
+            }
+        }
+    }
+
+    private static GregorianCalendar utc()
+    {
+        return new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    }
+
+    private static int astronomical(final Calendar cal)
+    {
+        final int y = cal.get(Calendar.YEAR);
+        return cal.get(Calendar.ERA) == GregorianCalendar.BC ? 1 - y : y;
+    }
+}
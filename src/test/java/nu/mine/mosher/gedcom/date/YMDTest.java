@@ -8,6 +8,11 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import nu.mine.mosher.time.Time;
 import org.junit.jupiter.api.Test;
 
 
@@ -98,4 +103,30 @@ public class YMDTest
     {
         assertThrows(RuntimeException.class, () -> new YMD(0));
     }
+
+    @Test
+    public void plusYearsMatchesCalendar()
+    {
+        final int[][] dates = { { 1966, 7, 3 }, { 2000, 2, 29 }, { 1904, 2, 29 }, { 1, 1, 1 }, { -1, 12, 31 }, { -9999, 1, 1 }, { 1582, 10, 10 } };
+        final int[] years = { 18, -1, -110, 3, -4 };
+        for (final int[] d : dates)
+        {
+            final Time time = new YMD(d[0], d[1], d[2]).getApproxTime();
+            for (final int y : years)
+            {
+                final GregorianCalendar cal = new GregorianCalendar();
+                cal.setGregorianChange(new Date(Long.MIN_VALUE));
+                cal.setTime(time.asDate());
+                cal.add(Calendar.YEAR, y);
+                assertThat(YMD.plusYears(time, y), equalTo(new Time(cal.getTime())));
+            }
+        }
+    }
+
+    @Test
+    public void fromTimeRoundTrips()
+    {
+        final YMD ymd = new YMD(-44, 3, 15);
+        assertThat(new YMD(ymd.getApproxTime()), equalTo(ymd));
+    }
 }
@@ -0,0 +1,65 @@
+package nu.mine.mosher.gedcom.date.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({ "static-method", "javadoc" })
+public class DateDiagnosticsTest {
+    @Test
+    public void kinds() {
+        final DatePeriodCache cache = new DatePeriodCache();
+        final DateDiagnostics uut = new DateDiagnostics();
+        assertNull(cache.get("BET 1900 AND 1850", uut, () -> "I1"));
+        assertNull(cache.get("32 JAN 1900", uut, () -> "I2"));
+        assertNull(cache.get("1 JAN 1900 ?", uut, () -> "I3"));
+        assertNull(cache.get("JAN JAN", uut, () -> "I4"));
+        assertNull(cache.get("", uut, () -> "I5"));
+        assertNotNull(cache.get("1 JAN 1900", uut, () -> "I6"));
+
+        assertThat(uut.getTotal(), is(4L));
+        assertThat(uut.getCount(DateDiagnostics.Kind.OUT_OF_ORDER), is(1L));
+        assertThat(uut.getCount(DateDiagnostics.Kind.OUT_OF_RANGE), is(1L));
+        assertThat(uut.getCount(DateDiagnostics.Kind.UNRECOGNIZED), is(1L));
+        assertThat(uut.getCount(DateDiagnostics.Kind.SYNTAX), is(1L));
+        assertThat(uut.getSamples(DateDiagnostics.Kind.OUT_OF_ORDER).get(0).getRecordId(), is("I1"));
+        assertThat(uut.getSamples(DateDiagnostics.Kind.OUT_OF_ORDER).get(0).getValue(), is("BET 1900 AND 1850"));
+    }
+
+    @Test
+    public void cachedFailuresAreStillCounted() {
+        final DatePeriodCache cache = new DatePeriodCache();
+        final DateDiagnostics uut = new DateDiagnostics();
+        cache.get("AND 1900", uut, () -> "I1");
+        cache.get("AND 1900", uut, () -> "I2");
+        assertThat(uut.getCount(DateDiagnostics.Kind.SYNTAX), is(2L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void boundedSamples() {
+        final DateDiagnostics uut = new DateDiagnostics(3);
+        final AtomicInteger asked = new AtomicInteger();
+        IntStream.range(0, 1000).parallel().forEach(i -> uut.add(DateDiagnostics.Kind.SYNTAX, "x" + i, () -> "I" + asked.incrementAndGet()));
+
+        assertThat(uut.getCount(DateDiagnostics.Kind.SYNTAX), is(1000L));
+        assertThat(uut.getSamples(DateDiagnostics.Kind.SYNTAX), hasSize(3));
+        assertThat(asked.get(), is(3));
+        assertThat(uut.toString(), containsString("...and 997 more"));
+    }
+
+    @Test
+    public void empty() {
+        final DateDiagnostics uut = new DateDiagnostics();
+        assertTrue(uut.isEmpty());
+        assertThat(uut.toString(), is(""));
+    }
+}
@@ -0,0 +1,46 @@
+package nu.mine.mosher.gedcom.date.parser;
+
+import nu.mine.mosher.gedcom.date.DatePeriod;
+import nu.mine.mosher.gedcom.date.DateRange;
+import nu.mine.mosher.gedcom.date.YMD;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({ "static-method", "javadoc" })
+public class DatePeriodCacheTest {
+    @Test
+    public void hit() throws DateRange.DatesOutOfOrder {
+        final DatePeriodCache cache = new DatePeriodCache();
+        final DatePeriod first = cache.get("1 JAN 2001");
+        assertThat(first, is(new DatePeriod(new DateRange(new YMD(2001, 1, 1)))));
+        assertThat(cache.get("1 JAN 2001"), sameInstance(first));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void negative() {
+        final DatePeriodCache cache = new DatePeriodCache();
+        assertNull(cache.get("not a date"));
+        assertNull(cache.get("not a date"));
+        assertNull(cache.get(""));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Test
+    public void bounded() {
+        final DatePeriodCache cache = new DatePeriodCache(16);
+        IntStream.range(1000, 1100).parallel().forEach(y -> assertNotNull(cache.get(Integer.toString(y))));
+        assertThat(cache.size(), lessThanOrEqualTo(16 + Runtime.getRuntime().availableProcessors()));
+        assertThat(cache.getMisses(), is(100L));
+    }
+}
@@ -0,0 +1,148 @@
+package nu.mine.mosher.gedcom.date.parser;
+
+import nu.mine.mosher.gedcom.date.DatePeriod;
+import nu.mine.mosher.gedcom.date.DateRange;
+import nu.mine.mosher.gedcom.date.YMD;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the fast path gives exactly the same results as the grammar.
+ *
+ * @author Chris Mosher
+ */
+@SuppressWarnings({ "static-method", "javadoc" })
+public class FastDateValueParserTest {
+    private static final String[] DAYS = { "", "0", "1", "09", "31", "32" };
+    private static final String[] MONTHS = { "", "JAN", "feb", "Mar", "MAY", "SEP", "DEC", "JUNE", "XYZ" };
+    private static final String[] YEARS = { "0", "1", "1066", "1582", "1700/01", "1752/3", "1843", "9999", "10000", "1900AD", "123456789012" };
+    private static final String[] PREFIXES = { "", "ABT ", "cal ", "EST ", "BEF ", "AFT ", "TO ", "FROM ", "INT ", "AND ", "FROMX " };
+
+    @Test
+    public void nominal() throws ParseException, DateRange.DatesOutOfOrder {
+        assertThat(FastDateValueParser.parseCommon("12 MAR 1843"), is(new DatePeriod(new DateRange(new YMD(1843, 3, 12)))));
+        assertThat(FastDateValueParser.parseCommon("BET 1900 AND 1910"), is(new DatePeriod(new DateRange(new YMD(1900), new YMD(1910)))));
+        assertTrue(FastDateValueParser.parseCommon("ABT 1400").getStartDate().getEarliest().isCirca());
+        assertTrue(FastDateValueParser.parseCommon("11 FEB 1731/2").getStartDate().getEarliest().isJulian());
+    }
+
+    @Test
+    public void fallback() throws ParseException {
+        assertNull(FastDateValueParser.parseCommon("32 BC"));
+        assertNull(FastDateValueParser.parseCommon("@#DJULIAN@ 11 FEB 1731/2"));
+        assertNull(FastDateValueParser.parseCommon("INT 31 MAR 1850 (Easter 1850)"));
+        assertNotNull(FastDateValueParser.parse("32 BC"));
+        assertThrows(ParseException.class, () -> FastDateValueParser.parse("1 JAN 0"));
+        assertThrows(ParseException.class, () -> FastDateValueParser.parse("BET 1910 AND 1900"));
+    }
+
+    @Test
+    public void corpus() {
+        final List<String> dates = new ArrayList<>();
+        for (final String d : DAYS) {
+            for (final String m : MONTHS) {
+                for (final String y : YEARS) {
+                    dates.add(join(d, m, y));
+                }
+            }
+        }
+
+        final List<String> corpus = new ArrayList<>();
+        for (final String date : dates) {
+            for (final String prefix : PREFIXES) {
+                corpus.add(prefix + date);
+            }
+            corpus.add("FROM " + date + " TO 1850");
+            corpus.add("FROM 1850  to " + date);
+            corpus.add("BET " + date + " AND 1 JAN 1900");
+            corpus.add("BET 1500 and  " + date);
+            corpus.add(" " + date);
+            corpus.add(date + " ");
+            corpus.add(date + " BC");
+        }
+
+        // random mutations of valid values
+        final Random random = new Random(0x4d645e80L);
+        final String alphabet = "0123456789 /ABCDEFJNOTabc@#()";
+        final int n = corpus.size();
+        for (int i = 0; i < n; ++i) {
+            final StringBuilder sb = new StringBuilder(corpus.get(random.nextInt(n)));
+            if (sb.length() > 0) {
+                final int at = random.nextInt(sb.length());
+                switch (random.nextInt(3)) {
+                    case 0: sb.deleteCharAt(at); break;
+                    case 1: sb.insert(at, alphabet.charAt(random.nextInt(alphabet.length()))); break;
+                    default: sb.setCharAt(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            corpus.add(sb.toString());
+        }
+
+        for (final String s : corpus) {
+            final DatePeriod period = grammar(s);
+            final String expected = describe(s, period);
+            final DatePeriod common = FastDateValueParser.parseCommon(s);
+            if (common != null) {
+                assertThat(describe(s, common), is(expected));
+            } else if (period != null) {
+                assertFalse(isCommon(s), s);
+            }
+            final DatePeriod full;
+            try {
+                full = FastDateValueParser.parse(s);
+            } catch (final ParseException e) {
+                assertThat(s, expected, endsWith("failed"));
+                continue;
+            }
+            assertThat(describe(s, full), is(expected));
+        }
+    }
+
+    private static boolean isCommon(final String s) {
+        return !s.contains("@") && !s.matches("(?i).*\\b(BC|BCE|AD|CE|INT)\\b.*");
+    }
+
+    private static String join(final String... words) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String word : words) {
+            if (!word.isEmpty()) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(word);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static DatePeriod grammar(final String s) {
+        try {
+            return new GedcomDateValueParser(new StringReader(s)).parse();
+        } catch (final ParseException e) {
+            return null;
+        }
+    }
+
+    private static String describe(final String s, final DatePeriod period) {
+        if (period == null) {
+            return s + ": failed";
+        }
+        return s + ": " + describe(period.getStartDate()) + " - " + describe(period.getEndDate());
+    }
+
+    private static String describe(final DateRange range) {
+        return describe(range.getEarliest()) + ".." + describe(range.getLatest());
+    }
+
+    private static String describe(final YMD ymd) {
+        return ymd.getYear() + "-" + ymd.getMonth() + "-" + ymd.getDay() + (ymd.isCirca() ? "~" : "") + (ymd.isJulian() ? "J" : "") + "@" + ymd.getApproxTime().asDate().getTime();
+    }
+}
@@ -0,0 +1,63 @@
+package nu.mine.mosher.gedcom.date.parser;
+
+import nu.mine.mosher.gedcom.date.DatePeriod;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({ "static-method", "javadoc" })
+public class PooledDateValueParserTest {
+    private static final List<String> VALUES = Arrays.asList(
+        "@#DJULIAN@ 11 FEB 1731/2",
+        "not a date",
+        "32 BC",
+        "INT 31 MAR 1850 (Easter 1850)",
+        "1 JAN 0",
+        "ABT 32 BC",
+        "@#DGREGORIAN@2 FEB 2222",
+        "(only a phrase)",
+        "1860 AD");
+
+    @Test
+    public void reusedAfterErrors() {
+        for (int pass = 0; pass < 3; ++pass) {
+            for (final String value : VALUES) {
+                assertThat(value, pooled(value), is(fresh(value)));
+            }
+        }
+    }
+
+    @Test
+    public void parallel() {
+        VALUES.parallelStream().forEach(value -> {
+            for (int i = 0; i < 100; ++i) {
+                assertEquals(fresh(value), pooled(value), value);
+            }
+        });
+    }
+
+    private static DatePeriod pooled(final String s) {
+        try {
+            return PooledDateValueParser.parse(s);
+        } catch (final ParseException e) {
+            return null;
+        }
+    }
+
+    private static DatePeriod fresh(final String s) {
+        try {
+            return new GedcomDateValueParser(new StringReader(s)).parse();
+        } catch (final ParseException e) {
+            return null;
+        }
+    }
+}
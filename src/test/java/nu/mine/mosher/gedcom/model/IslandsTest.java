@@ -0,0 +1,90 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.Gedcom;
+import nu.mine.mosher.gedcom.GedcomLine;
+import nu.mine.mosher.gedcom.GedcomTree;
+import nu.mine.mosher.gedcom.exception.InvalidLevel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({ "static-method", "javadoc" })
+public class IslandsTest {
+    private static final String GEDCOM =
+        "0 HEAD\n1 SUBM @U1@\n" +
+        "0 @U1@ SUBM\n1 NAME Me\n" +
+        "0 @R1@ REPO\n1 NAME Library\n" +
+        "0 @S1@ SOUR\n1 TITL Shared\n1 REPO @R1@\n" +
+        "0 @S2@ SOUR\n1 TITL Uncited\n" +
+        "0 @N1@ NOTE Small\n" +
+        "0 @A1@ INDI\n1 NAME A1 /Big/\n1 BIRT\n2 SOUR @S1@\n" +
+        "0 @A2@ INDI\n1 NAME A2 /Big/\n" +
+        "0 @A3@ INDI\n1 NAME A3 /Big/\n" +
+        "0 @A4@ INDI\n1 NAME A4 /Big/\n" +
+        "0 @B1@ INDI\n1 NAME B1 /Small/\n1 NOTE @N1@\n" +
+        "0 @B2@ INDI\n1 NAME B2 /Small/\n1 SOUR @S1@\n" +
+        "0 @C1@ INDI\n1 NAME C1 /Sibling/\n" +
+        "0 @C2@ INDI\n1 NAME C2 /Sibling/\n" +
+        "0 @L1@ INDI\n1 NAME L1 /Alone/\n" +
+        "0 @FA@ FAM\n1 HUSB @A1@\n1 WIFE @A2@\n1 CHIL @A3@\n" +
+        "0 @FA2@ FAM\n1 WIFE @A4@\n1 CHIL @A1@\n" +
+        "0 @FB@ FAM\n1 HUSB @B1@\n1 WIFE @B2@\n" +
+        "0 @FC@ FAM\n1 CHIL @C1@\n1 CHIL @C2@\n" +
+        "0 @FX@ FAM\n" +
+        "0 TRLR\n";
+
+    @Test
+    public void findsIslands() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(GEDCOM);
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+        final Islands islands = loader.findIslands();
+
+        assertThat(islands.getCount(), is(4));
+        assertThat(islands.getSize(0), is(4));
+        assertThat(islands.getSize(3), is(1));
+        final int b = islands.getIsland(loader.lookUpPerson(tree.getNode("B1")));
+        final int c = islands.getIsland(loader.lookUpPerson(tree.getNode("C1")));
+        assertThat(islands.getIsland(loader.lookUpPerson(tree.getNode("B2"))), is(b));
+        assertThat(islands.getIsland(loader.lookUpPerson(tree.getNode("C2"))), is(c));
+        assertThat(islands.getIsland(loader.lookUpPerson(tree.getNode("A4"))), is(0));
+        assertThat(islands.getIsland(loader.lookUpPerson(tree.getNode("L1"))), is(3));
+
+        assertThat(ids(islands.getRecords(0)), contains("HEAD", "U1", "R1", "S1", "A1", "A2", "A3", "A4", "FA", "FA2", "TRLR"));
+        assertThat(ids(islands.getRecords(b)), contains("HEAD", "U1", "R1", "S1", "N1", "B1", "B2", "FB", "TRLR"));
+        assertThat(ids(islands.getRecords(c)), contains("HEAD", "U1", "C1", "C2", "FC", "TRLR"));
+        assertThat(ids(islands.getOrphans()), contains("S2", "FX"));
+    }
+
+    @Test
+    public void splitsIntoFiles() throws IOException, InvalidLevel {
+        final Loader loader = new Loader(Gedcom.valueOf(GEDCOM), "test");
+        loader.parse();
+        final Islands islands = loader.findIslands();
+
+        int cPeople = 0;
+        for (int k = 0; k < islands.getCount(); ++k) {
+            final StringBuilder file = new StringBuilder();
+            islands.appendTo(k, file);
+            final Loader part = new Loader(Gedcom.valueOf(file.toString()), "part");
+            part.parse();
+            assertThat(part.getAllPeople(), hasSize(islands.getSize(k)));
+            assertThat(part.findIslands().getCount(), is(1));
+            cPeople += islands.getSize(k);
+        }
+        assertThat(cPeople, is(loader.getAllPeople().size()));
+    }
+
+    private static List<String> ids(final List<TreeNode<GedcomLine>> records) {
+        return records.stream().map(r -> r.getObject().hasID() ? r.getObject().getID() : r.getObject().getTag().name()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,416 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.Gedcom;
+import nu.mine.mosher.gedcom.GedcomLine;
+import nu.mine.mosher.gedcom.GedcomTag;
+import nu.mine.mosher.gedcom.GedcomTree;
+import nu.mine.mosher.gedcom.date.DatePeriod;
+import nu.mine.mosher.gedcom.date.DateRange;
+import nu.mine.mosher.gedcom.date.YMD;
+import nu.mine.mosher.gedcom.exception.InvalidLevel;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({ "static-method", "javadoc" })
+public class LoaderTest {
+    private static final String[] SURNAMES = { "Smith", "Évans", "Adams", "brown", "Young", "Clark", "Davis" };
+
+    @Test
+    public void parallelMatchesSequential() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(400));
+
+        final Loader sequential = new Loader(tree, "test");
+        sequential.parse();
+        final Loader parallel = new Loader(tree, "test");
+        parallel.parse(true);
+
+        assertThat(sequential.getAllPeople(), hasSize(1200));
+        assertThat(describe(parallel), is(describe(sequential)));
+        assertThat(parallel.getFirstPerson().getID(), is(sequential.getFirstPerson().getID()));
+        assertThat(parallel.getDateDiagnostics().getTotal(), is(400L));
+    }
+
+    @Test
+    public void linksFamilies() throws IOException, InvalidLevel {
+        final Loader loader = new Loader(Gedcom.valueOf(family(1)), "test");
+        loader.parse(true);
+
+        final Person child = loader.getAllPeople().stream().filter(p -> p.getID().equals("C0")).findFirst().get();
+        assertThat(child.getFathers().get(0).getOther().getID(), is("H0"));
+        assertThat(child.getMothers().get(0).getOther().getID(), is("W0"));
+        assertThat(child.getFathers().get(0).getRelation().get(), is("Adopted"));
+        assertThat(child.getFathers().get(0).getOther().getPartnerships().get(0).getPartner().getID(), is("W0"));
+        assertThat(child.getFathers().get(0).getOther().getPartnerships().get(0).getChildRelations().stream().map(ParentChildRelation::getOther).collect(Collectors.toList()), hasItem(child));
+    }
+
+    @Test
+    public void sortedByName() throws IOException, InvalidLevel {
+        final Loader loader = new Loader(Gedcom.valueOf(family(50)), "test");
+        loader.parse(true);
+
+        final Collator collator = Collator.getInstance();
+        collator.setDecomposition(Collator.FULL_DECOMPOSITION);
+        collator.setStrength(Collator.PRIMARY);
+        final List<Person> expected = new ArrayList<>(loader.getAllPeople());
+        expected.sort((p1, p2) -> collator.compare(p1.getNameSortable(), p2.getNameSortable()));
+        assertThat(loader.getAllPeople(), is(expected));
+        assertThat(loader.getNameKeys(), hasSize(150));
+        assertThat(loader.getNameKeys().get(0).getSourceString(), is(loader.getAllPeople().get(0).getNameSortable()));
+    }
+
+    @Test
+    public void nameRange() throws IOException, InvalidLevel {
+        final Loader loader = new Loader(Gedcom.valueOf(family(70)), "test");
+        loader.parse();
+
+        final List<Person> smith = loader.getPeopleInNameRange("smith", "SMITHA");
+        assertThat(smith, hasSize(20));
+        assertThat(smith, everyItem(hasProperty("nameSortable", startsWith("SMITH,"))));
+        assertThat(loader.getPeopleInNameRange("EVANS", "EVANZ"), hasSize(20));
+        assertThat(loader.getPeopleInNameRange("JONES", "JONES, N"), hasSize(70));
+        assertThat(loader.getPeopleInNameRange("X", "A"), empty());
+    }
+
+    @Test
+    public void lazyLinksFamilies() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(3));
+        final Loader loader = new Loader(tree, "test");
+        loader.parseLazily(2);
+
+        final Person child = loader.lookUpPerson(tree.getNode("C0"));
+        assertThat(child.getFathers().get(0).getOther().getID(), is("H0"));
+        assertThat(child.getMothers().get(0).getOther().getID(), is("W0"));
+        assertThat(child.getFathers().get(0).getRelation().get(), is("Adopted"));
+
+        final Person father = loader.lookUpPerson(tree.getNode("H0"));
+        assertThat(father.getPartnerships().get(0).getPartner().getID(), is("W0"));
+        assertThat(father.getPartnerships().get(0).getChildRelations().stream().map(r -> r.getOther().getID()).collect(Collectors.toList()), contains("C0", "C1"));
+        assertThat(loader.lookUpFamily(tree.getNode("F0")).husb.get().getPartner().getID(), is("W0"));
+        assertThat(loader.lookUpEvent(birth(tree.getNode("C0"))), is(notNullValue()));
+    }
+
+    @Test
+    public void lazyCachesAndEvicts() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(3));
+        final Loader loader = new Loader(tree, "test");
+        loader.parseLazily(2);
+
+        final Person h0 = loader.lookUpPerson(tree.getNode("H0"));
+        assertThat(loader.lookUpPerson(tree.getNode("H0")), is(sameInstance(h0)));
+        loader.lookUpPerson(tree.getNode("H1"));
+        loader.lookUpPerson(tree.getNode("H2"));
+        final Person again = loader.lookUpPerson(tree.getNode("H0"));
+        assertThat(again, is(not(sameInstance(h0))));
+        assertThat(again.getUuid(), is(h0.getUuid()));
+    }
+
+    @Test
+    public void lazyMatchesEager() throws IOException, InvalidLevel {
+        // (C0 marries early, which ends their childhood, within the timelines of their parents)
+        final GedcomTree tree = Gedcom.valueOf(family(20)
+            .replace("0 @C0@ INDI\n", "0 @C0@ INDI\n1 RESI\n2 DATE 1840\n")
+            .replace("0 TRLR\n", "0 @G0@ FAM\n1 HUSB @C0@\n1 MARR\n2 DATE 1835\n0 TRLR\n"));
+        final Loader eager = new Loader(tree, "test");
+        eager.parse();
+        final Loader lazy = new Loader(tree, "test");
+        lazy.parseLazily();
+
+        assertThat(lazy.isLazy(), is(true));
+        assertThat(lazy.streamAllPeople().count(), is(60L));
+        assertThat(lazy.getAllPeople().stream().map(Person::getID).collect(Collectors.toList()),
+            is(eager.getAllPeople().stream().map(Person::getID).collect(Collectors.toList())));
+        assertThat(lazy.getFirstPerson().getID(), is(eager.getFirstPerson().getID()));
+
+        final Map<String, Person> mapIDtoEager = eager.getAllPeople().stream().collect(Collectors.toMap(Person::getID, p -> p));
+        lazy.streamAllPeople().forEach(p -> {
+            assertThat(p.getBirth(), is(mapIDtoEager.get(p.getID()).getBirth()));
+            assertThat(p.getDeath(), is(mapIDtoEager.get(p.getID()).getDeath()));
+        });
+        for (final Person person : eager.getAllPeople()) {
+            final Person looked = lazy.lookUpPerson(tree.getNode(person.getID()));
+            assertThat(looked.getBirth(), is(person.getBirth()));
+            assertThat(timeline(looked), is(timeline(person)));
+        }
+
+        final Set<UUID> uuids = new HashSet<>();
+        lazy.appendAllUuids(uuids);
+        assertThat(uuids, hasSize(60));
+        for (final UUID uuid : uuids) {
+            assertThat(lazy.lookUpPerson(uuid).getUuid(), is(uuid));
+        }
+    }
+
+    @Test
+    public void lazyRejectsIndexedQueries() throws IOException, InvalidLevel {
+        final Loader loader = new Loader(Gedcom.valueOf(family(1)), "test");
+        loader.parseLazily();
+
+        assertThrows(IllegalStateException.class, () -> loader.getNameKeys());
+        assertThrows(IllegalStateException.class, () -> loader.getPeopleInNameRange("A", "Z"));
+    }
+
+    @Test
+    public void refreshMatchesFullParse() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(20));
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+        final Person untouched = loader.lookUpPerson(tree.getNode("H12"));
+
+        final TreeNode<GedcomLine> c3 = tree.getNode("C3");
+        final TreeNode<GedcomLine> date = birth(c3).getFirstChildOrNull();
+        date.setObject(date.getObject().replaceValue("1 JAN 1700"));
+        final TreeNode<GedcomLine> h5 = tree.getNode("H5");
+        final TreeNode<GedcomLine> name = h5.getFirstChildOrNull();
+        name.setObject(name.getObject().replaceValue("Joe /Zeta/"));
+        final TreeNode<GedcomLine> w7 = tree.getNode("W7");
+        w7.removeFromParent();
+        final TreeNode<GedcomLine> n1 = new TreeNode<>(GedcomLine.createId("N1", GedcomTag.INDI, ""));
+        n1.addChild(new TreeNode<>(GedcomLine.create(1, GedcomTag.NAME, "Ann /Adams/")));
+        tree.getRoot().addChildBefore(n1, tree.getNode("H0"));
+        final TreeNode<GedcomLine> f2 = tree.getNode("F2");
+        f2.addChild(new TreeNode<>(GedcomLine.createPointer(1, GedcomTag.CHIL, "N1")));
+
+        loader.refresh(Arrays.asList(c3, h5, w7, n1, f2));
+
+        final Loader full = new Loader(tree, "test");
+        full.parse();
+        assertThat(describeUnordered(loader), is(describeUnordered(full)));
+        assertThat(loader.getAllPeople(), hasSize(60));
+        assertThat(loader.lookUpPerson(w7), is(nullValue()));
+        assertThat(loader.lookUpPerson(tree.getNode("H12")), is(sameInstance(untouched)));
+        assertThat(loader.lookUpPerson(n1).getFathers().get(0).getOther().getID(), is("H2"));
+        assertThat(loader.getFirstPerson().getID(), is("N1"));
+        assertThat(loader.getPeopleInNameRange("ZETA", "ZETB").get(0).getID(), is("H5"));
+        assertThat(loader.getEventsWithin(new DatePeriod(new DateRange(new YMD(1700, 1, 1)))).get(0).getPerson().getID(), is("C3"));
+        assertThat(loader.lookUpPerson(c3).getEvents(), hasItem(sameInstance(loader.lookUpEvent(birth(c3)))));
+    }
+
+    @Test
+    public void familyTimelines() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(20));
+        final Loader onDemand = new Loader(tree, "test");
+        onDemand.parse();
+        final Loader bulk = new Loader(tree, "test");
+        bulk.parse(true);
+        bulk.computeFamilyTimelines(true);
+
+        assertThat(timelines(bulk), is(timelines(onDemand)));
+        final Person h3 = onDemand.lookUpPerson(tree.getNode("H3"));
+        assertThat(h3.getFamilyTimeline(), is(sameInstance(h3.getFamilyTimeline())));
+        assertThat(h3.getFamilyEvents(), is(h3.getFamilyTimeline()));
+        assertThat(h3.getFamilyTimeline().stream().map(e -> e.getPerson().getID()).collect(Collectors.toSet()), containsInAnyOrder("H3", "W3", "C3", "C4"));
+        assertThrows(UnsupportedOperationException.class, () -> h3.getFamilyTimeline().clear());
+
+        final TreeNode<GedcomLine> c3 = tree.getNode("C3");
+        final TreeNode<GedcomLine> date = birth(c3).getFirstChildOrNull();
+        date.setObject(date.getObject().replaceValue("1 JAN 1840"));
+        onDemand.refresh(Collections.singleton(c3));
+
+        final Loader full = new Loader(tree, "test");
+        full.parse();
+        assertThat(timelines(onDemand), is(timelines(full)));
+        assertThat(h3.getFamilyTimeline().stream().map(e -> e.getEvent().getDate().toString()).collect(Collectors.toList()), hasItem(containsString("1840")));
+    }
+
+    @Test
+    public void refreshSource() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf("0 HEAD\n0 @S1@ SOUR\n1 TITL Old\n0 @I1@ INDI\n1 BIRT\n2 SOUR @S1@\n0 TRLR\n");
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+
+        final TreeNode<GedcomLine> s1 = tree.getNode("S1");
+        final TreeNode<GedcomLine> titl = s1.getFirstChildOrNull();
+        titl.setObject(titl.getObject().replaceValue("New"));
+        loader.refresh(Collections.singleton(s1));
+
+        assertThat(loader.lookUpSource(s1).getTitle(), is("New"));
+        final Event birth = loader.lookUpEvent(birth(tree.getNode("I1")));
+        assertThat(birth.getCitations().get(0).getSource().getTitle(), is("New"));
+    }
+
+    @Test
+    public void cacheMatchesParse() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(30).replace("0 TRLR\n", CITED + "0 TRLR\n"));
+        final Loader parsed = new Loader(tree, "test");
+        parsed.parse();
+        final ByteArrayOutputStream cache = new ByteArrayOutputStream();
+        parsed.writeCache(cache);
+
+        final Loader loaded = new Loader(tree, "test");
+        assertThat(loaded.readCache(new ByteArrayInputStream(cache.toByteArray())), is(true));
+
+        assertThat(describe(loaded), is(describe(parsed)));
+        assertThat(loaded.getFirstPerson().getID(), is(parsed.getFirstPerson().getID()));
+        assertThat(loaded.getEventsWithin(new DatePeriod(new DateRange(new YMD(1830)))), hasSize(parsed.getEventsWithin(new DatePeriod(new DateRange(new YMD(1830)))).size()));
+        for (final Person person : parsed.getAllPeople()) {
+            final Person other = loaded.lookUpPerson(person.getUuid());
+            assertThat(other.getID(), is(person.getID()));
+            assertThat(other.getNameSortedDisplay(), is(person.getNameSortedDisplay()));
+            assertThat(other.isPrivate(), is(person.isPrivate()));
+            assertThat(other.getEvents().stream().map(e -> e.getType() + e.getDate() + e.getPlace() + e.getNote()).collect(Collectors.toList()),
+                is(person.getEvents().stream().map(e -> e.getType() + e.getDate() + e.getPlace() + e.getNote()).collect(Collectors.toList())));
+        }
+
+        final TreeNode<GedcomLine> x1 = tree.getNode("X1");
+        final Event birth = loaded.lookUpEvent(birth(x1));
+        assertThat(loaded.lookUpPerson(x1).getEvents(), hasItem(sameInstance(birth)));
+        assertThat(birth.getCitations().get(0).getSource(), is(sameInstance(loaded.lookUpSource(tree.getNode("S1")))));
+        assertThat(birth.getCitations().get(0).getSource().getTitle(), is("Census"));
+        assertThat(birth.getCitations().get(0).getPage(), is("p. 12"));
+        assertThat(birth.getCitations().get(0).getApid().get().getIndi(), is(345L));
+        assertThat(birth.getCitations().get(0).getLinks(), hasSize(1));
+        assertThat(birth.getDate().toString(), is(parsed.lookUpEvent(birth(x1)).getDate().toString()));
+    }
+
+    @Test
+    public void cacheRejectsOtherTree() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(3));
+        final Loader parsed = new Loader(tree, "test");
+        parsed.parse();
+        final ByteArrayOutputStream cache = new ByteArrayOutputStream();
+        parsed.writeCache(cache);
+
+        final Loader other = new Loader(Gedcom.valueOf(family(4)), "test");
+        assertThat(other.getTreeHash(), is(not(parsed.getTreeHash())));
+        assertThat(other.readCache(new ByteArrayInputStream(cache.toByteArray())), is(false));
+        assertThat(other.getAllPeople(), empty());
+
+        final byte[] otherVersion = cache.toByteArray();
+        ++otherVersion[7];
+        assertThat(new Loader(tree, "test").readCache(new ByteArrayInputStream(otherVersion)), is(false));
+    }
+
+    @Test
+    public void nodesKeepOrdinals() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(2));
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+
+        final TreeNode<GedcomLine> h1 = tree.getNode("H1");
+        final int ordinal = tree.getOrdinal(h1);
+        assertThat(tree.getOrdinalCount(), is(greaterThan(ordinal)));
+        final TreeNode<GedcomLine> n1 = new TreeNode<>(GedcomLine.createId("N1", GedcomTag.INDI, ""));
+        tree.getRoot().addChildBefore(n1, h1);
+        assertThat(loader.lookUpPerson(n1), is(nullValue()));
+
+        new Loader(tree, "test").parse();
+        assertThat(tree.getOrdinal(h1), is(ordinal));
+        assertThat(tree.getOrdinal(n1), is(tree.getOrdinalCount() - 1));
+        assertThat(loader.lookUpPerson(h1).getID(), is("H1"));
+        assertThat(loader.lookUpEvent(birth(h1)), is(notNullValue()));
+        assertThat(loader.lookUpFamily(h1), is(nullValue()));
+    }
+
+    @Test
+    public void recordMovedFromAnotherTree() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(family(2));
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+        final GedcomTree source = Gedcom.valueOf("0 HEAD\n0 @X1@ INDI\n1 NAME Ann /Adams/\n1 BIRT\n2 DATE 1850\n0 TRLR\n");
+        final Loader other = new Loader(source, "other");
+        other.parse();
+
+        // (the first records of both trees have the same ordinals)
+        final TreeNode<GedcomLine> x1 = source.getNode("X1");
+        final TreeNode<GedcomLine> h0 = tree.getNode("H0");
+        assertThat(loader.lookUpPerson(x1), is(nullValue()));
+        assertThat(other.lookUpPerson(h0), is(nullValue()));
+        assertThat(loader.lookUpEvent(birth(x1)), is(nullValue()));
+
+        tree.getRoot().addChildBefore(x1, h0);
+        loader.refresh(Collections.singleton(x1));
+
+        final Loader full = new Loader(tree, "test");
+        full.parse();
+        assertThat(describeUnordered(loader), is(describeUnordered(full)));
+        assertThat(loader.lookUpPerson(x1).getID(), is("X1"));
+        assertThat(loader.lookUpPerson(h0).getID(), is("H0"));
+        assertThat(loader.lookUpPerson(h0).getEvents(), hasItem(sameInstance(loader.lookUpEvent(birth(h0)))));
+        assertThat(loader.lookUpPerson(x1).getEvents(), hasItem(sameInstance(loader.lookUpEvent(birth(x1)))));
+    }
+
+    private static final String CITED =
+        "0 @S1@ SOUR\n1 TITL Census\n1 AUTH Bureau\n" +
+        "0 @X1@ INDI\n1 NAME Xavier /Quinn/\n1 _UUID 0c7a7fd4-6a4b-4d55-9a5c-5d2bca3c1a11\n" +
+        "1 BIRT\n2 DATE BET 3 MAR 1790/91 AND ABT 1792\n2 PLAC Boston\n2 NOTE Born at home\n" +
+        "2 SOUR @S1@\n3 PAGE p. 12\n3 _APID 1,7602::345\n3 _LINK https://example.com/census\n" +
+        "2 SOUR @S9@\n1 FSID ABCD-123\n1 DEAT\n2 DATE AFT 1850\n";
+
+    private static String family(final int n) {
+        final StringBuilder sb = new StringBuilder("0 HEAD\n");
+        for (int i = 0; i < n; ++i) {
+            sb.append("0 @H").append(i).append("@ INDI\n1 NAME John /").append(SURNAMES[i % SURNAMES.length]).append("/\n1 BIRT\n2 DATE ").append(1800 + i % 50).append('\n');
+            sb.append("0 @W").append(i).append("@ INDI\n1 NAME Mary /Jones/\n1 BIRT\n2 DATE BET 1820 AND 1810\n");
+            sb.append("0 @C").append(i).append("@ INDI\n1 NAME Pat /").append(SURNAMES[i % SURNAMES.length]).append("/\n1 BIRT\n2 DATE ABT ").append(1830 + i % 50).append('\n');
+            sb.append("0 @F").append(i).append("@ FAM\n1 HUSB @H").append(i).append("@\n1 WIFE @W").append(i).append("@\n");
+            sb.append("1 CHIL @C").append(i).append("@\n2 _FREL Adopted\n");
+            sb.append("1 CHIL @C").append((i + 1) % n).append("@\n");
+            sb.append("1 MARR\n2 DATE 1 JAN ").append(1825 + i % 50).append('\n');
+        }
+        return sb.append("0 TRLR\n").toString();
+    }
+
+    /**
+     * Like describe, but ignoring the order of people, and of each person's relations.
+     */
+    private static List<String> describeUnordered(final Loader loader) {
+        return loader.getAllPeople().stream().map(p ->
+            p.getID() + ":" + p.getBirth() + ":" + p.getDeath() + ":" +
+            p.getFathers().stream().map(r -> r.getOther().getID() + r.getRelation().orElse("")).sorted().collect(Collectors.toList()) + ":" +
+            p.getMothers().stream().map(r -> r.getOther().getID()).sorted().collect(Collectors.toList()) + ":" +
+            p.getPartnerships().stream().map(par -> (par.getPartner() == null ? "" : par.getPartner().getID()) + par.getChildRelations().stream().map(r -> r.getOther().getID()).collect(Collectors.joining(","))).sorted().collect(Collectors.toList()) + ":" +
+            p.getEvents().stream().map(e -> e.getType() + e.getDate()).collect(Collectors.joining(",")))
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    private static List<String> timelines(final Loader loader) {
+        return loader.getAllPeople().stream().map(LoaderTest::timeline)
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    private static String timeline(final Person person) {
+        return person.getID() + ":" + person.getFamilyTimeline().stream().map(e -> (e.getPerson() == null ? "" : e.getPerson().getID()) + e.getRelation() + e.getEvent().getType() + e.getEvent().getDate()).collect(Collectors.joining(","));
+    }
+
+    private static TreeNode<GedcomLine> birth(final TreeNode<GedcomLine> nodeIndi) {
+        for (final TreeNode<GedcomLine> node : nodeIndi) {
+            if (node.getObject().getTag().equals(GedcomTag.BIRT)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static String describe(final Loader loader) {
+        return loader.getAllPeople().stream().map(p ->
+            p.getID() + ":" + p.getBirth() + ":" +
+            p.getFathers().stream().map(r -> r.getOther().getID() + r.getRelation().orElse("")).collect(Collectors.joining(",")) + ":" +
+            p.getMothers().stream().map(r -> r.getOther().getID()).collect(Collectors.joining(",")) + ":" +
+            p.getPartnerships().stream().map(par -> par.getPartner().getID() + par.getChildRelations().stream().map(r -> r.getOther().getID()).collect(Collectors.joining(","))).collect(Collectors.joining(";")) + ":" +
+            p.getEvents().size())
+            .collect(Collectors.joining("\n"));
+    }
+}
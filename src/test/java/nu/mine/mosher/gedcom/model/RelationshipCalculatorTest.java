@@ -0,0 +1,220 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.gedcom.Gedcom;
+import nu.mine.mosher.gedcom.GedcomTree;
+import nu.mine.mosher.gedcom.exception.InvalidLevel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({ "static-method", "javadoc" })
+public class RelationshipCalculatorTest {
+    private static final String GEDCOM =
+        "0 HEAD\n" +
+        indi("GF") + indi("GM") + indi("P1") + indi("P2") + indi("S1") + indi("S2") + indi("S3") +
+        indi("C1") + indi("C2") + indi("C3") + indi("D1") + indi("K") + indi("X") +
+        "0 @F1@ FAM\n1 HUSB @GF@\n1 WIFE @GM@\n1 CHIL @P1@\n1 CHIL @P2@\n" +
+        "0 @F2@ FAM\n1 HUSB @P1@\n1 WIFE @S1@\n1 CHIL @C1@\n" +
+        "0 @F3@ FAM\n1 HUSB @S2@\n1 WIFE @P2@\n1 CHIL @C2@\n" +
+        "0 @F4@ FAM\n1 HUSB @P1@\n1 WIFE @S3@\n1 CHIL @C3@\n" +
+        "0 @F5@ FAM\n1 HUSB @C1@\n1 CHIL @D1@\n" +
+        "0 @F6@ FAM\n1 HUSB @C3@\n1 WIFE @C2@\n1 CHIL @K@\n" +
+        "0 TRLR\n";
+
+    private static String indi(final String id) {
+        return "0 @" + id + "@ INDI\n1 NAME " + id + " /Test/\n";
+    }
+
+    @Test
+    public void names() {
+        assertThat(Relationship.name(0, 0, false), is("self"));
+        assertThat(Relationship.name(0, 1, false), is("child"));
+        assertThat(Relationship.name(0, 4, false), is("2nd great-grandchild"));
+        assertThat(Relationship.name(5, 0, false), is("3rd great-grandparent"));
+        assertThat(Relationship.name(1, 1, true), is("half sibling"));
+        assertThat(Relationship.name(1, 3, false), is("grandniece or grandnephew"));
+        assertThat(Relationship.name(3, 1, false), is("grandaunt or granduncle"));
+        assertThat(Relationship.name(2, 2, false), is("first cousin"));
+        assertThat(Relationship.name(3, 5, false), is("second cousin twice removed"));
+        assertThat(Relationship.name(14, 13, false), is("12th cousin once removed"));
+    }
+
+    @Test
+    public void relate() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(GEDCOM);
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+        final RelationshipCalculator calc = loader.getRelationshipCalculator();
+
+        assertThat(name(loader, "C1", "C1"), is("self"));
+        assertThat(name(loader, "C1", "D1"), is("child"));
+        assertThat(name(loader, "D1", "GF"), is("great-grandparent"));
+        assertThat(name(loader, "P2", "C1"), is("niece or nephew"));
+        assertThat(name(loader, "C1", "C3"), is("half sibling"));
+        assertThat(name(loader, "C1", "C2"), is("first cousin"));
+        assertThat(name(loader, "D1", "C2"), is("first cousin once removed"));
+        assertThat(name(loader, "C2", "D1"), is("first cousin once removed"));
+        assertThat(name(loader, "D1", "K"), is("half first cousin"));
+        assertThat(relate(loader, "C1", "X").isPresent(), is(false));
+        assertThat(relate(loader, "S1", "S2").isPresent(), is(false));
+
+        final Relationship cousins = relate(loader, "D1", "C2").get();
+        assertThat(cousins.getCommonAncestors().stream().map(Person::getID).collect(Collectors.toList()), contains("GF", "GM"));
+        assertThat(cousins.getPaths().get(0).getPeople().stream().map(Person::getID).collect(Collectors.toList()), contains("D1", "C1", "P1", "GF", "P2", "C2"));
+        assertThat(cousins.getPaths().get(0).getUp(), is(3));
+        assertThat(cousins.getPaths().get(0).getDown(), is(2));
+
+        assertThat(calc.relate(person(loader, "D1"), person(loader, "C2")), is(sameInstance(calc.relate(person(loader, "D1"), person(loader, "C2")))));
+        assertThat(loader.getRelationshipCalculator(), is(sameInstance(calc)));
+    }
+
+    @Test
+    public void pedigreeCollapse() throws IOException, InvalidLevel {
+        final Loader loader = new Loader(Gedcom.valueOf(GEDCOM), "test");
+        loader.parse();
+
+        // K descends from GF through both parents, but GF is still just one ancestor
+        final Relationship r = relate(loader, "K", "GF").get();
+        assertThat(r.getName(), is("great-grandparent"));
+        assertThat(r.getPaths(), hasSize(1));
+        assertThat(name(loader, "K", "P1"), is("grandparent"));
+    }
+
+    @Test
+    public void parallelMatchesSequential() throws IOException, InvalidLevel {
+        final Loader loader = new Loader(Gedcom.valueOf(GEDCOM), "test");
+        loader.parse();
+        final List<Person> all = loader.getAllPeople();
+
+        final List<String> sequential = names(new RelationshipCalculator(loader.getRelationshipGraph()).relateAll(person(loader, "D1"), all, false));
+        final List<String> parallel = names(new RelationshipCalculator(loader.getRelationshipGraph()).relateAll(person(loader, "D1"), all, true));
+        assertThat(parallel, is(sequential));
+        assertThat(sequential, hasItems("self", "parent", "great-grandparent", "first cousin once removed", ""));
+    }
+
+    @Test
+    public void cacheIsBounded() throws IOException, InvalidLevel {
+        final Loader loader = new Loader(Gedcom.valueOf(GEDCOM), "test");
+        loader.parse();
+        final List<Person> all = loader.getAllPeople();
+        final RelationshipCalculator calc = new RelationshipCalculator(loader.getRelationshipGraph(), 16);
+        final RelationshipCalculator unbounded = new RelationshipCalculator(loader.getRelationshipGraph());
+
+        for (final Person from : all) {
+            assertThat(names(calc.relateAll(from, all, false)), is(names(unbounded.relateAll(from, all, true))));
+            assertThat(calc.getCacheSize(), is(lessThanOrEqualTo(16)));
+        }
+        assertThat(unbounded.getCacheSize(), is(all.size() * all.size()));
+    }
+
+    @Test
+    public void matchesBruteForce() throws IOException, InvalidLevel {
+        final Random random = new Random(49);
+        for (int t = 0; t < 60; ++t) {
+            final int n = 40;
+            final int[][] parents = new int[n][];
+            final StringBuilder sb = new StringBuilder("0 HEAD\n");
+            for (int i = 0; i < n; ++i) {
+                sb.append(indi("I" + i));
+            }
+            for (int i = 0; i < n; ++i) {
+                if (i < 4) {
+                    parents[i] = new int[0];
+                    continue;
+                }
+                // (parents from a few generations back, so ancestors repeat)
+                final int f = random.nextInt(i);
+                final int m = random.nextInt(i);
+                parents[i] = f == m ? new int[] { f } : new int[] { f, m };
+                sb.append("0 @F").append(i).append("@ FAM\n1 HUSB @I").append(f).append("@\n");
+                if (f != m) {
+                    sb.append("1 WIFE @I").append(m).append("@\n");
+                }
+                sb.append("1 CHIL @I").append(i).append("@\n");
+            }
+            final Loader loader = new Loader(Gedcom.valueOf(sb.append("0 TRLR\n").toString()), "test");
+            loader.parse();
+            final RelationshipCalculator calc = loader.getRelationshipCalculator();
+
+            final int[][] dist = new int[n][];
+            for (int i = 0; i < n; ++i) {
+                dist[i] = ancestorDistances(parents, i);
+            }
+            for (int x = 0; x < n; ++x) {
+                for (int y = 0; y < n; ++y) {
+                    int best = Integer.MAX_VALUE;
+                    for (int a = 0; a < n; ++a) {
+                        if (0 <= dist[x][a] && 0 <= dist[y][a]) {
+                            best = Math.min(best, dist[x][a] + dist[y][a]);
+                        }
+                    }
+                    final List<String> nearest = new ArrayList<>();
+                    for (int a = 0; a < n; ++a) {
+                        if (0 <= dist[x][a] && 0 <= dist[y][a] && dist[x][a] + dist[y][a] == best) {
+                            nearest.add("I" + a);
+                        }
+                    }
+
+                    final Optional<Relationship> r = relate(loader, "I" + x, "I" + y);
+                    assertThat(x + "," + y, r.isPresent(), is(best < Integer.MAX_VALUE));
+                    if (r.isPresent()) {
+                        final Relationship.Path path = r.get().getPaths().get(0);
+                        assertThat(x + "," + y, path.getUp() + path.getDown(), is(best));
+                        assertThat(x + "," + y, r.get().getCommonAncestors().stream().map(Person::getID).collect(Collectors.toList()), containsInAnyOrder(nearest.toArray()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return generations from the given person up to each person, or -1 if not an ancestor
+     */
+    private static int[] ancestorDistances(final int[][] parents, final int from) {
+        final int[] dist = new int[parents.length];
+        Arrays.fill(dist, -1);
+        dist[from] = 0;
+        final Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            final int i = queue.remove();
+            for (final int p : parents[i]) {
+                if (dist[p] < 0) {
+                    dist[p] = dist[i] + 1;
+                    queue.add(p);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static List<String> names(final List<Optional<Relationship>> rRelationship) {
+        return rRelationship.stream().map(r -> r.map(Relationship::getName).orElse("")).collect(Collectors.toList());
+    }
+
+    private static String name(final Loader loader, final String from, final String to) {
+        return relate(loader, from, to).get().getName();
+    }
+
+    private static Optional<Relationship> relate(final Loader loader, final String from, final String to) {
+        return loader.getRelationshipCalculator().relate(person(loader, from), person(loader, to));
+    }
+
+    private static Person person(final Loader loader, final String id) {
+        return loader.lookUpPerson(loader.getGedcom().getNode(id));
+    }
+}
@@ -0,0 +1,111 @@
+package nu.mine.mosher.gedcom.model;
+
+import nu.mine.mosher.collection.TreeNode;
+import nu.mine.mosher.gedcom.Gedcom;
+import nu.mine.mosher.gedcom.GedcomLine;
+import nu.mine.mosher.gedcom.GedcomTree;
+import nu.mine.mosher.gedcom.exception.InvalidLevel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Chris Mosher
+ */
+@SuppressWarnings({ "static-method", "javadoc" })
+public class RelationshipGraphTest {
+    private static final String GEDCOM =
+        "0 HEAD\n" +
+        "0 @H@ INDI\n1 NAME Tom /Smith/\n" +
+        "0 @W@ INDI\n1 NAME Ann /Jones/\n" +
+        "0 @C1@ INDI\n1 NAME Bob /Smith/\n" +
+        "0 @C2@ INDI\n1 NAME Sue /Smith/\n" +
+        "0 @X@ INDI\n1 NAME Joe /Brown/\n" +
+        "0 @F1@ FAM\n1 HUSB @H@\n1 WIFE @W@\n1 CHIL @C1@\n1 CHIL @C2@\n2 _FREL Adopted\n" +
+        "0 @F2@ FAM\n1 WIFE @C2@\n" +
+        "0 TRLR\n";
+
+    @Test
+    public void matchesModel() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(GEDCOM);
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+        final RelationshipGraph graph = loader.getRelationshipGraph();
+
+        assertThat(graph.size(), is(5));
+        assertThat(loader.getRelationshipGraph(), is(sameInstance(graph)));
+        for (int i = 0; i < graph.size(); ++i) {
+            final Person person = graph.getPerson(i);
+            assertThat(person, is(sameInstance(loader.getAllPeople().get(i))));
+            assertThat(graph.indexOf(person), is(i));
+
+            final List<Person> parents = new ArrayList<>();
+            person.getFathers().forEach(r -> parents.add(r.getOther()));
+            person.getMothers().forEach(r -> parents.add(r.getOther()));
+            assertThat(relatives(graph, graph.getParents(), i), is(parents));
+
+            final List<Person> spouses = new ArrayList<>();
+            person.getPartnerships().stream().filter(p -> p.getPartner() != null).forEach(p -> spouses.add(p.getPartner()));
+            assertThat(relatives(graph, graph.getSpouses(), i), is(spouses));
+
+            for (int e = graph.getParents().start(i); e < graph.getParents().end(i); ++e) {
+                assertThat(relatives(graph, graph.getChildren(), graph.getParents().target(e)), hasItem(person));
+            }
+        }
+    }
+
+    @Test
+    public void flags() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(GEDCOM);
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+        final RelationshipGraph graph = loader.getRelationshipGraph();
+        final RelationshipGraph.Adjacency parents = graph.getParents();
+        final RelationshipGraph.Adjacency children = graph.getChildren();
+
+        final int c2 = graph.indexOf(loader.lookUpPerson(tree.getNode("C2")));
+        final int h = graph.indexOf(loader.lookUpPerson(tree.getNode("H")));
+        assertThat(parents.degree(c2), is(2));
+        assertThat(parents.target(parents.start(c2)), is(h));
+        assertThat(parents.flags(parents.start(c2)), is(RelationshipGraph.FATHER | RelationshipGraph.NON_NATURAL));
+        assertThat(parents.flags(parents.start(c2) + 1), is(RelationshipGraph.MOTHER));
+        assertThat(children.degree(h), is(2));
+        assertThat(parents.size(), is(4));
+        assertThat(children.size(), is(4));
+
+        // (C2's partnership has no partner)
+        assertThat(graph.getSpouses().degree(c2), is(0));
+        assertThat(graph.getSpouses().degree(h), is(1));
+        assertThat(graph.getSpouses().degree(graph.indexOf(loader.lookUpPerson(tree.getNode("X")))), is(0));
+        assertThat(graph.indexOf(new Person("Z", "Zed", new ArrayList<>(), new ArrayList<>(), false, null)), is(-1));
+    }
+
+    @Test
+    public void rebuiltAfterRefresh() throws IOException, InvalidLevel {
+        final GedcomTree tree = Gedcom.valueOf(GEDCOM);
+        final Loader loader = new Loader(tree, "test");
+        loader.parse();
+        final RelationshipGraph graph = loader.getRelationshipGraph();
+
+        final TreeNode<GedcomLine> x = tree.getNode("X");
+        x.removeFromParent();
+        loader.refresh(Collections.singleton(x));
+
+        assertThat(loader.getRelationshipGraph(), is(not(sameInstance(graph))));
+        assertThat(loader.getRelationshipGraph().size(), is(4));
+    }
+
+    private static List<Person> relatives(final RelationshipGraph graph, final RelationshipGraph.Adjacency adjacency, final int i) {
+        final List<Person> relatives = new ArrayList<>();
+        for (int e = adjacency.start(i); e < adjacency.end(i); ++e) {
+            relatives.add(graph.getPerson(adjacency.target(e)));
+        }
+        return relatives;
+    }
+}
@@ -72,4 +72,20 @@ public class TimeTest
         uut.asDate().setTime(941);
         assertThat(uut.asDate().getTime(), equalTo(msOriginal));
     }
+
+    /**
+     * Does a <code>Time</code> hold exactly the milliseconds it was given,
+     * and compare by them?
+     */
+    @SuppressWarnings("boxing")
+    @Test
+    public void epochMilli()
+    {
+        final Time uut = Time.ofEpochMilli(-1234567890123L);
+        assertThat(uut.getEpochMilli(), equalTo(-1234567890123L));
+        assertThat(uut, equalTo(new Time(new Date(-1234567890123L))));
+        assertThat(uut.compareTo(Time.ofEpochMilli(0)), lessThan(0));
+        assertThat(Time.ofEpochMilli(0), sameInstance(Time.ZERO));
+        assertThat(Time.ZERO.toString(), equalTo(""));
+    }
 }